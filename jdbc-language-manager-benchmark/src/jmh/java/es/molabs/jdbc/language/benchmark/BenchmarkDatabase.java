@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import es.molabs.jdbc.DbManager;
+import es.molabs.jdbc.DbQuery;
+import es.molabs.jdbc.language.DbLanguageManager;
+import es.molabs.jdbc.language.LocaleValue;
+import es.molabs.jdbc.language.LocalizedKey;
+
+public class BenchmarkDatabase 
+{
+	public final static Locale LOCALE_EN = new Locale("en");
+	public final static Locale LOCALE_ES = new Locale("es");
+	public final static Locale LOCALE_FR = new Locale("fr");
+	
+	public final static String TABLE_NAME = "multilanguage_benchmark";
+	public final static String KEY_NAME = "key";
+	
+	private JdbcConnectionPool dataSource = null;
+	private DbManager dbManager = null;
+	
+	private String[] keys = null;
+	
+	public void init(int tableSize)
+	{
+		// In memory database that lives till the pool is disposed
+		dataSource = JdbcConnectionPool.create("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1", "benchmark", "benchmark");
+		dbManager = new DbManager();
+		dbManager.init(dataSource);
+		
+		DbQuery dbQuery = getDbQuery();
+		
+		dbQuery.executeUpdate("DROP TABLE IF EXISTS " + TABLE_NAME);
+		dbQuery.executeUpdate("CREATE TABLE " + TABLE_NAME + " (" + KEY_NAME + " VARCHAR(240) NOT NULL, en CLOB, es CLOB, fr CLOB, CONSTRAINT " + TABLE_NAME + " PRIMARY KEY (" + KEY_NAME + "))");
+		
+		keys = new String[tableSize];
+		List<LocalizedKey> localizedKeyList = new ArrayList<LocalizedKey>(tableSize);
+		
+		for (int i=0; i<tableSize; i++)
+		{
+			keys[i] = "benchmark.key." + i;
+			
+			localizedKeyList.add(new LocalizedKey(keys[i], new LocaleValue(LOCALE_EN, "english " + i), new LocaleValue(LOCALE_ES, "castellano " + i), new LocaleValue(LOCALE_FR, "francais " + i)));
+		}
+		
+		// Fills the table using the bulk insert
+		DbLanguageManager languageManager = createLanguageManager();
+		languageManager.setBatchSize(500);
+		languageManager.addKeys(dbQuery, localizedKeyList.iterator());
+	}
+	
+	public void destroy()
+	{
+		getDbQuery().executeUpdate("DROP TABLE IF EXISTS " + TABLE_NAME);
+		
+		dbManager.destroy();
+		dataSource.dispose();
+	}
+	
+	public DbLanguageManager createLanguageManager()
+	{
+		DbLanguageManager languageManager = new DbLanguageManager(LOCALE_EN, TABLE_NAME, KEY_NAME);
+		languageManager.setField("en", LOCALE_EN);
+		languageManager.setField("es", LOCALE_ES);
+		languageManager.setField("fr", LOCALE_FR);
+		
+		return languageManager;
+	}
+	
+	public DbQuery getDbQuery()
+	{
+		return dbManager.getDbNonTransaction();
+	}
+	
+	public String[] getKeys()
+	{
+		return keys;
+	}
+}
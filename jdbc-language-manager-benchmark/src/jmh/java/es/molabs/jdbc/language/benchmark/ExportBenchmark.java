@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.molabs.jdbc.DbQuery;
+import es.molabs.jdbc.language.DbLanguageManager;
+import es.molabs.jdbc.language.io.ExportFormat;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExportBenchmark 
+{
+	@Param({"1000", "100000"})
+	private int tableSize;
+	
+	private BenchmarkDatabase database = null;
+	private DbQuery dbQuery = null;
+	private DbLanguageManager languageManager = null;
+	private String[] keys = null;
+	
+	private int index;
+	
+	@Setup
+	public void setUp()
+	{
+		database = new BenchmarkDatabase();
+		database.init(tableSize);
+		
+		dbQuery = database.getDbQuery();
+		keys = database.getKeys();
+		
+		languageManager = database.createLanguageManager();
+		languageManager.init();
+		
+		index = 0;
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		languageManager.destroy();
+		
+		database.destroy();
+	}
+	
+	@Benchmark
+	public StringBuilder exportKey()
+	{
+		return languageManager.exportKey(keys[(index++ & Integer.MAX_VALUE) % keys.length], new StringBuilder(), dbQuery);
+	}
+	
+	@Benchmark
+	public int exportKeys(Blackhole blackhole) throws IOException
+	{
+		// The exported text is consumed without being stored
+		return languageManager.exportKeys(new BlackholeWriter(blackhole), ExportFormat.SQL, dbQuery);
+	}
+	
+	private static class BlackholeWriter extends Writer
+	{
+		private Blackhole blackhole = null;
+		
+		private BlackholeWriter(Blackhole blackhole)
+		{
+			this.blackhole = blackhole;
+		}
+		
+		public void write(char[] buffer, int offset, int length)
+		{
+			blackhole.consume(buffer);
+		}
+		
+		public void write(String value)
+		{
+			blackhole.consume(value);
+		}
+		
+		public void flush()
+		{
+		}
+		
+		public void close()
+		{
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.benchmark;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import es.molabs.jdbc.DbQuery;
+import es.molabs.jdbc.language.DbLanguageManager;
+import es.molabs.jdbc.language.LocaleValue;
+import es.molabs.jdbc.language.cache.LocalizedKeyCache;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LookupBenchmark 
+{
+	@Param({"1000", "100000"})
+	private int tableSize;
+	
+	private BenchmarkDatabase database = null;
+	private DbQuery dbQuery = null;
+	private String[] keys = null;
+	
+	// Manager that always goes to the database
+	private DbLanguageManager coldManager = null;
+	
+	// Manager that serves the keys from memory
+	private DbLanguageManager hotManager = null;
+	
+	private Locale[] fallbackLocales = null;
+	
+	private int index;
+	
+	@Setup
+	public void setUp()
+	{
+		database = new BenchmarkDatabase();
+		database.init(tableSize);
+		
+		dbQuery = database.getDbQuery();
+		keys = database.getKeys();
+		
+		coldManager = database.createLanguageManager();
+		coldManager.init();
+		
+		hotManager = database.createLanguageManager();
+		hotManager.setCache(new LocalizedKeyCache(tableSize));
+		hotManager.init();
+		
+		// Warms the cache with every key
+		for (int i=0; i<keys.length; i++)
+		{
+			hotManager.getLocalizedKey(keys[i], BenchmarkDatabase.LOCALE_ES, dbQuery);
+		}
+		
+		// Locales that need one or more fallback steps
+		fallbackLocales = new Locale[] {new Locale("es", "MX"), new Locale("en", "US", "POSIX"), new Locale("de", "DE"), BenchmarkDatabase.LOCALE_FR};
+		
+		index = 0;
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		coldManager.destroy();
+		hotManager.destroy();
+		
+		database.destroy();
+	}
+	
+	@Benchmark
+	public String getLocalizedKeyCold()
+	{
+		return coldManager.getLocalizedKey(nextKey(), BenchmarkDatabase.LOCALE_ES, dbQuery);
+	}
+	
+	@Benchmark
+	public String getLocalizedKeyHot()
+	{
+		return hotManager.getLocalizedKey(nextKey(), BenchmarkDatabase.LOCALE_ES, dbQuery);
+	}
+	
+	@Benchmark
+	public List<LocaleValue> getKey()
+	{
+		return coldManager.getKey(nextKey(), dbQuery);
+	}
+	
+	@Benchmark
+	public Locale normalizeLocale()
+	{
+		return coldManager.normalizeLocale(fallbackLocales[(index++ & Integer.MAX_VALUE) % fallbackLocales.length]);
+	}
+	
+	private String nextKey()
+	{
+		return keys[(index++ & Integer.MAX_VALUE) % keys.length];
+	}
+}
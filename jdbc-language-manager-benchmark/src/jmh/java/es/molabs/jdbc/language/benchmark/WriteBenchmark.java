@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import es.molabs.jdbc.DbQuery;
+import es.molabs.jdbc.language.DbLanguageManager;
+import es.molabs.jdbc.language.LocaleValue;
+import es.molabs.jdbc.language.LocalizedKey;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WriteBenchmark 
+{
+	@Param({"1000"})
+	private int tableSize;
+	
+	@Param({"1", "100", "10000"})
+	private int keyCount;
+	
+	private BenchmarkDatabase database = null;
+	private DbQuery dbQuery = null;
+	private DbLanguageManager languageManager = null;
+	
+	private LocalizedKey[] insertKeys = null;
+	private LocalizedKey[] updateKeys = null;
+	
+	private int invocation;
+	
+	@Setup
+	public void setUp()
+	{
+		database = new BenchmarkDatabase();
+		database.init(tableSize);
+		
+		dbQuery = database.getDbQuery();
+		
+		languageManager = database.createLanguageManager();
+		languageManager.init();
+		
+		// Updates cycle over the existing keys
+		String[] keys = database.getKeys();
+		updateKeys = new LocalizedKey[keyCount];
+		
+		for (int i=0; i<keyCount; i++)
+		{
+			updateKeys[i] = new LocalizedKey(keys[i % keys.length], new LocaleValue(BenchmarkDatabase.LOCALE_EN, "updated " + i), new LocaleValue(BenchmarkDatabase.LOCALE_ES, "actualizada " + i));
+		}
+		
+		invocation = 0;
+	}
+	
+	@Setup(Level.Invocation)
+	public void setUpInvocation()
+	{
+		// Each invocation inserts keys that do not exist yet
+		insertKeys = new LocalizedKey[keyCount];
+		invocation++;
+		
+		for (int i=0; i<keyCount; i++)
+		{
+			insertKeys[i] = new LocalizedKey("benchmark.insert." + invocation + "." + i, new LocaleValue(BenchmarkDatabase.LOCALE_EN, "inserted " + i), new LocaleValue(BenchmarkDatabase.LOCALE_ES, "insertada " + i));
+		}
+	}
+	
+	@TearDown(Level.Iteration)
+	public void tearDownIteration()
+	{
+		// Removes the inserted keys so the table size stays the same
+		dbQuery.executeUpdate("DELETE FROM " + BenchmarkDatabase.TABLE_NAME + " WHERE " + BenchmarkDatabase.KEY_NAME + " LIKE 'benchmark.insert.%'");
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		languageManager.destroy();
+		
+		database.destroy();
+	}
+	
+	@Benchmark
+	public void addKey()
+	{
+		languageManager.addKey(dbQuery, insertKeys);
+	}
+	
+	@Benchmark
+	public void setKey()
+	{
+		languageManager.setKey(dbQuery, updateKeys);
+	}
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import es.molabs.jdbc.DbQuery;
+
+public class AsyncLanguageManager 
+{
+	/*
+	 * Static
+	 */
+	public static ExecutorService newBoundedExecutor(int threadCount, int queueSize)
+	{
+		// Checks that the sizes are valid
+		if (threadCount <= 0) throw new IllegalArgumentException("ThreadCount parameter must be greater than 0.");
+		if (queueSize <= 0) throw new IllegalArgumentException("QueueSize parameter must be greater than 0.");
+		
+		final AtomicInteger threadNumber = new AtomicInteger();
+		
+		// When the queue is full the lookups are rejected instead of piling up
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory()
+		{
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "language-async-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				
+				return thread;
+			}
+		});
+		
+		executor.allowCoreThreadTimeOut(true);
+		
+		return executor;
+	}
+	
+	public static boolean isVirtualThreadSupported()
+	{
+		return getVirtualThreadMethod() != null;
+	}
+	
+	public static ExecutorService newVirtualThreadExecutor()
+	{
+		Method method = getVirtualThreadMethod();
+		
+		if (method == null) throw new UnsupportedOperationException("Virtual threads are not supported by this JVM.");
+		
+		try
+		{
+			return (ExecutorService) method.invoke(null);
+		}
+		catch (Exception e)
+		{
+			throw new UnsupportedOperationException("Virtual threads are not supported by this JVM.", e);
+		}
+	}
+	
+	private static Method getVirtualThreadMethod()
+	{
+		// Looked up by reflection so the library still runs on Java 8
+		try
+		{
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		}
+		catch (NoSuchMethodException nsme)
+		{
+			return null;
+		}
+	}
+	
+	
+	/*
+	 * Instanced
+	 */
+	private DbLanguageManager languageManager = null;
+	private ExecutorService executor = null;
+	private boolean ownExecutor;
+	
+	private ConcurrentHashMap<RequestKey, CompletableFuture<String>> localizedKeyMap = null;
+	private ConcurrentHashMap<RequestKey, CompletableFuture<List<LocaleValue>>> keyMap = null;
+	
+	public AsyncLanguageManager(DbLanguageManager languageManager)
+	{
+		this(languageManager, newBoundedExecutor(Runtime.getRuntime().availableProcessors(), 1000), true);
+	}
+	
+	public AsyncLanguageManager(DbLanguageManager languageManager, ExecutorService executor)
+	{
+		this(languageManager, executor, false);
+	}
+	
+	private AsyncLanguageManager(DbLanguageManager languageManager, ExecutorService executor, boolean ownExecutor)
+	{
+		// Checks that the parameters are not null
+		if (languageManager == null) throw new IllegalArgumentException("LanguageManager parameter cannot be null.");
+		if (executor == null) throw new IllegalArgumentException("Executor parameter cannot be null.");
+		
+		this.languageManager = languageManager;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+		
+		localizedKeyMap = new ConcurrentHashMap<RequestKey, CompletableFuture<String>>();
+		keyMap = new ConcurrentHashMap<RequestKey, CompletableFuture<List<LocaleValue>>>();
+	}
+	
+	public void destroy()
+	{
+		// An executor given by the caller is not shut down
+		if (ownExecutor) executor.shutdown();
+	}
+	
+	public DbLanguageManager getLanguageManager()
+	{
+		return languageManager;
+	}
+	
+	public ExecutorService getExecutor()
+	{
+		return executor;
+	}
+	
+	public CompletableFuture<String> getLocalizedKey(final String key, final Locale locale, final DbQuery dbQuery)
+	{
+		return coalesce(localizedKeyMap, new RequestKey(key, locale, dbQuery), new Supplier<String>()
+		{
+			public String get()
+			{
+				return languageManager.getLocalizedKey(key, locale, dbQuery);
+			}
+		});
+	}
+	
+	public CompletableFuture<Map<String, String>> getLocalizedKeys(final Collection<String> keys, final Locale locale, final DbQuery dbQuery)
+	{
+		return submit(new CompletableFuture<Map<String, String>>(), new Supplier<Map<String, String>>()
+		{
+			public Map<String, String> get()
+			{
+				return languageManager.getLocalizedKeys(keys, locale, dbQuery);
+			}
+		});
+	}
+	
+	public CompletableFuture<List<LocaleValue>> getKey(final String key, final DbQuery dbQuery)
+	{
+		return coalesce(keyMap, new RequestKey(key, null, dbQuery), new Supplier<List<LocaleValue>>()
+		{
+			public List<LocaleValue> get()
+			{
+				return languageManager.getKey(key, dbQuery);
+			}
+		});
+	}
+	
+	public CompletableFuture<Map<String, List<LocaleValue>>> getKeys(final Collection<String> keys, final DbQuery dbQuery)
+	{
+		return submit(new CompletableFuture<Map<String, List<LocaleValue>>>(), new Supplier<Map<String, List<LocaleValue>>>()
+		{
+			public Map<String, List<LocaleValue>> get()
+			{
+				return languageManager.getKeys(keys, dbQuery);
+			}
+		});
+	}
+	
+	private <K, V> CompletableFuture<V> coalesce(final ConcurrentHashMap<K, CompletableFuture<V>> inFlightMap, final K requestKey, final Supplier<V> supplier)
+	{
+		final CompletableFuture<V> future = new CompletableFuture<V>();
+		CompletableFuture<V> inFlightFuture = inFlightMap.putIfAbsent(requestKey, future);
+		
+		// If there is no query in flight for the same request starts one
+		if (inFlightFuture == null)
+		{
+			submit(future, new Supplier<V>()
+			{
+				public V get()
+				{
+					// The request is removed before the future completes so the next requests query again
+					try
+					{
+						return supplier.get();
+					}
+					finally
+					{
+						inFlightMap.remove(requestKey, future);
+					}
+				}
+			});
+			
+			// If the request was rejected it never runs
+			if (future.isCompletedExceptionally()) inFlightMap.remove(requestKey, future);
+			
+			inFlightFuture = future;
+		}
+		
+		// Each caller gets its own future so cancelling it does not affect the others
+		return inFlightFuture.thenApply(Function.<V>identity());
+	}
+	
+	private <V> CompletableFuture<V> submit(final CompletableFuture<V> future, final Supplier<V> supplier)
+	{
+		try
+		{
+			executor.execute(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						future.complete(supplier.get());
+					}
+					catch (Throwable t)
+					{
+						future.completeExceptionally(t);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException ree)
+		{
+			future.completeExceptionally(ree);
+		}
+		
+		return future;
+	}
+	
+	private static class RequestKey
+	{
+		private final String key;
+		private final Locale locale;
+		private final DbQuery dbQuery;
+		private final int hashCode;
+		
+		private RequestKey(String key, Locale locale, DbQuery dbQuery)
+		{
+			this.key = key;
+			this.locale = locale;
+			this.dbQuery = dbQuery;
+			
+			// Requests made through different DbQuery instances are never shared, they could see different transactions
+			hashCode = 31 * (31 * (key != null ? key.hashCode() : 0) + (locale != null ? locale.hashCode() : 0)) + System.identityHashCode(dbQuery);
+		}
+		
+		public int hashCode()
+		{
+			return hashCode;
+		}
+		
+		public boolean equals(Object object)
+		{
+			if (this == object) return true;
+			if (!(object instanceof RequestKey)) return false;
+			
+			RequestKey other = (RequestKey) object;
+			
+			return (key != null ? key.equals(other.key) : other.key == null) && (locale != null ? locale.equals(other.locale) : other.locale == null) && dbQuery == other.dbQuery;
+		}
+	}
+}
@@ -15,30 +15,112 @@
  */
 package es.molabs.jdbc.language;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.LocaleUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import es.molabs.jdbc.DbQuery;
+import es.molabs.jdbc.language.cache.KeyFilter;
+import es.molabs.jdbc.language.cache.LocaleColumns;
+import es.molabs.jdbc.language.cache.LocalizedKeyCache;
+import es.molabs.jdbc.language.cache.MissingKeyCache;
+import es.molabs.jdbc.language.cache.MappedSnapshotWriter;
+import es.molabs.jdbc.language.cache.SnapshotRowHandler;
+import es.molabs.jdbc.language.cache.TranslationSnapshot;
+import es.molabs.jdbc.language.db.ChangeLogCursor;
 import es.molabs.jdbc.language.db.DbMultilanguage;
+import es.molabs.jdbc.language.db.LookupBatcher;
+import es.molabs.jdbc.language.db.dao.BundleRowHandler;
+import es.molabs.jdbc.language.db.dao.KeyRowHandler;
+import es.molabs.jdbc.language.format.MessageTemplate;
+import es.molabs.jdbc.language.format.TemplateCache;
+import es.molabs.jdbc.language.io.ExportFormat;
+import es.molabs.jdbc.language.io.ImportFormat;
+import es.molabs.jdbc.language.io.ImportResult;
+import es.molabs.jdbc.language.io.KeyReader;
+import es.molabs.jdbc.language.io.KeyWriter;
+import es.molabs.jdbc.language.metrics.LanguageMetrics;
+import es.molabs.jdbc.language.metrics.NoOpLanguageMetrics;
+import es.molabs.jdbc.language.metrics.Operation;
 
 public class DbLanguageManager 
 {
+	// Maximum number of keys whose parsed templates are kept
+	private final static int MAX_TEMPLATE_KEYS = 4096;
+	
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 	
-	private Locale defaultLocale = null;
 	private String tableName = null;
 	private String keyName = null;
+	private String localeName = null;
+	private String valueName = null;
+	private String updatedName = null;
+	private String changeLogName = null;
+	private String changeLogIdName = null;
+	private String changeLogCreatedName = null;
 	
-	private Map<Locale, String> localeMap = null;
+	private volatile LocaleResolver localeResolver = null;
 	private DbMultilanguage dbMultilanguage = null;
+	private LocalizedKeyCache cache = null;
+	private MissingKeyCache missingKeyCache = null;
+	private volatile KeyFilter keyFilter = null;
+	private LookupBatcher lookupBatcher = null;
+	private LanguageMetrics metrics = null;
+	private boolean timed;
+	private volatile TranslationSnapshot snapshot = null;
+	private volatile LocaleColumns localeColumns = null;
+	private Object loadLock = null;
+	private Map<String, Map<Locale, Map<String, String>>> bundleMap = null;
+	private TemplateCache templateCache = null;
+	private volatile Timestamp lastUpdated = null;
+	private volatile ChangeLogCursor changeLogCursor = null;
+	private ScheduledExecutorService refreshExecutor = null;
+	
+	private long changeLogGapTimeout;
+	private long updatedLookback;
+	private boolean preload;
+	private boolean lazyLoad;
+	private boolean fallbackValues;
+	private int maxLoadedLocales;
+	private boolean deduplicateValues;
+	private Path snapshotFile = null;
+	private boolean warmStart;
+	private boolean filterKeys;
+	private double filterFalsePositiveRate;
+	private int fetchSize;
+	private int chunkSize;
+	private int batchSize;
+	private boolean cacheBundles;
+	private int maxCachedLength;
 	
 	private boolean initialized;
 	
@@ -49,24 +131,102 @@ public class DbLanguageManager
 	
 	public DbLanguageManager(Locale defaultLocale, String tableName, String keyName)
 	{
-		this.defaultLocale = defaultLocale;		
+		this(defaultLocale, tableName, keyName, null, null);
+	}
+	
+	public DbLanguageManager(Locale defaultLocale, String tableName, String keyName, String localeName, String valueName)
+	{
+		// Checks that the locale and value columns are set together
+		if ((localeName == null) != (valueName == null)) throw new IllegalArgumentException("LocaleName and ValueName parameters must be both set or both null.");
+		
 		this.tableName = tableName;
 		this.keyName = keyName;
+		this.localeName = localeName;
+		this.valueName = valueName;
 		
-		localeMap = new LinkedHashMap<Locale, String>();
+		localeResolver = new LocaleResolver(new LinkedHashMap<Locale, String>(), defaultLocale);
 		dbMultilanguage = new DbMultilanguage(this);
+		bundleMap = new ConcurrentHashMap<String, Map<Locale, Map<String, String>>>();
+		templateCache = new TemplateCache(MAX_TEMPLATE_KEYS);
+		metrics = NoOpLanguageMetrics.getInstance();
+		timed = false;
+		loadLock = new Object();
+		
+		changeLogIdName = "id";
+		changeLogCreatedName = "created";
+		changeLogGapTimeout = 60000;
+		updatedLookback = 5000;
+		
+		preload = false;
+		lazyLoad = false;
+		fallbackValues = false;
+		maxLoadedLocales = Integer.MAX_VALUE;
+		deduplicateValues = true;
+		warmStart = false;
+		filterKeys = false;
+		filterFalsePositiveRate = 0.01;
+		fetchSize = 0;
+		chunkSize = 500;
+		batchSize = 100;
+		cacheBundles = false;
+		maxCachedLength = Integer.MAX_VALUE;
 		
 		initialized = false;
 	}
 	
 	public void init()
+	{
+		init(null);
+	}
+	
+	public void init(DbQuery dbQuery)
 	{		
 		if (!initialized)
 		{
+			// If preload is enabled loads the whole table before accepting lookups
+			if (preload && dbQuery == null) throw new IllegalArgumentException("DbQuery parameter cannot be null when preload is enabled.");
+			
+			// The key filter is built from the whole table too
+			if (filterKeys && dbQuery == null) throw new IllegalArgumentException("DbQuery parameter cannot be null when the key filter is enabled.");
+			
+			// The changes made from now on, even while the table is loaded, are picked up by the next refresh
+			if (dbQuery != null && updatedName != null) lastUpdated = dbMultilanguage.getLastUpdated(dbQuery);
+			if (dbQuery != null && changeLogName != null) changeLogCursor = dbMultilanguage.getChangeLogCursor(changeLogGapTimeout, dbQuery);
+			
+			// If warm start is enabled the previous snapshot file is served while the table is read in the background
+			TranslationSnapshot fileSnapshot = (preload && warmStart ? loadSnapshotFile() : null);
+			boolean incremental = false;
+			
+			if (fileSnapshot != null)
+			{
+				snapshot = fileSnapshot;
+				
+				// The changes made since the file was written are read from the change log if it still has them all
+				if (changeLogName != null && fileSnapshot.getVersion() >= 0)
+				{
+					incremental = hasChangesSince(fileSnapshot.getVersion(), dbQuery);
+					
+					if (incremental) changeLogCursor = new ChangeLogCursor(fileSnapshot.getVersion(), changeLogGapTimeout);
+					else logger.warn("Change log does not have every change since version [" + fileSnapshot.getVersion() + "], loading the table.");
+				}
+			}
+			else if (preload)
+			{
+				preload(dbQuery);
+			}
+			
+			// The preloaded snapshot already knows every key
+			if (filterKeys && snapshot == null) keyFilter = loadKeyFilter(dbQuery);
+			
+			// If lazy load is enabled each locale is loaded by its first lookup
+			if (lazyLoad) localeColumns = new LocaleColumns(maxLoadedLocales);
+			
 			// Sets the manager as initialized
 			initialized = true;
 			
 			logger.info("Initialized.");
+			
+			if (fileSnapshot != null) reconcile(incremental, dbQuery);
 		}
 		else
 		{
@@ -81,6 +241,19 @@ public class DbLanguageManager
 			// Sets the manager as not initialized
 			initialized = false;
 			
+			stopRefresh();
+			
+			// Clears the cached values
+			if (cache != null) cache.invalidateAll();
+			if (missingKeyCache != null) missingKeyCache.invalidateAll();
+			bundleMap.clear();
+			templateCache.clear();
+			snapshot = null;
+			localeColumns = null;
+			keyFilter = null;
+			lastUpdated = null;
+			changeLogCursor = null;
+			
 			logger.info("Destroyed.");
 		}
 		else
@@ -96,12 +269,16 @@ public class DbLanguageManager
 	
 	public Locale getDefaultLocale()
 	{
-		return defaultLocale;
+		return localeResolver.getDefaultLocale();
 	}
 	
 	public void setDefaultLocale(Locale defaultLocale)
 	{
-		this.defaultLocale = defaultLocale;
+		// Previous resolutions could depend on the old default locale
+		synchronized (this)
+		{
+			localeResolver = localeResolver.withDefaultLocale(defaultLocale);
+		}
 	}
 	
 	public String getTableName()
@@ -114,82 +291,1712 @@ public class DbLanguageManager
 		return keyName;
 	}
 	
-	public void setField(String field, Locale locale)
+	public String getLocaleName()
 	{
-		localeMap.put(locale, field);
+		return localeName;
 	}
 	
-	public String getField(Locale locale)
+	public String getValueName()
 	{
-		return localeMap.get(normalizeLocale(locale));
+		return valueName;
 	}
 	
-	public String getLocalizedKey(String key, Locale locale, DbQuery dbQuery)
+	public String getUpdatedName()
 	{
-		if (!initialized) throw new IllegalStateException("Not initialized.");
+		return updatedName;
+	}
+	
+	public void setUpdatedName(String updatedName)
+	{
+		this.updatedName = updatedName;
 		
-		return dbMultilanguage.getKey(key, getField(locale), dbQuery);
+		// The statements depend on the updated column
+		dbMultilanguage.reset();
+		lastUpdated = null;
 	}
 	
-	public List<LocaleValue> getKey(String key, DbQuery dbQuery)
+	public long getUpdatedLookback()
 	{
-		return dbMultilanguage.getKey(key, dbQuery);
+		return updatedLookback;
 	}
 	
-	public void addKey(DbQuery dbQuery, LocalizedKey...localizedKeys)
+	public void setUpdatedLookback(long updatedLookback)
 	{
-		dbMultilanguage.insertKey(dbQuery, localizedKeys);
+		// Checks that the lookback is valid
+		if (updatedLookback < 0) throw new IllegalArgumentException("UpdatedLookback parameter cannot be negative.");
+		
+		// A row stamped longer than the lookback before it commits is missed, the change log does not have this limit
+		this.updatedLookback = updatedLookback;
 	}
 	
-	public void setKey(DbQuery dbQuery, LocalizedKey...localizedKeys)
+	public String getChangeLogName()
 	{
-		dbMultilanguage.updateKey(dbQuery, localizedKeys);
+		return changeLogName;
 	}
 	
-	public void removeKey(String key, DbQuery dbQuery)
+	public void setChangeLogName(String changeLogName)
 	{
-		dbMultilanguage.deleteKey(key, dbQuery);
+		setChangeLogName(changeLogName, "id", "created");
 	}
 	
-	public void duplicateKey(String sourceKey, String destinationKey, DbQuery dbQuery)
+	public void setChangeLogName(String changeLogName, String changeLogIdName, String changeLogCreatedName)
 	{
-		dbMultilanguage.duplicateKey(sourceKey, destinationKey, dbQuery);
+		this.changeLogName = changeLogName;
+		this.changeLogIdName = changeLogIdName;
+		this.changeLogCreatedName = changeLogCreatedName;
+		
+		// The statements depend on the change log
+		dbMultilanguage.reset();
+		changeLogCursor = null;
 	}
 	
-	public StringBuilder exportKey(String key, StringBuilder sql, DbQuery dbQuery)
+	public String getChangeLogIdName()
 	{
-		return dbMultilanguage.export(key, sql, dbQuery);
+		return changeLogIdName;
 	}
 	
-	public Locale normalizeLocale(Locale locale)
+	public String getChangeLogCreatedName()
 	{
-		// If the locale map does not exists the locale
-		if (!localeMap.containsKey(locale))
-		{		
-			// Gets the locale lookupList, if the locale is null returns the default locale because LocaleUtils.localeLookupList returns an empty list
-			List<Locale> lookupList = LocaleUtils.localeLookupList((locale != null ? locale : defaultLocale), defaultLocale);
-						
-			// For each locale in the list, looks for the key till is not null of the iterator ends			
-			Iterator<Locale> iterator = lookupList.iterator();
-			
-			while (iterator.hasNext())
+		return changeLogCreatedName;
+	}
+	
+	public long getChangeLogGapTimeout()
+	{
+		return changeLogGapTimeout;
+	}
+	
+	public void setChangeLogGapTimeout(long changeLogGapTimeout)
+	{
+		// Checks that the timeout is valid
+		if (changeLogGapTimeout < 0) throw new IllegalArgumentException("ChangeLogGapTimeout parameter cannot be negative.");
+		
+		this.changeLogGapTimeout = changeLogGapTimeout;
+	}
+	
+	public boolean isPreload()
+	{
+		return preload;
+	}
+	
+	public void setPreload(boolean preload)
+	{
+		this.preload = preload;
+	}
+	
+	public boolean isLazyLoad()
+	{
+		return lazyLoad;
+	}
+	
+	public void setLazyLoad(boolean lazyLoad)
+	{
+		this.lazyLoad = lazyLoad;
+	}
+	
+	public boolean isFallbackValues()
+	{
+		return fallbackValues;
+	}
+	
+	public void setFallbackValues(boolean fallbackValues)
+	{
+		this.fallbackValues = fallbackValues;
+	}
+	
+	public int getMaxLoadedLocales()
+	{
+		return maxLoadedLocales;
+	}
+	
+	public void setMaxLoadedLocales(int maxLoadedLocales)
+	{
+		// Checks that the number of locales is valid
+		if (maxLoadedLocales <= 0) throw new IllegalArgumentException("MaxLoadedLocales parameter must be greater than 0.");
+		
+		this.maxLoadedLocales = maxLoadedLocales;
+	}
+	
+	public Set<Locale> getLoadedLocaleSet()
+	{
+		LocaleColumns currentColumns = localeColumns;
+		
+		return (currentColumns != null ? currentColumns.getLocaleSet() : Collections.<Locale>emptySet());
+	}
+	
+	public boolean unloadLocale(Locale locale)
+	{
+		LocaleColumns currentColumns = localeColumns;
+		
+		return (currentColumns != null && currentColumns.remove(normalizeLocale(locale)));
+	}
+	
+	public boolean isDeduplicateValues()
+	{
+		return deduplicateValues;
+	}
+	
+	public void setDeduplicateValues(boolean deduplicateValues)
+	{
+		this.deduplicateValues = deduplicateValues;
+	}
+	
+	public Path getSnapshotFile()
+	{
+		return snapshotFile;
+	}
+	
+	public void setSnapshotFile(Path snapshotFile)
+	{
+		this.snapshotFile = snapshotFile;
+	}
+	
+	public boolean isWarmStart()
+	{
+		return warmStart;
+	}
+	
+	public void setWarmStart(boolean warmStart)
+	{
+		this.warmStart = warmStart;
+	}
+	
+	public boolean isFilterKeys()
+	{
+		return filterKeys;
+	}
+	
+	public void setFilterKeys(boolean filterKeys)
+	{
+		this.filterKeys = filterKeys;
+	}
+	
+	public double getFilterFalsePositiveRate()
+	{
+		return filterFalsePositiveRate;
+	}
+	
+	public void setFilterFalsePositiveRate(double filterFalsePositiveRate)
+	{
+		// Checks that the rate is valid
+		if (filterFalsePositiveRate <= 0 || filterFalsePositiveRate >= 1) throw new IllegalArgumentException("FilterFalsePositiveRate parameter must be between 0 and 1.");
+		
+		this.filterFalsePositiveRate = filterFalsePositiveRate;
+	}
+	
+	public KeyFilter getKeyFilter()
+	{
+		return keyFilter;
+	}
+	
+	public int getFetchSize()
+	{
+		return fetchSize;
+	}
+	
+	public void setFetchSize(int fetchSize)
+	{
+		this.fetchSize = fetchSize;
+	}
+	
+	public int getChunkSize()
+	{
+		return chunkSize;
+	}
+	
+	public void setChunkSize(int chunkSize)
+	{
+		// Checks that the chunk size is valid
+		if (chunkSize <= 0) throw new IllegalArgumentException("ChunkSize parameter must be greater than 0.");
+		
+		this.chunkSize = chunkSize;
+	}
+	
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+	
+	public void setBatchSize(int batchSize)
+	{
+		// Checks that the batch size is valid
+		if (batchSize <= 0) throw new IllegalArgumentException("BatchSize parameter must be greater than 0.");
+		
+		this.batchSize = batchSize;
+	}
+	
+	public boolean isCacheBundles()
+	{
+		return cacheBundles;
+	}
+	
+	public void setCacheBundles(boolean cacheBundles)
+	{
+		this.cacheBundles = cacheBundles;
+		
+		if (!cacheBundles) bundleMap.clear();
+	}
+	
+	public int getMaxCachedLength()
+	{
+		return maxCachedLength;
+	}
+	
+	public void setMaxCachedLength(int maxCachedLength)
+	{
+		// Checks that the maximum length is valid
+		if (maxCachedLength <= 0) throw new IllegalArgumentException("MaxCachedLength parameter must be greater than 0.");
+		
+		this.maxCachedLength = maxCachedLength;
+	}
+	
+	public LocalizedKeyCache getCache()
+	{
+		return cache;
+	}
+	
+	public void setCache(LocalizedKeyCache cache)
+	{
+		this.cache = cache;
+	}
+	
+	public MissingKeyCache getMissingKeyCache()
+	{
+		return missingKeyCache;
+	}
+	
+	public void setMissingKeyCache(MissingKeyCache missingKeyCache)
+	{
+		this.missingKeyCache = missingKeyCache;
+	}
+	
+	public LookupBatcher getLookupBatcher()
+	{
+		return lookupBatcher;
+	}
+	
+	public void setLookupBatcher(LookupBatcher lookupBatcher)
+	{
+		this.lookupBatcher = lookupBatcher;
+	}
+	
+	public LanguageMetrics getMetrics()
+	{
+		return metrics;
+	}
+	
+	public void setMetrics(LanguageMetrics metrics)
+	{
+		this.metrics = (metrics != null ? metrics : NoOpLanguageMetrics.getInstance());
+		
+		// The operations are only timed if the times are recorded
+		timed = (this.metrics != NoOpLanguageMetrics.getInstance());
+	}
+	
+	public void setField(String field, Locale locale)
+	{
+		// Readers keep using the previous locales till the new ones are set
+		synchronized (this)
+		{
+			// With one row per locale the locale of each row is found by its field
+			if (localeName != null)
 			{
-				Locale lookupLocale = iterator.next();
+				Iterator<Locale> iterator = localeResolver.getLocaleSet().iterator();
 				
-				if (localeMap.containsKey(lookupLocale))
+				while (iterator.hasNext())
 				{
-					locale = lookupLocale;
+					Locale otherLocale = iterator.next();
 					
-					break;
-				}			
+					if (!otherLocale.equals(locale) && StringUtils.equals(localeResolver.getField(otherLocale), field)) throw new IllegalArgumentException("Field parameter [" + field + "] is already set for locale [" + otherLocale + "].");
+				}
 			}
+			
+			localeResolver = localeResolver.withField(field, locale);
+		}
+		
+		// The statements depend on the locales
+		dbMultilanguage.reset();
+		
+		// The cached values could belong to the previous field
+		if (cache != null) cache.invalidateAll();
+		if (missingKeyCache != null) missingKeyCache.invalidateAll();
+		bundleMap.clear();
+		templateCache.clear();
+		
+		// The loaded locales could belong to the previous field
+		LocaleColumns currentColumns = localeColumns;
+		if (currentColumns != null) currentColumns.clear();
+		
+		// The snapshot does not contain the new field so lookups go back to the database
+		if (snapshot != null)
+		{
+			snapshot = null;
+			
+			logger.warn("Field changed, preloaded snapshot discarded.");
 		}
+	}
+	
+	public String getField(Locale locale)
+	{
+		LocaleResolver currentResolver = localeResolver;
 		
-		return locale;
+		return currentResolver.getField(currentResolver.normalize(locale));
 	}
 	
-	public Set<Locale> getLocaleSet()
+	public String getLocalizedKey(String key, Locale locale, DbQuery dbQuery)
+	{
+		if (!initialized) throw new IllegalStateException("Not initialized.");
+		
+		long startTime = startOperation();
+		
+		Locale normalizedLocale = normalizeLocale(locale);
+		String value = lookup(key, normalizedLocale, dbQuery);
+		
+		recordOperation(Operation.GET, startTime);
+		metrics.recordLookup(key, normalizedLocale);
+		if (value == null) metrics.recordMiss(key, normalizedLocale);
+		
+		return value;
+	}
+	
+	public long writeLocalizedKey(String key, Locale locale, Writer writer, DbQuery dbQuery) throws IOException
+	{
+		if (!initialized) throw new IllegalStateException("Not initialized.");
+		
+		long startTime = startOperation();
+		
+		Locale normalizedLocale = normalizeLocale(locale);
+		long count = write(key, normalizedLocale, writer, dbQuery);
+		
+		recordOperation(Operation.GET, startTime);
+		metrics.recordLookup(key, normalizedLocale);
+		if (count < 0) metrics.recordMiss(key, normalizedLocale);
+		
+		return count;
+	}
+	
+	public String format(String key, Locale locale, DbQuery dbQuery, Object...args)
+	{
+		String pattern = getLocalizedKey(key, locale, dbQuery);
+		
+		if (pattern == null) return null;
+		
+		Locale normalizedLocale = localeResolver.normalize(locale);
+		MessageTemplate template = templateCache.get(key, normalizedLocale);
+		
+		// The pattern is parsed again if the value was changed without going through this manager
+		if (template == null || !template.getPattern().equals(pattern))
+		{
+			template = new MessageTemplate(pattern, normalizedLocale);
+			
+			templateCache.put(key, normalizedLocale, template);
+		}
+		
+		return template.format(args);
+	}
+	
+	public Map<String, String> getLocalizedKeys(Collection<String> keys, Locale locale, DbQuery dbQuery)
+	{
+		if (!initialized) throw new IllegalStateException("Not initialized.");
+		
+		long startTime = startOperation();
+		
+		Locale normalizedLocale = normalizeLocale(locale);
+		Map<String, String> valueMap = lookup(keys, normalizedLocale, dbQuery);
+		
+		recordOperation(Operation.GET, startTime);
+		
+		Iterator<String> iterator = keys.iterator();
+		
+		while (iterator.hasNext())
+		{
+			String key = iterator.next();
+			
+			metrics.recordLookup(key, normalizedLocale);
+			if (valueMap.get(key) == null) metrics.recordMiss(key, normalizedLocale);
+		}
+		
+		return valueMap;
+	}
+	
+	public Map<String, List<LocaleValue>> getKeys(Collection<String> keys, DbQuery dbQuery)
 	{
-		return localeMap.keySet();
+		long startTime = startOperation();
+		
+		try
+		{
+			// If the table is preloaded the values are served from the snapshot
+			TranslationSnapshot currentSnapshot = snapshot;
+			if (currentSnapshot != null)
+			{
+				Map<String, List<LocaleValue>> localeValueMap = new HashMap<String, List<LocaleValue>>();
+				Iterator<String> iterator = keys.iterator();
+			
+				while (iterator.hasNext())
+				{
+					String key = iterator.next();
+					List<LocaleValue> localeValueList = currentSnapshot.getLocaleValues(key);
+				
+					if (localeValueList != null) localeValueMap.put(key, localeValueList);
+				}
+			
+				return localeValueMap;
+			}
+			
+			return dbMultilanguage.getKeys(keys, chunkSize, dbQuery);
+		}
+		finally
+		{
+			recordOperation(Operation.GET, startTime);
+		}
+	}
+	
+	public Map<Locale, Map<String, String>> getBundle(String prefix, DbQuery dbQuery)
+	{
+		if (!initialized) throw new IllegalStateException("Not initialized.");
+		
+		long startTime = startOperation();
+		
+		try
+		{
+			// If the bundle is cached
+			Map<Locale, Map<String, String>> bundle = bundleMap.get(prefix);
+			if (bundle != null) return bundle;
+			
+			// If the table is preloaded the bundle is built from the snapshot
+			TranslationSnapshot currentSnapshot = snapshot;
+			if (currentSnapshot != null)
+			{
+				BundleRowHandler handler = new BundleRowHandler(Arrays.asList(currentSnapshot.getLocales()));
+				currentSnapshot.forEach(prefix, handler);
+			
+				bundle = handler.toMap();
+			}
+			else
+			{
+				bundle = dbMultilanguage.getBundle(prefix, dbQuery);
+			}
+			
+			if (cacheBundles) bundleMap.put(prefix, bundle);
+			
+			return bundle;
+		}
+		finally
+		{
+			recordOperation(Operation.GET, startTime);
+		}
+	}
+	
+	public Map<String, String> getBundle(String prefix, Locale locale, DbQuery dbQuery)
+	{
+		Map<String, String> bundle = getBundle(prefix, dbQuery).get(normalizeLocale(locale));
+		
+		return (bundle != null ? bundle : Collections.<String, String>emptyMap());
+	}
+	
+	public List<LocaleValue> getKey(String key, DbQuery dbQuery)
+	{
+		long startTime = startOperation();
+		
+		try
+		{
+			// If the table is preloaded the values are served from the snapshot
+			TranslationSnapshot currentSnapshot = snapshot;
+			if (currentSnapshot != null) return currentSnapshot.getLocaleValues(key);
+			
+			// Keys that are not in the table are answered without going to the database
+			KeyFilter currentFilter = keyFilter;
+			if (currentFilter != null && !currentFilter.mightContain(key)) return null;
+			
+			return dbMultilanguage.getKey(key, dbQuery);
+		}
+		finally
+		{
+			recordOperation(Operation.GET, startTime);
+		}
+	}
+	
+	public void addKey(DbQuery dbQuery, LocalizedKey...localizedKeys)
+	{
+		long startTime = startOperation();
+		
+		try
+		{
+			dbMultilanguage.insertKey(dbQuery, batchSize, localizedKeys);
+			
+			invalidate(localizedKeys);
+			
+			// The fallback values are merged from the stored ones
+			if (fallbackValues)
+			{
+				reloadKeys(localizedKeys, dbQuery);
+				
+				return;
+			}
+			
+			// Adds the keys to the snapshot
+			TranslationSnapshot currentSnapshot = snapshot;
+			if (currentSnapshot != null)
+			{
+				for (int i=0; i<localizedKeys.length; i++)
+				{
+					currentSnapshot.put(localizedKeys[i]);
+				}
+			}
+			
+			// Adds the keys to the loaded locales
+			LocaleColumns currentColumns = localeColumns;
+			if (currentColumns != null)
+			{
+				for (int i=0; i<localizedKeys.length; i++)
+				{
+					currentColumns.putKey(localizedKeys[i]);
+				}
+			}
+		}
+		finally
+		{
+			recordOperation(Operation.INSERT, startTime);
+		}
+	}
+	
+	public int addKeys(DbQuery dbQuery, Iterator<LocalizedKey> iterator)
+	{
+		List<LocalizedKey> localizedKeyList = new ArrayList<LocalizedKey>(batchSize);
+		int count = 0;
+		
+		// Inserts the keys in blocks so only one block is kept in memory
+		while (iterator.hasNext())
+		{
+			localizedKeyList.add(iterator.next());
+			
+			if (localizedKeyList.size() == batchSize || !iterator.hasNext())
+			{
+				addKey(dbQuery, localizedKeyList.toArray(new LocalizedKey[localizedKeyList.size()]));
+				
+				count += localizedKeyList.size();
+				localizedKeyList.clear();
+			}
+		}
+		
+		return count;
+	}
+	
+	public void setKey(DbQuery dbQuery, LocalizedKey...localizedKeys)
+	{
+		long startTime = startOperation();
+		
+		try
+		{
+			dbMultilanguage.updateKey(dbQuery, localizedKeys);
+			
+			invalidate(localizedKeys);
+			
+			// The other values of the keys are needed to merge the fallback values
+			if (fallbackValues)
+			{
+				reloadKeys(localizedKeys, dbQuery);
+				
+				return;
+			}
+			
+			// Updates the keys in the snapshot
+			TranslationSnapshot currentSnapshot = snapshot;
+			if (currentSnapshot != null)
+			{
+				for (int i=0; i<localizedKeys.length; i++)
+				{
+					currentSnapshot.merge(localizedKeys[i]);
+				}
+			}
+			
+			// Updates the keys in the loaded locales
+			LocaleColumns currentColumns = localeColumns;
+			if (currentColumns != null)
+			{
+				for (int i=0; i<localizedKeys.length; i++)
+				{
+					currentColumns.mergeKey(localizedKeys[i]);
+				}
+			}
+		}
+		finally
+		{
+			recordOperation(Operation.UPDATE, startTime);
+		}
+	}
+	
+	public void removeKey(String key, DbQuery dbQuery)
+	{
+		long startTime = startOperation();
+		
+		try
+		{
+			dbMultilanguage.deleteKey(key, dbQuery);
+			
+			invalidateKey(key);
+			
+			TranslationSnapshot currentSnapshot = snapshot;
+			if (currentSnapshot != null) currentSnapshot.remove(key);
+			
+			LocaleColumns currentColumns = localeColumns;
+			if (currentColumns != null) currentColumns.removeKey(key);
+		}
+		finally
+		{
+			recordOperation(Operation.DELETE, startTime);
+		}
+	}
+	
+	public void duplicateKey(String sourceKey, String destinationKey, DbQuery dbQuery)
+	{
+		long startTime = startOperation();
+		
+		try
+		{
+			dbMultilanguage.duplicateKey(sourceKey, destinationKey, dbQuery);
+			
+			invalidateKey(destinationKey);
+			
+			TranslationSnapshot currentSnapshot = snapshot;
+			if (currentSnapshot != null) currentSnapshot.copy(sourceKey, destinationKey);
+			
+			LocaleColumns currentColumns = localeColumns;
+			if (currentColumns != null) currentColumns.copyKey(sourceKey, destinationKey);
+		}
+		finally
+		{
+			recordOperation(Operation.DUPLICATE, startTime);
+		}
+	}
+	
+	public StringBuilder exportKey(String key, StringBuilder sql, DbQuery dbQuery)
+	{
+		long startTime = startOperation();
+		
+		try
+		{
+			return dbMultilanguage.export(key, sql, dbQuery);
+		}
+		finally
+		{
+			recordOperation(Operation.EXPORT, startTime);
+		}
+	}
+	
+	public int exportKeys(KeyWriter keyWriter, DbQuery dbQuery) throws IOException
+	{
+		long startTime = startOperation();
+		
+		try
+		{
+			return dbMultilanguage.export(keyWriter, fetchSize, dbQuery);
+		}
+		finally
+		{
+			recordOperation(Operation.EXPORT, startTime);
+		}
+	}
+	
+	public int exportKeys(Writer writer, ExportFormat exportFormat, DbQuery dbQuery) throws IOException
+	{
+		return exportKeys(exportFormat.createWriter(writer), dbQuery);
+	}
+	
+	public int exportKeys(OutputStream outputStream, ExportFormat exportFormat, DbQuery dbQuery) throws IOException
+	{
+		// The stream is not closed, only flushed
+		Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		
+		return exportKeys(writer, exportFormat, dbQuery);
+	}
+	
+	public ImportResult importKeys(KeyReader keyReader, DbQuery dbQuery) throws IOException
+	{
+		// Columns are matched by locale or by field name
+		Map<String, Locale> columnMap = new HashMap<String, Locale>();
+		Iterator<Locale> iterator = getLocaleSet().iterator();
+		
+		while (iterator.hasNext())
+		{
+			Locale locale = iterator.next();
+			
+			columnMap.put(getField(locale), locale);
+			columnMap.put(locale.toString(), locale);
+		}
+		
+		keyReader.readStart(keyName, columnMap);
+		
+		int[] counts = new int[3];
+		Map<String, LocalizedKey> localizedKeyMap = new LinkedHashMap<String, LocalizedKey>();
+		
+		LocalizedKey localizedKey = keyReader.readKey();
+		
+		// Reads the keys in blocks so only one block is kept in memory
+		while (localizedKey != null)
+		{
+			// If a key is repeated in the block the last one is used
+			localizedKeyMap.put(localizedKey.getKey(), localizedKey);
+			
+			localizedKey = keyReader.readKey();
+			
+			if (localizedKeyMap.size() == batchSize || localizedKey == null)
+			{
+				importBlock(localizedKeyMap, counts, dbQuery);
+				
+				localizedKeyMap.clear();
+			}
+		}
+		
+		ImportResult importResult = new ImportResult(counts[0], counts[1], counts[2]);
+		
+		logger.info("Imported keys, " + importResult + ".");
+		
+		return importResult;
+	}
+	
+	public ImportResult importKeys(Reader reader, ImportFormat importFormat, DbQuery dbQuery) throws IOException
+	{
+		return importKeys(importFormat.createReader(reader), dbQuery);
+	}
+	
+	public ImportResult importKeys(Path path, ImportFormat importFormat, DbQuery dbQuery) throws IOException
+	{
+		Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+		
+		try
+		{
+			return importKeys(reader, importFormat, dbQuery);
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+	
+	public Locale normalizeLocale(Locale locale)
+	{
+		Locale normalizedLocale = localeResolver.normalize(locale);
+		
+		if (locale == null || !locale.equals(normalizedLocale)) metrics.recordFallback(locale, normalizedLocale);
+		
+		return normalizedLocale;
+	}
+	
+	public Set<Locale> getLocaleSet()
+	{
+		return localeResolver.getLocaleSet();
+	}
+	
+	public int refresh(DbQuery dbQuery)
+	{
+		if (!initialized) throw new IllegalStateException("Not initialized.");
+		
+		// Checks that there is a way to detect the changes
+		if (updatedName == null && changeLogName == null) throw new IllegalStateException("Updated name or change log name not set.");
+		
+		int count = 0;
+		
+		if (updatedName != null) count += refreshUpdated(dbQuery);
+		if (changeLogName != null) count += refreshChangeLog(dbQuery);
+		
+		return count;
+	}
+	
+	public int purgeChangeLog(long age, TimeUnit unit, DbQuery dbQuery)
+	{
+		// Every node must have read the changes before they are purged
+		return dbMultilanguage.purgeChanges(new Timestamp(System.currentTimeMillis() - unit.toMillis(age)), dbQuery);
+	}
+	
+	public synchronized void startRefresh(final DbQuery dbQuery, long period, TimeUnit unit)
+	{
+		if (!initialized) throw new IllegalStateException("Not initialized.");
+		
+		// Checks that there is a way to detect the changes
+		if (updatedName == null && changeLogName == null) throw new IllegalStateException("Updated name or change log name not set.");
+		
+		if (refreshExecutor != null)
+		{
+			logger.warn("Refresh already started.");
+			
+			return;
+		}
+		
+		refreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "language-refresh");
+				thread.setDaemon(true);
+				
+				return thread;
+			}
+		});
+		
+		refreshExecutor.scheduleWithFixedDelay(new Runnable()
+		{
+			public void run()
+			{
+				// An exception would cancel the next executions
+				try
+				{
+					if (initialized) refresh(dbQuery);
+				}
+				catch (Exception e)
+				{
+					logger.error("Error refreshing keys.", e);
+				}
+			}
+		}, period, period, unit);
+		
+		logger.info("Refresh started every [" + period + "] " + unit.toString().toLowerCase() + ".");
+	}
+	
+	public synchronized void stopRefresh()
+	{
+		if (refreshExecutor != null)
+		{
+			refreshExecutor.shutdownNow();
+			refreshExecutor = null;
+			
+			logger.info("Refresh stopped.");
+		}
+	}
+	
+	public synchronized boolean isRefreshStarted()
+	{
+		return refreshExecutor != null;
+	}
+	
+	public void invalidateKey(String key)
+	{
+		// Removes the parsed templates of the key
+		templateCache.remove(key);
+		
+		// Removes the cached bundles that contain the key
+		if (!bundleMap.isEmpty())
+		{
+			Iterator<String> prefixIterator = bundleMap.keySet().iterator();
+			
+			while (prefixIterator.hasNext())
+			{
+				if (key.startsWith(prefixIterator.next())) prefixIterator.remove();
+			}
+		}
+		
+		// A changed key could be a new one so it must pass the filter from now on
+		KeyFilter currentFilter = keyFilter;
+		if (currentFilter != null) currentFilter.add(key);
+		
+		// Values are cached by normalized locale so only the registered locales can contain the key
+		if (cache != null || missingKeyCache != null)
+		{
+			Iterator<Locale> iterator = localeResolver.getLocaleSet().iterator();
+			
+			while (iterator.hasNext())
+			{
+				Locale locale = iterator.next();
+				
+				if (cache != null) cache.invalidate(key, locale);
+				if (missingKeyCache != null) missingKeyCache.invalidate(key, locale);
+			}
+		}
+	}
+	
+	private long startOperation()
+	{
+		return (timed ? System.nanoTime() : 0);
+	}
+	
+	private void recordOperation(Operation operation, long startTime)
+	{
+		// An operation started before the metrics were set was not timed
+		if (timed && startTime != 0) metrics.recordOperation(operation, System.nanoTime() - startTime);
+	}
+	
+	private String lookup(String key, Locale normalizedLocale, DbQuery dbQuery)
+	{
+		// If the table is preloaded the value is served from the snapshot
+		TranslationSnapshot currentSnapshot = snapshot;
+		if (currentSnapshot != null) return currentSnapshot.get(key, normalizedLocale);
+		
+		// If the locales are loaded on demand the value is served from the locale
+		TranslationSnapshot column = getColumn(normalizedLocale, dbQuery);
+		if (column != null) return column.get(key, normalizedLocale);
+		
+		// If there is a cache looks for the value there first
+		if (cache != null)
+		{
+			String value = cache.get(key, normalizedLocale);
+			
+			if (value != null) return value;
+		}
+		
+		// Keys that are not in the table are answered without going to the database
+		if (isMissing(key, normalizedLocale)) return null;
+		
+		String field = localeResolver.getField(normalizedLocale);
+		
+		// Taken before the value is read so a value invalidated meanwhile is not cached
+		long cacheGeneration = (cache != null ? cache.getGeneration() : 0);
+		long missingGeneration = (missingKeyCache != null ? missingKeyCache.getGeneration() : 0);
+		
+		// If there is a batcher the concurrent lookups are read together
+		LookupBatcher currentBatcher = lookupBatcher;
+		String value = (currentBatcher != null ? currentBatcher.getKey(dbMultilanguage, key, field, dbQuery) : dbMultilanguage.getKey(key, field, dbQuery));
+		
+		// The merged value is cached so the fallback locales are only read once
+		if (value == null && fallbackValues) value = lookupFallback(key, normalizedLocale, dbQuery);
+		
+		// The long values are not cached so they do not take the space of many short ones
+		if (cache != null && (value == null || value.length() <= maxCachedLength)) cache.put(key, normalizedLocale, value, cacheGeneration);
+		if (value == null && missingKeyCache != null) missingKeyCache.put(key, normalizedLocale, missingGeneration);
+		
+		return value;
+	}
+	
+	private Map<String, String> lookup(Collection<String> keys, Locale normalizedLocale, DbQuery dbQuery)
+	{
+		Map<String, String> valueMap = new HashMap<String, String>();
+		
+		// If the table is preloaded the values are served from the snapshot
+		TranslationSnapshot currentSnapshot = snapshot;
+		if (currentSnapshot != null)
+		{
+			Iterator<String> iterator = keys.iterator();
+			
+			while (iterator.hasNext())
+			{
+				String key = iterator.next();
+				
+				if (currentSnapshot.containsKey(key)) valueMap.put(key, currentSnapshot.get(key, normalizedLocale));
+			}
+			
+			return valueMap;
+		}
+		
+		// If the locales are loaded on demand the values are served from the locale
+		TranslationSnapshot column = getColumn(normalizedLocale, dbQuery);
+		if (column != null)
+		{
+			Iterator<String> iterator = keys.iterator();
+			
+			while (iterator.hasNext())
+			{
+				String key = iterator.next();
+				
+				if (column.containsKey(key)) valueMap.put(key, column.get(key, normalizedLocale));
+			}
+			
+			return valueMap;
+		}
+		
+		Collection<String> missingKeys = keys;
+		
+		// If there is a cache only the keys not found there are looked up, the keys known to be missing are skipped
+		if (cache != null || missingKeyCache != null || keyFilter != null)
+		{
+			missingKeys = new ArrayList<String>();
+			Iterator<String> iterator = keys.iterator();
+			
+			while (iterator.hasNext())
+			{
+				String key = iterator.next();
+				String value = (cache != null ? cache.get(key, normalizedLocale) : null);
+				
+				if (value != null)
+				{
+					valueMap.put(key, value);
+				}
+				else if (!isMissing(key, normalizedLocale))
+				{
+					missingKeys.add(key);
+				}
+			}
+		}
+		
+		if (!missingKeys.isEmpty())
+		{
+			// Taken before the values are read so the values invalidated meanwhile are not cached
+			long cacheGeneration = (cache != null ? cache.getGeneration() : 0);
+			long missingGeneration = (missingKeyCache != null ? missingKeyCache.getGeneration() : 0);
+			
+			Map<String, String> loadedMap = dbMultilanguage.getKeys(missingKeys, localeResolver.getField(normalizedLocale), chunkSize, dbQuery);
+			
+			if (fallbackValues) lookupFallback(missingKeys, loadedMap, normalizedLocale, dbQuery);
+			
+			if (cache != null)
+			{
+				Iterator<Map.Entry<String, String>> iterator = loadedMap.entrySet().iterator();
+				
+				while (iterator.hasNext())
+				{
+					Map.Entry<String, String> entry = iterator.next();
+					
+					if (entry.getValue() == null || entry.getValue().length() <= maxCachedLength) cache.put(entry.getKey(), normalizedLocale, entry.getValue(), cacheGeneration);
+				}
+			}
+			
+			if (missingKeyCache != null)
+			{
+				Iterator<String> iterator = missingKeys.iterator();
+				
+				while (iterator.hasNext())
+				{
+					String key = iterator.next();
+					
+					if (loadedMap.get(key) == null) missingKeyCache.put(key, normalizedLocale, missingGeneration);
+				}
+			}
+			
+			valueMap.putAll(loadedMap);
+		}
+		
+		return valueMap;
+	}
+	
+	private long write(String key, Locale normalizedLocale, Writer writer, DbQuery dbQuery) throws IOException
+	{
+		// The values held in memory are written from there
+		TranslationSnapshot currentSnapshot = snapshot;
+		TranslationSnapshot column = (currentSnapshot == null ? getColumn(normalizedLocale, dbQuery) : null);
+		String value = null;
+		
+		if (currentSnapshot != null) value = currentSnapshot.get(key, normalizedLocale);
+		else if (column != null) value = column.get(key, normalizedLocale);
+		else if (cache != null) value = cache.get(key, normalizedLocale);
+		
+		if (value != null)
+		{
+			writer.write(value);
+			
+			return value.length();
+		}
+		
+		if (currentSnapshot != null || column != null || isMissing(key, normalizedLocale)) return -1;
+		
+		long missingGeneration = (missingKeyCache != null ? missingKeyCache.getGeneration() : 0);
+		
+		// The value is copied from the database to the writer without being cached
+		Long count = dbMultilanguage.writeKey(key, localeResolver.getField(normalizedLocale), writer, dbQuery);
+		
+		if (count == null && fallbackValues)
+		{
+			Iterator<Locale> iterator = localeResolver.getFallbackLocales(normalizedLocale).iterator();
+			
+			// The first fallback locale with value
+			while (count == null && iterator.hasNext())
+			{
+				count = dbMultilanguage.writeKey(key, localeResolver.getField(iterator.next()), writer, dbQuery);
+			}
+		}
+		
+		if (count == null && missingKeyCache != null) missingKeyCache.put(key, normalizedLocale, missingGeneration);
+		
+		return (count != null ? count : -1);
+	}
+	
+	private boolean isMissing(String key, Locale normalizedLocale)
+	{
+		KeyFilter currentFilter = keyFilter;
+		if (currentFilter != null && !currentFilter.mightContain(key)) return true;
+		
+		return (missingKeyCache != null && missingKeyCache.contains(key, normalizedLocale));
+	}
+	
+	private TranslationSnapshot getColumn(Locale normalizedLocale, DbQuery dbQuery)
+	{
+		LocaleColumns currentColumns = localeColumns;
+		
+		if (currentColumns == null) return null;
+		
+		TranslationSnapshot column = currentColumns.get(normalizedLocale);
+		
+		if (column != null) return column;
+		
+		// Only one locale is loaded at a time, the lookups of the loaded ones and the changes are not blocked
+		synchronized (loadLock)
+		{
+			column = currentColumns.get(normalizedLocale);
+			
+			while (column == null)
+			{
+				String field = localeResolver.getField(normalizedLocale);
+				
+				// A locale without field cannot be loaded
+				if (field == null) return null;
+				
+				long startTime = System.currentTimeMillis();
+				
+				// Streams the column of the locale into its own snapshot, the changes made meanwhile are applied to it later
+				SnapshotRowHandler handler = new SnapshotRowHandler(Collections.singleton(normalizedLocale), deduplicateValues);
+				currentColumns.startLoad(normalizedLocale);
+				
+				try
+				{
+					if (fallbackValues)
+					{
+						streamFallbackField(normalizedLocale, handler, dbQuery);
+					}
+					else
+					{
+						dbMultilanguage.streamField(field, handler, fetchSize, dbQuery);
+					}
+				}
+				catch (RuntimeException re)
+				{
+					currentColumns.abortLoad(normalizedLocale);
+					
+					throw re;
+				}
+				
+				TranslationSnapshot newColumn = handler.toSnapshot();
+				Locale unloadedLocale = currentColumns.put(normalizedLocale, newColumn);
+				
+				// If the locales were cleared meanwhile the field could have changed so the locale is read again
+				column = currentColumns.get(normalizedLocale);
+				
+				if (column == null) continue;
+				
+				logger.info("Loaded [" + column.size() + "] keys for locale [" + normalizedLocale + "] in [" + (System.currentTimeMillis() - startTime) + "] ms.");
+				
+				if (unloadedLocale != null) logger.info("Unloaded locale [" + unloadedLocale + "].");
+			}
+		}
+		
+		return column;
+	}
+	
+	private int refreshUpdated(DbQuery dbQuery)
+	{
+		// Reads the last change before the changed rows so no change is lost between both queries
+		Timestamp since = lastUpdated;
+		Timestamp newLastUpdated = dbMultilanguage.getLastUpdated(dbQuery);
+		
+		// If there was no previous refresh the cached values cannot be trusted
+		if (since == null)
+		{
+			if (cache != null) cache.invalidateAll();
+			if (missingKeyCache != null) missingKeyCache.invalidateAll();
+			bundleMap.clear();
+			
+			lastUpdated = newLastUpdated;
+			
+			return 0;
+		}
+		
+		final TranslationSnapshot currentSnapshot = snapshot;
+		final LocaleColumns currentColumns = localeColumns;
+		final Locale[] locales = localeResolver.getLocaleSet().toArray(new Locale[0]);
+		
+		// Rows stamped before the last change are read again because their transactions could commit after it
+		Timestamp lookbackSince = new Timestamp(since.getTime() - updatedLookback);
+		
+		int count = dbMultilanguage.streamUpdatedKeys(lookbackSince, new KeyRowHandler()
+		{
+			public void handleRow(String key, String[] values)
+			{
+				String[] mergedValues = (fallbackValues ? localeResolver.mergeFallback(values) : values);
+				
+				if (currentSnapshot != null) currentSnapshot.put(key, mergedValues);
+				if (currentColumns != null) currentColumns.putKey(toLocalizedKey(key, locales, mergedValues));
+				
+				invalidateKey(key);
+			}
+		}, fetchSize, dbQuery);
+		
+		lastUpdated = newLastUpdated;
+		
+		logger.debug("Refreshed [" + count + "] keys changed since [" + since + "].");
+		
+		return count;
+	}
+	
+	private int refreshChangeLog(DbQuery dbQuery)
+	{
+		ChangeLogCursor cursor = changeLogCursor;
+		
+		// If there was no previous refresh the cached values cannot be trusted
+		if (cursor == null)
+		{
+			if (cache != null) cache.invalidateAll();
+			if (missingKeyCache != null) missingKeyCache.invalidateAll();
+			bundleMap.clear();
+			
+			changeLogCursor = dbMultilanguage.getChangeLogCursor(changeLogGapTimeout, dbQuery);
+			
+			return 0;
+		}
+		
+		long since = cursor.getLastChange();
+		
+		// A key changed several times is only refreshed once
+		Set<String> keySet = new LinkedHashSet<String>();
+		dbMultilanguage.getChanges(cursor, keySet, dbQuery);
+		
+		if (!keySet.isEmpty())
+		{
+			reloadKeys(keySet, dbQuery);
+			
+			Iterator<String> iterator = keySet.iterator();
+			
+			while (iterator.hasNext())
+			{
+				invalidateKey(iterator.next());
+			}
+		}
+		
+		logger.debug("Refreshed [" + keySet.size() + "] keys from the change log since [" + since + "].");
+		
+		return keySet.size();
+	}
+	
+	private void reloadKeys(LocalizedKey[] localizedKeys, DbQuery dbQuery)
+	{
+		List<String> keyList = new ArrayList<String>(localizedKeys.length);
+		
+		for (int i=0; i<localizedKeys.length; i++)
+		{
+			keyList.add(localizedKeys[i].getKey());
+		}
+		
+		reloadKeys(keyList, dbQuery);
+	}
+	
+	private void reloadKeys(Collection<String> keys, DbQuery dbQuery)
+	{
+		TranslationSnapshot currentSnapshot = snapshot;
+		LocaleColumns currentColumns = localeColumns;
+		
+		// If nothing is kept in memory there is nothing to read
+		if (currentSnapshot == null && (currentColumns == null || currentColumns.isEmpty())) return;
+		
+		// The values are read again, the deleted keys are removed
+		Map<String, List<LocaleValue>> localeValueMap = dbMultilanguage.getKeys(keys, chunkSize, dbQuery);
+		Iterator<String> iterator = keys.iterator();
+		
+		while (iterator.hasNext())
+		{
+			String key = iterator.next();
+			List<LocaleValue> localeValueList = localeValueMap.get(key);
+			
+			if (localeValueList != null)
+			{
+				LocalizedKey localizedKey = toLocalizedKey(key, localeValueList);
+				
+				if (currentSnapshot != null) currentSnapshot.put(localizedKey);
+				if (currentColumns != null) currentColumns.putKey(localizedKey);
+			}
+			else
+			{
+				if (currentSnapshot != null) currentSnapshot.remove(key);
+				if (currentColumns != null) currentColumns.removeKey(key);
+			}
+		}
+	}
+	
+	private KeyRowHandler withFallback(final KeyRowHandler handler)
+	{
+		if (!fallbackValues) return handler;
+		
+		// Each row gets the values of the fallback locales before it is handled
+		return new KeyRowHandler()
+		{
+			public void handleRow(String key, String[] values)
+			{
+				handler.handleRow(key, localeResolver.mergeFallback(values));
+			}
+		};
+	}
+	
+	private String lookupFallback(String key, Locale normalizedLocale, DbQuery dbQuery)
+	{
+		Iterator<Locale> iterator = localeResolver.getFallbackLocales(normalizedLocale).iterator();
+		
+		// The first fallback locale with value
+		while (iterator.hasNext())
+		{
+			String value = dbMultilanguage.getKey(key, localeResolver.getField(iterator.next()), dbQuery);
+			
+			if (value != null) return value;
+		}
+		
+		return null;
+	}
+	
+	private void lookupFallback(Collection<String> keys, Map<String, String> valueMap, Locale normalizedLocale, DbQuery dbQuery)
+	{
+		List<String> pendingList = new ArrayList<String>();
+		Iterator<String> keyIterator = keys.iterator();
+		
+		// The keys without value
+		while (keyIterator.hasNext())
+		{
+			String key = keyIterator.next();
+			
+			if (valueMap.get(key) == null) pendingList.add(key);
+		}
+		
+		Iterator<Locale> iterator = localeResolver.getFallbackLocales(normalizedLocale).iterator();
+		
+		// Each fallback locale is read only for the keys that still have no value
+		while (iterator.hasNext() && !pendingList.isEmpty())
+		{
+			Map<String, String> fallbackMap = dbMultilanguage.getKeys(pendingList, localeResolver.getField(iterator.next()), chunkSize, dbQuery);
+			Iterator<String> pendingIterator = pendingList.iterator();
+			
+			while (pendingIterator.hasNext())
+			{
+				String key = pendingIterator.next();
+				String value = fallbackMap.get(key);
+				
+				if (value != null)
+				{
+					valueMap.put(key, value);
+					pendingIterator.remove();
+				}
+			}
+		}
+	}
+	
+	private void streamFallbackField(Locale normalizedLocale, KeyRowHandler handler, DbQuery dbQuery)
+	{
+		final Map<String, String> valueMap = new LinkedHashMap<String, String>();
+		
+		// Reads the locale first
+		dbMultilanguage.streamField(localeResolver.getField(normalizedLocale), new KeyRowHandler()
+		{
+			public void handleRow(String key, String[] values)
+			{
+				valueMap.put(key, values[0]);
+			}
+		}, fetchSize, dbQuery);
+		
+		Iterator<Locale> iterator = localeResolver.getFallbackLocales(normalizedLocale).iterator();
+		
+		// Then each fallback locale fills the keys that still have no value
+		while (iterator.hasNext())
+		{
+			dbMultilanguage.streamField(localeResolver.getField(iterator.next()), new KeyRowHandler()
+			{
+				public void handleRow(String key, String[] values)
+				{
+					if (valueMap.get(key) == null) valueMap.put(key, values[0]);
+				}
+			}, fetchSize, dbQuery);
+		}
+		
+		Iterator<Map.Entry<String, String>> entryIterator = valueMap.entrySet().iterator();
+		
+		while (entryIterator.hasNext())
+		{
+			Map.Entry<String, String> entry = entryIterator.next();
+			
+			handler.handleRow(entry.getKey(), new String[] {entry.getValue()});
+		}
+	}
+	
+	private void preload(DbQuery dbQuery)
+	{
+		long startTime = System.currentTimeMillis();
+		
+		TranslationSnapshot newSnapshot = null;
+		
+		// The snapshot is mapped from a file so it does not use the heap
+		if (snapshotFile != null)
+		{
+			newSnapshot = preloadFile(dbQuery);
+		}
+		else
+		{
+			// Streams the whole table into a new snapshot
+			SnapshotRowHandler handler = new SnapshotRowHandler(localeResolver.getLocaleSet(), deduplicateValues);
+			dbMultilanguage.streamKeys(withFallback(handler), fetchSize, dbQuery);
+			newSnapshot = handler.toSnapshot();
+		}
+		
+		// The new snapshot replaces the previous one at once
+		snapshot = newSnapshot;
+		
+		logger.info("Preloaded [" + newSnapshot.size() + "] keys for [" + newSnapshot.getLocales().length + "] locales in [" + (System.currentTimeMillis() - startTime) + "] ms.");
+	}
+	
+	private KeyFilter loadKeyFilter(DbQuery dbQuery)
+	{
+		long startTime = System.currentTimeMillis();
+		
+		// Leaves room for the keys added after the filter is built
+		long keyCount = dbMultilanguage.getKeyCount(dbQuery);
+		final KeyFilter newFilter = new KeyFilter((int) Math.min(Integer.MAX_VALUE, Math.max(1024, keyCount * 2)), filterFalsePositiveRate);
+		
+		int count = dbMultilanguage.streamKeyNames(new KeyRowHandler()
+		{
+			public void handleRow(String key, String[] values)
+			{
+				newFilter.add(key);
+			}
+		}, fetchSize, dbQuery);
+		
+		logger.info("Key filter built for [" + count + "] keys in [" + (System.currentTimeMillis() - startTime) + "] ms.");
+		
+		return newFilter;
+	}
+	
+	private TranslationSnapshot loadSnapshotFile()
+	{
+		// Checks that there is a file to start from
+		if (snapshotFile == null) throw new IllegalStateException("Snapshot file not set.");
+		
+		try
+		{
+			// Any version is valid as the snapshot is reconciled with the table
+			TranslationSnapshot fileSnapshot = MappedSnapshotWriter.open(snapshotFile, localeResolver.getLocaleSet(), fallbackValues);
+			
+			if (fileSnapshot != null)
+			{
+				logger.info("Warm start from snapshot file [" + snapshotFile + "] with version [" + fileSnapshot.getVersion() + "].");
+			}
+			else
+			{
+				logger.warn("Snapshot file [" + snapshotFile + "] not found or not valid, loading the table.");
+			}
+			
+			return fileSnapshot;
+		}
+		catch (IOException ioe)
+		{
+			logger.warn("Error reading snapshot file [" + snapshotFile + "], loading the table.", ioe);
+			
+			return null;
+		}
+	}
+	
+	private boolean hasChangesSince(long version, DbQuery dbQuery)
+	{
+		long firstChange = dbMultilanguage.getFirstChange(dbQuery);
+		
+		// The changes after the version could have been purged unless the change log still starts at or before them
+		if (firstChange > 0) return firstChange <= version + 1;
+		
+		// An empty change log only has every change if it was empty when the file was written
+		return version == 0;
+	}
+	
+	private void reconcile(final boolean incremental, final DbQuery dbQuery)
+	{
+		Thread thread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				long startTime = System.currentTimeMillis();
+				
+				try
+				{
+					if (incremental)
+					{
+						refresh(dbQuery);
+						
+						// The file is written again so the changes are not read again on the next start
+						rewriteSnapshotFile();
+					}
+					else
+					{
+						preload(dbQuery);
+					}
+					
+					logger.info("Snapshot file reconciled in [" + (System.currentTimeMillis() - startTime) + "] ms.");
+				}
+				catch (Exception e)
+				{
+					logger.error("Error reconciling snapshot file.", e);
+				}
+			}
+		}, "language-reconcile");
+		
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	private void rewriteSnapshotFile() throws IOException
+	{
+		TranslationSnapshot currentSnapshot = snapshot;
+		ChangeLogCursor cursor = changeLogCursor;
+		
+		// If the manager was destroyed meanwhile
+		if (currentSnapshot == null || cursor == null) return;
+		
+		MappedSnapshotWriter writer = new MappedSnapshotWriter(snapshotFile, Arrays.asList(currentSnapshot.getLocales()), cursor.getVersion(), fallbackValues);
+		
+		try
+		{
+			currentSnapshot.compact(writer);
+		}
+		catch (IOException ioe)
+		{
+			writer.abort();
+			
+			throw ioe;
+		}
+		catch (RuntimeException re)
+		{
+			writer.abort();
+			
+			throw re;
+		}
+		
+		logger.info("Snapshot file [" + snapshotFile + "] written for version [" + currentSnapshot.getVersion() + "].");
+	}
+	
+	private TranslationSnapshot preloadFile(DbQuery dbQuery)
+	{
+		Set<Locale> localeSet = localeResolver.getLocaleSet();
+		
+		// The version of the table is only known if there is a change log
+		ChangeLogCursor cursor = changeLogCursor;
+		long version = (cursor != null ? cursor.getVersion() : -1);
+		
+		try
+		{
+			// If the table did not change since the file was written it is used without reading the table
+			if (version >= 0)
+			{
+				TranslationSnapshot fileSnapshot = MappedSnapshotWriter.open(snapshotFile, localeSet, version, fallbackValues);
+				
+				if (fileSnapshot != null)
+				{
+					logger.info("Snapshot file [" + snapshotFile + "] reused for version [" + version + "].");
+					
+					return fileSnapshot;
+				}
+			}
+			
+			// Streams the whole table into the file
+			MappedSnapshotWriter writer = new MappedSnapshotWriter(snapshotFile, localeSet, version, fallbackValues);
+			
+			try
+			{
+				dbMultilanguage.streamKeys(withFallback(writer), fetchSize, dbQuery);
+			}
+			catch (RuntimeException re)
+			{
+				writer.abort();
+				
+				throw re;
+			}
+			
+			return writer.toSnapshot();
+		}
+		catch (IOException ioe)
+		{
+			throw new UncheckedIOException(ioe);
+		}
+	}
+	
+	private void importBlock(Map<String, LocalizedKey> localizedKeyMap, int[] counts, DbQuery dbQuery)
+	{
+		// Reads the stored values of the block in a single query, from the table because the snapshot could be stale or merged
+		Map<String, List<LocaleValue>> storedMap = dbMultilanguage.getKeys(localizedKeyMap.keySet(), chunkSize, dbQuery);
+		
+		List<LocalizedKey> insertList = new ArrayList<LocalizedKey>();
+		List<LocalizedKey> updateList = new ArrayList<LocalizedKey>();
+		
+		Iterator<LocalizedKey> iterator = localizedKeyMap.values().iterator();
+		
+		while (iterator.hasNext())
+		{
+			LocalizedKey localizedKey = iterator.next();
+			List<LocaleValue> storedList = storedMap.get(localizedKey.getKey());
+			
+			// If the key does not exists it is inserted
+			if (storedList == null)
+			{
+				insertList.add(localizedKey);
+				
+				continue;
+			}
+			
+			// Only the values that changed are updated
+			List<LocaleValue> changedList = new ArrayList<LocaleValue>();
+			LocaleValue[] localeValues = localizedKey.getLocaleValues();
+			
+			for (int i=0; i<localeValues.length; i++)
+			{
+				if (!StringUtils.equals(localeValues[i].getValue(), getValue(storedList, localeValues[i].getLocale()))) changedList.add(localeValues[i]);
+			}
+			
+			if (changedList.isEmpty())
+			{
+				counts[2]++;
+			}
+			else
+			{
+				updateList.add(new LocalizedKey(localizedKey.getKey(), changedList.toArray(new LocaleValue[changedList.size()])));
+			}
+		}
+		
+		if (!insertList.isEmpty())
+		{
+			addKey(dbQuery, insertList.toArray(new LocalizedKey[insertList.size()]));
+			counts[0] += insertList.size();
+		}
+		
+		if (!updateList.isEmpty())
+		{
+			setKey(dbQuery, updateList.toArray(new LocalizedKey[updateList.size()]));
+			counts[1] += updateList.size();
+		}
+	}
+	
+	private String getValue(List<LocaleValue> localeValueList, Locale locale)
+	{
+		Iterator<LocaleValue> iterator = localeValueList.iterator();
+		
+		while (iterator.hasNext())
+		{
+			LocaleValue localeValue = iterator.next();
+			
+			if (localeValue.getLocale().equals(locale)) return localeValue.getValue();
+		}
+		
+		return null;
+	}
+	
+	private LocalizedKey toLocalizedKey(String key, List<LocaleValue> localeValueList)
+	{
+		// Without fallback the values are kept as they are stored
+		if (!fallbackValues) return new LocalizedKey(key, localeValueList.toArray(new LocaleValue[localeValueList.size()]));
+		
+		Locale[] locales = new Locale[localeValueList.size()];
+		String[] values = new String[localeValueList.size()];
+		
+		for (int i=0; i<locales.length; i++)
+		{
+			locales[i] = localeValueList.get(i).getLocale();
+			values[i] = localeValueList.get(i).getValue();
+		}
+		
+		return toLocalizedKey(key, locales, localeResolver.mergeFallback(values));
+	}
+	
+	private LocalizedKey toLocalizedKey(String key, Locale[] locales, String[] values)
+	{
+		LocaleValue[] localeValues = new LocaleValue[values.length];
+		
+		for (int i=0; i<values.length; i++)
+		{
+			localeValues[i] = new LocaleValue(locales[i], values[i]);
+		}
+		
+		return new LocalizedKey(key, localeValues);
+	}
+	
+	private void invalidate(LocalizedKey...localizedKeys)
+	{
+		if (localizedKeys == null) return;
+		
+		for (int i=0; i<localizedKeys.length; i++)
+		{
+			invalidateKey(localizedKeys[i].getKey());
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.LocaleUtils;
+
+class LocaleResolver 
+{
+	// Maximum number of requested locales whose resolution is remembered
+	private final static int MAX_RESOLVED_LOCALES = 1024;
+	
+	private final Map<Locale, String> fieldMap;
+	private final Locale defaultLocale;
+	
+	private ConcurrentHashMap<Locale, Locale> resolvedLocaleMap = null;
+	private ConcurrentHashMap<Locale, List<Locale>> fallbackLocaleMap = null;
+	private volatile int[][] fallbackIndexes = null;
+	
+	LocaleResolver(Map<Locale, String> fieldMap, Locale defaultLocale)
+	{
+		this.fieldMap = Collections.unmodifiableMap(fieldMap);
+		this.defaultLocale = defaultLocale;
+		
+		resolvedLocaleMap = new ConcurrentHashMap<Locale, Locale>();
+		fallbackLocaleMap = new ConcurrentHashMap<Locale, List<Locale>>();
+	}
+	
+	LocaleResolver withField(String field, Locale locale)
+	{
+		Map<Locale, String> newFieldMap = new LinkedHashMap<Locale, String>(fieldMap);
+		newFieldMap.put(locale, field);
+		
+		return new LocaleResolver(newFieldMap, defaultLocale);
+	}
+	
+	LocaleResolver withDefaultLocale(Locale defaultLocale)
+	{
+		return new LocaleResolver(fieldMap, defaultLocale);
+	}
+	
+	Locale getDefaultLocale()
+	{
+		return defaultLocale;
+	}
+	
+	String getField(Locale normalizedLocale)
+	{
+		return (normalizedLocale != null ? fieldMap.get(normalizedLocale) : null);
+	}
+	
+	Set<Locale> getLocaleSet()
+	{
+		return fieldMap.keySet();
+	}
+	
+	Locale normalize(Locale locale)
+	{
+		// A null locale is resolved as the default locale
+		Locale requestedLocale = (locale != null ? locale : defaultLocale);
+		
+		if (requestedLocale == null) return null;
+		
+		Locale normalizedLocale = resolvedLocaleMap.get(requestedLocale);
+		
+		// If the locale was not resolved before
+		if (normalizedLocale == null)
+		{
+			normalizedLocale = lookup(requestedLocale);
+			
+			// The resolution is remembered even if no locale was found
+			if (resolvedLocaleMap.size() < MAX_RESOLVED_LOCALES) resolvedLocaleMap.put(requestedLocale, normalizedLocale);
+		}
+		
+		return normalizedLocale;
+	}
+	
+	List<Locale> getFallbackLocales(Locale normalizedLocale)
+	{
+		if (normalizedLocale == null) return Collections.emptyList();
+		
+		List<Locale> fallbackList = fallbackLocaleMap.get(normalizedLocale);
+		
+		if (fallbackList == null)
+		{
+			fallbackList = new ArrayList<Locale>();
+			
+			// The locales with field that follow the locale in its lookup list
+			Iterator<Locale> iterator = LocaleUtils.localeLookupList(normalizedLocale, defaultLocale).iterator();
+			
+			while (iterator.hasNext())
+			{
+				Locale lookupLocale = iterator.next();
+				
+				if (!lookupLocale.equals(normalizedLocale) && fieldMap.containsKey(lookupLocale) && !fallbackList.contains(lookupLocale)) fallbackList.add(lookupLocale);
+			}
+			
+			fallbackList = Collections.unmodifiableList(fallbackList);
+			
+			if (fallbackLocaleMap.size() < MAX_RESOLVED_LOCALES) fallbackLocaleMap.put(normalizedLocale, fallbackList);
+		}
+		
+		return fallbackList;
+	}
+	
+	String[] mergeFallback(String[] values)
+	{
+		int[][] indexes = getFallbackIndexes();
+		String[] mergedValues = null;
+		
+		// The values are in the same order than the locales
+		for (int i=0; i<values.length && i<indexes.length; i++)
+		{
+			if (values[i] != null) continue;
+			
+			// Takes the value of the first fallback locale that has one
+			for (int j=0; j<indexes[i].length; j++)
+			{
+				String value = values[indexes[i][j]];
+				
+				if (value != null)
+				{
+					// The given values are not modified
+					if (mergedValues == null) mergedValues = values.clone();
+					
+					mergedValues[i] = value;
+					
+					break;
+				}
+			}
+		}
+		
+		return (mergedValues != null ? mergedValues : values);
+	}
+	
+	private int[][] getFallbackIndexes()
+	{
+		int[][] indexes = fallbackIndexes;
+		
+		// Positions of the fallback locales of each locale
+		if (indexes == null)
+		{
+			List<Locale> localeList = new ArrayList<Locale>(fieldMap.keySet());
+			indexes = new int[localeList.size()][];
+			
+			for (int i=0; i<indexes.length; i++)
+			{
+				List<Locale> fallbackList = getFallbackLocales(localeList.get(i));
+				indexes[i] = new int[fallbackList.size()];
+				
+				for (int j=0; j<indexes[i].length; j++)
+				{
+					indexes[i][j] = localeList.indexOf(fallbackList.get(j));
+				}
+			}
+			
+			fallbackIndexes = indexes;
+		}
+		
+		return indexes;
+	}
+	
+	private Locale lookup(Locale locale)
+	{
+		// If the locale exists there is nothing to look for
+		if (fieldMap.containsKey(locale)) return locale;
+		
+		List<Locale> lookupList = LocaleUtils.localeLookupList(locale, defaultLocale);
+		
+		// For each locale in the list, looks for the first one with a field
+		Iterator<Locale> iterator = lookupList.iterator();
+		
+		while (iterator.hasNext())
+		{
+			Locale lookupLocale = iterator.next();
+			
+			if (fieldMap.containsKey(lookupLocale)) return lookupLocale;
+		}
+		
+		return locale;
+	}
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+import java.util.Locale;
+
+class CacheKey 
+{
+	private final String key;
+	private final Locale locale;
+	private final int hashCode;
+	
+	CacheKey(String key, Locale locale)
+	{
+		this.key = key;
+		this.locale = locale;
+		
+		hashCode = 31 * (key != null ? key.hashCode() : 0) + (locale != null ? locale.hashCode() : 0);
+	}
+	
+	public int hashCode()
+	{
+		return hashCode;
+	}
+	
+	public boolean equals(Object object)
+	{
+		if (this == object) return true;
+		if (!(object instanceof CacheKey)) return false;
+		
+		CacheKey other = (CacheKey) object;
+		
+		return (key != null ? key.equals(other.key) : other.key == null) && (locale != null ? locale.equals(other.locale) : other.locale == null);
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+class HeapSnapshotIndex implements SnapshotIndex
+{
+	private final String[] keys;
+	private final String[][] columns;
+	private final int size;
+	
+	private final int[] table;
+	private final int mask;
+	
+	HeapSnapshotIndex(String[] keys, String[][] columns, int size)
+	{
+		this.keys = keys;
+		this.columns = columns;
+		this.size = size;
+		
+		// Open addressing table with at least twice the slots than keys so the probes are short
+		int capacity = Integer.highestOneBit(Math.max(size * 2, 2) - 1) << 1;
+		
+		table = new int[capacity];
+		mask = capacity - 1;
+		
+		// The table holds the row plus one so zero marks an empty slot
+		for (int row=0; row<size; row++)
+		{
+			int slot = hash(keys[row]) & mask;
+			
+			while (table[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			
+			table[slot] = row + 1;
+		}
+	}
+	
+	public int indexOf(String key)
+	{
+		int slot = hash(key) & mask;
+		int row = table[slot];
+		
+		while (row != 0)
+		{
+			if (keys[row-1].equals(key)) return row - 1;
+			
+			slot = (slot + 1) & mask;
+			row = table[slot];
+		}
+		
+		return -1;
+	}
+	
+	public String getKey(int row)
+	{
+		return keys[row];
+	}
+	
+	public String getValue(int row, int localeIndex)
+	{
+		return columns[localeIndex][row];
+	}
+	
+	public String[] getValues(int row)
+	{
+		String[] values = new String[columns.length];
+		
+		for (int i=0; i<columns.length; i++)
+		{
+			values[i] = columns[i][row];
+		}
+		
+		return values;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public boolean isMapped()
+	{
+		return false;
+	}
+	
+	public long getVersion()
+	{
+		// A heap index is not versioned
+		return -1;
+	}
+	
+	private int hash(String key)
+	{
+		// String caches its hash code so hashing does not allocate
+		int hashCode = key.hashCode();
+		
+		return hashCode ^ (hashCode >>> 16);
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class KeyFilter 
+{
+	private final static int MAX_HASH_COUNT = 16;
+	
+	private final int expectedKeys;
+	private final long bitCount;
+	private final int hashCount;
+	
+	private AtomicLongArray bits = null;
+	
+	public KeyFilter(int expectedKeys, double falsePositiveRate)
+	{
+		// Checks that the expected keys are valid
+		if (expectedKeys <= 0) throw new IllegalArgumentException("ExpectedKeys parameter must be greater than 0.");
+		
+		// Checks that the rate is valid
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) throw new IllegalArgumentException("FalsePositiveRate parameter must be between 0 and 1.");
+		
+		this.expectedKeys = expectedKeys;
+		
+		// Optimal number of bits and hashes for the expected keys and rate, rounded to whole words
+		double optimalBits = -expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		int wordCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, (long) Math.ceil(optimalBits / 64)));
+		
+		bitCount = (long) wordCount * 64;
+		hashCount = (int) Math.max(1, Math.min(MAX_HASH_COUNT, Math.round((double) bitCount / expectedKeys * Math.log(2))));
+		bits = new AtomicLongArray(wordCount);
+	}
+	
+	public void add(String key)
+	{
+		long hash = hash(key);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		
+		for (int i=0; i<hashCount; i++)
+		{
+			setBit(getIndex(hash1, hash2, i));
+		}
+	}
+	
+	public boolean mightContain(String key)
+	{
+		long hash = hash(key);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32);
+		
+		for (int i=0; i<hashCount; i++)
+		{
+			long index = getIndex(hash1, hash2, i);
+			
+			if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) return false;
+		}
+		
+		return true;
+	}
+	
+	public int getExpectedKeys()
+	{
+		return expectedKeys;
+	}
+	
+	public long getBitCount()
+	{
+		return bitCount;
+	}
+	
+	public int getHashCount()
+	{
+		return hashCount;
+	}
+	
+	private long getIndex(int hash1, int hash2, int i)
+	{
+		// Double hashing gives the independent positions from a single 64 bit hash
+		long combined = (hash1 + (long) i * hash2) & Long.MAX_VALUE;
+		
+		return combined % bitCount;
+	}
+	
+	private void setBit(long index)
+	{
+		int word = (int) (index >>> 6);
+		long mask = 1L << index;
+		
+		// Keys can be added while other threads are reading or adding
+		while (true)
+		{
+			long value = bits.get(word);
+			
+			if ((value & mask) != 0 || bits.compareAndSet(word, value, value | mask)) return;
+		}
+	}
+	
+	private long hash(String key)
+	{
+		// FNV-1a over the characters
+		long hash = 0xcbf29ce484222325L;
+		
+		for (int i=0; i<key.length(); i++)
+		{
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		
+		// Final mix so every bit of the hash depends on every character
+		hash ^= (hash >>> 33);
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= (hash >>> 33);
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= (hash >>> 33);
+		
+		return hash;
+	}
+}
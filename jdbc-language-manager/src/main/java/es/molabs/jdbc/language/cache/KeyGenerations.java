@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+class KeyGenerations 
+{
+	// Keys in the same stripe share their generation, which only discards some more values
+	private final static int STRIPES = 256;
+	
+	private long generation;
+	private long clearGeneration;
+	private long[] stripes = null;
+	
+	KeyGenerations()
+	{
+		generation = 0;
+		clearGeneration = 0;
+		stripes = new long[STRIPES];
+	}
+	
+	long get()
+	{
+		return generation;
+	}
+	
+	void invalidate(String key)
+	{
+		stripes[toStripe(key)] = ++generation;
+	}
+	
+	void invalidateAll()
+	{
+		clearGeneration = ++generation;
+	}
+	
+	boolean isValid(String key, long readGeneration)
+	{
+		// A value read before its key was invalidated could be stale
+		return (clearGeneration <= readGeneration && stripes[toStripe(key)] <= readGeneration);
+	}
+	
+	private int toStripe(String key)
+	{
+		return (key != null ? key.hashCode() & (STRIPES - 1) : 0);
+	}
+}
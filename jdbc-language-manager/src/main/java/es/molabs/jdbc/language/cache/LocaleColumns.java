@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import es.molabs.jdbc.language.LocalizedKey;
+
+public class LocaleColumns 
+{
+	private final static long ACCESS_RESOLUTION = 1000;
+	
+	private final int maxLocales;
+	
+	private ConcurrentHashMap<Locale, Column> columnMap = null;
+	private Map<Locale, List<Change>> loadMap = null;
+	
+	public LocaleColumns(int maxLocales)
+	{
+		// Checks that the number of locales is valid
+		if (maxLocales <= 0) throw new IllegalArgumentException("MaxLocales parameter must be greater than 0.");
+		
+		this.maxLocales = maxLocales;
+		
+		columnMap = new ConcurrentHashMap<Locale, Column>();
+		loadMap = new HashMap<Locale, List<Change>>();
+	}
+	
+	public TranslationSnapshot get(Locale locale)
+	{
+		Column column = columnMap.get(locale);
+		
+		if (column == null) return null;
+		
+		// Only the time of the last access is kept to choose the locale to unload, and it is
+		// written once per resolution period so the lookups do not keep writing the same field
+		long time = System.currentTimeMillis();
+		
+		if (time - column.accessTime >= ACCESS_RESOLUTION) column.accessTime = time;
+		
+		return column.snapshot;
+	}
+	
+	public synchronized void startLoad(Locale locale)
+	{
+		// The changes made while the locale is read are kept to be applied to it before it is stored
+		loadMap.put(locale, new ArrayList<Change>());
+	}
+	
+	public synchronized void abortLoad(Locale locale)
+	{
+		loadMap.remove(locale);
+	}
+	
+	public synchronized Locale put(Locale locale, TranslationSnapshot snapshot)
+	{
+		// Checks that the snapshot only contains the locale
+		if (snapshot.getLocales().length != 1 || !snapshot.getLocales()[0].equals(locale)) throw new IllegalArgumentException("Snapshot parameter must only contain locale [" + locale + "].");
+		
+		List<Change> changeList = loadMap.remove(locale);
+		
+		// If the load was not started or the locales were cleared while it was read the snapshot could be stale
+		if (changeList == null) return null;
+		
+		for (int i=0; i<changeList.size(); i++)
+		{
+			changeList.get(i).apply(snapshot);
+		}
+		
+		columnMap.put(locale, new Column(snapshot));
+		
+		if (columnMap.size() <= maxLocales) return null;
+		
+		// Unloads the least recently used locale
+		Locale eldestLocale = null;
+		long eldestTime = Long.MAX_VALUE;
+		
+		Iterator<Map.Entry<Locale, Column>> iterator = columnMap.entrySet().iterator();
+		
+		while (iterator.hasNext())
+		{
+			Map.Entry<Locale, Column> entry = iterator.next();
+			
+			if (!entry.getKey().equals(locale) && entry.getValue().accessTime < eldestTime)
+			{
+				eldestLocale = entry.getKey();
+				eldestTime = entry.getValue().accessTime;
+			}
+		}
+		
+		columnMap.remove(eldestLocale);
+		
+		return eldestLocale;
+	}
+	
+	public boolean remove(Locale locale)
+	{
+		return columnMap.remove(locale) != null;
+	}
+	
+	public synchronized void clear()
+	{
+		columnMap.clear();
+		loadMap.clear();
+	}
+	
+	public synchronized boolean isEmpty()
+	{
+		return columnMap.isEmpty() && loadMap.isEmpty();
+	}
+	
+	public Set<Locale> getLocaleSet()
+	{
+		return Collections.unmodifiableSet(new HashSet<Locale>(columnMap.keySet()));
+	}
+	
+	public int getMaxLocales()
+	{
+		return maxLocales;
+	}
+	
+	public void putKey(final LocalizedKey localizedKey)
+	{
+		change(new Change()
+		{
+			void apply(TranslationSnapshot snapshot)
+			{
+				snapshot.put(localizedKey);
+			}
+		});
+	}
+	
+	public void mergeKey(final LocalizedKey localizedKey)
+	{
+		change(new Change()
+		{
+			void apply(TranslationSnapshot snapshot)
+			{
+				snapshot.merge(localizedKey);
+			}
+		});
+	}
+	
+	public void copyKey(final String sourceKey, final String destinationKey)
+	{
+		change(new Change()
+		{
+			void apply(TranslationSnapshot snapshot)
+			{
+				snapshot.copy(sourceKey, destinationKey);
+			}
+		});
+	}
+	
+	public void removeKey(final String key)
+	{
+		change(new Change()
+		{
+			void apply(TranslationSnapshot snapshot)
+			{
+				snapshot.remove(key);
+			}
+		});
+	}
+	
+	private synchronized void change(Change change)
+	{
+		Iterator<Column> iterator = columnMap.values().iterator();
+		
+		while (iterator.hasNext())
+		{
+			change.apply(iterator.next().snapshot);
+		}
+		
+		// The locales being read could have read the key before it changed
+		Iterator<List<Change>> loadIterator = loadMap.values().iterator();
+		
+		while (loadIterator.hasNext())
+		{
+			loadIterator.next().add(change);
+		}
+	}
+	
+	private static abstract class Change
+	{
+		abstract void apply(TranslationSnapshot snapshot);
+	}
+	
+	private static class Column
+	{
+		private final TranslationSnapshot snapshot;
+		private volatile long accessTime;
+		
+		private Column(TranslationSnapshot snapshot)
+		{
+			this.snapshot = snapshot;
+			
+			accessTime = System.currentTimeMillis();
+		}
+	}
+}
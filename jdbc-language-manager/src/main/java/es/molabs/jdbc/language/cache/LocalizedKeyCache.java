@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LocalizedKeyCache 
+{
+	private final int maxSize;
+	private final long timeToLive;
+	
+	private ConcurrentHashMap<Locale, ConcurrentHashMap<String, CacheEntry>> localeMap = null;
+	private ArrayDeque<CacheEntry> evictionQueue = null;
+	private KeyGenerations generations = null;
+	
+	private LongAdder hitCount = null;
+	private LongAdder missCount = null;
+	
+	public LocalizedKeyCache(int maxSize)
+	{
+		this(maxSize, 0);
+	}
+	
+	public LocalizedKeyCache(int maxSize, long timeToLive)
+	{
+		// Checks that the size is valid
+		if (maxSize <= 0) throw new IllegalArgumentException("MaxSize parameter must be greater than 0.");
+		
+		// Checks that the time to live is valid
+		if (timeToLive < 0) throw new IllegalArgumentException("TimeToLive parameter cannot be negative.");
+		
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive;
+		
+		// The entries are kept by locale so a lookup does not allocate a composed key
+		localeMap = new ConcurrentHashMap<Locale, ConcurrentHashMap<String, CacheEntry>>();
+		
+		// The entries in insertion order, a used entry gets a second chance before it is evicted
+		evictionQueue = new ArrayDeque<CacheEntry>();
+		
+		generations = new KeyGenerations();
+		
+		hitCount = new LongAdder();
+		missCount = new LongAdder();
+	}
+	
+	public String get(String key, Locale locale)
+	{
+		ConcurrentHashMap<String, CacheEntry> entryMap = (key != null && locale != null ? localeMap.get(locale) : null);
+		CacheEntry entry = (entryMap != null ? entryMap.get(key) : null);
+		
+		// If the entry does not exists
+		if (entry == null)
+		{
+			missCount.increment();
+			
+			return null;
+		}
+		
+		// If the entry has expired it is removed
+		if (entry.isExpired(System.currentTimeMillis()))
+		{
+			entryMap.remove(key, entry);
+			missCount.increment();
+			
+			return null;
+		}
+		
+		// Lookups do not lock, the entry is only written the first time it is used since it was last checked for eviction
+		if (!entry.used) entry.used = true;
+		
+		hitCount.increment();
+		
+		return entry.value;
+	}
+	
+	public synchronized void put(String key, Locale locale, String value)
+	{
+		// Null values are not cached so a missing key is always looked up again
+		if (value == null || key == null || locale == null) return;
+		
+		long expireTime = (timeToLive > 0 ? System.currentTimeMillis() + timeToLive : Long.MAX_VALUE);
+		
+		ConcurrentHashMap<String, CacheEntry> entryMap = localeMap.get(locale);
+		
+		if (entryMap == null)
+		{
+			entryMap = new ConcurrentHashMap<String, CacheEntry>();
+			localeMap.put(locale, entryMap);
+		}
+		
+		CacheEntry entry = new CacheEntry(key, locale, value, expireTime);
+		
+		entryMap.put(key, entry);
+		evictionQueue.addLast(entry);
+		
+		// The replaced and invalidated entries stay in the queue till they are reached, so the queue bounds the size
+		while (evictionQueue.size() > maxSize)
+		{
+			CacheEntry eldest = evictionQueue.pollFirst();
+			
+			if (!isCached(eldest)) continue;
+			
+			if (eldest.used)
+			{
+				eldest.used = false;
+				evictionQueue.addLast(eldest);
+			}
+			else
+			{
+				localeMap.get(eldest.locale).remove(eldest.key, eldest);
+			}
+		}
+	}
+	
+	public synchronized void put(String key, Locale locale, String value, long generation)
+	{
+		// The value is not cached if the key was invalidated while it was read
+		if (generations.isValid(key, generation)) put(key, locale, value);
+	}
+	
+	public synchronized long getGeneration()
+	{
+		return generations.get();
+	}
+	
+	public synchronized void invalidate(String key, Locale locale)
+	{
+		ConcurrentHashMap<String, CacheEntry> entryMap = (key != null && locale != null ? localeMap.get(locale) : null);
+		
+		if (entryMap != null) entryMap.remove(key);
+		generations.invalidate(key);
+	}
+	
+	public synchronized void invalidateAll()
+	{
+		localeMap.clear();
+		evictionQueue.clear();
+		generations.invalidateAll();
+	}
+	
+	public int size()
+	{
+		int size = 0;
+		Iterator<ConcurrentHashMap<String, CacheEntry>> iterator = localeMap.values().iterator();
+		
+		while (iterator.hasNext())
+		{
+			size += iterator.next().size();
+		}
+		
+		return size;
+	}
+	
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+	
+	public long getTimeToLive()
+	{
+		return timeToLive;
+	}
+	
+	public long getHitCount()
+	{
+		return hitCount.sum();
+	}
+	
+	public long getMissCount()
+	{
+		return missCount.sum();
+	}
+	
+	private boolean isCached(CacheEntry entry)
+	{
+		ConcurrentHashMap<String, CacheEntry> entryMap = localeMap.get(entry.locale);
+		
+		return (entryMap != null && entryMap.get(entry.key) == entry);
+	}
+	
+	private static class CacheEntry
+	{
+		private final String key;
+		private final Locale locale;
+		private final String value;
+		private final long expireTime;
+		
+		private volatile boolean used;
+		
+		private CacheEntry(String key, Locale locale, String value, long expireTime)
+		{
+			this.key = key;
+			this.locale = locale;
+			this.value = value;
+			this.expireTime = expireTime;
+			
+			used = false;
+		}
+		
+		private boolean isExpired(long time)
+		{
+			return time >= expireTime;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+class MappedRegion 
+{
+	// Size of each mapped buffer, the values are written so they never cross two buffers
+	final static long CHUNK_SIZE = 1L << 30;
+	
+	private final MappedByteBuffer[] buffers;
+	private final long size;
+	
+	MappedRegion(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException
+	{
+		this.size = size;
+		
+		buffers = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+		
+		for (int i=0; i<buffers.length; i++)
+		{
+			long offset = i * CHUNK_SIZE;
+			
+			buffers[i] = channel.map(mode, position + offset, Math.min(CHUNK_SIZE, size - offset));
+		}
+	}
+	
+	int getInt(long offset)
+	{
+		return buffers[(int) (offset / CHUNK_SIZE)].getInt((int) (offset % CHUNK_SIZE));
+	}
+	
+	long getLong(long offset)
+	{
+		return buffers[(int) (offset / CHUNK_SIZE)].getLong((int) (offset % CHUNK_SIZE));
+	}
+	
+	void putLong(long offset, long value)
+	{
+		buffers[(int) (offset / CHUNK_SIZE)].putLong((int) (offset % CHUNK_SIZE), value);
+	}
+	
+	String getString(long offset)
+	{
+		MappedByteBuffer buffer = buffers[(int) (offset / CHUNK_SIZE)];
+		int position = (int) (offset % CHUNK_SIZE);
+		
+		// Absolute reads so the buffer can be shared by every thread
+		byte[] bytes = new byte[buffer.getInt(position)];
+		
+		for (int i=0; i<bytes.length; i++)
+		{
+			bytes[i] = buffer.get(position + 4 + i);
+		}
+		
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	void update(CRC32 checksum)
+	{
+		// Duplicated so the position of the shared buffers is not changed
+		for (int i=0; i<buffers.length; i++)
+		{
+			checksum.update(buffers[i].duplicate());
+		}
+	}
+	
+	void force()
+	{
+		for (int i=0; i<buffers.length; i++)
+		{
+			buffers[i].force();
+		}
+	}
+	
+	long size()
+	{
+		return size;
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+class MappedSnapshotIndex implements SnapshotIndex
+{
+	/*
+	 * Static
+	 */
+	final static int MAGIC = 0x4D4C5331;
+	final static int FORMAT_VERSION = 3;
+	
+	// Set if the values were merged with the values of their fallback locales
+	final static int FLAG_MERGED = 1;
+	
+	// Magic, format version, version, row count, locale count, capacity, header size, checksum and flags
+	final static int FIXED_HEADER_SIZE = 44;
+	
+	static int getCapacity(int rowCount)
+	{
+		// At least twice the slots than keys so the probes are short
+		return Integer.highestOneBit(Math.max(rowCount * 2, 2) - 1) << 1;
+	}
+	
+	static int hash(String key)
+	{
+		int hashCode = key.hashCode();
+		
+		return hashCode ^ (hashCode >>> 16);
+	}
+	
+	static ByteBuffer toHeader(long version, int rowCount, Collection<Locale> locales, boolean merged)
+	{
+		int headerSize = FIXED_HEADER_SIZE;
+		byte[][] localeBytes = new byte[locales.size()][];
+		Iterator<Locale> iterator = locales.iterator();
+		
+		for (int i=0; i<localeBytes.length; i++)
+		{
+			localeBytes[i] = iterator.next().toString().getBytes(StandardCharsets.UTF_8);
+			headerSize += 2 + localeBytes[i].length;
+		}
+		
+		// The header is padded so the tables after it are aligned
+		headerSize = (headerSize + 7) & ~7;
+		
+		ByteBuffer header = ByteBuffer.allocate(headerSize);
+		header.putInt(MAGIC);
+		header.putInt(FORMAT_VERSION);
+		header.putLong(version);
+		header.putInt(rowCount);
+		header.putInt(localeBytes.length);
+		header.putInt(getCapacity(rowCount));
+		header.putInt(headerSize);
+		header.putLong(0);
+		header.putInt(merged ? FLAG_MERGED : 0);
+		
+		for (int i=0; i<localeBytes.length; i++)
+		{
+			header.putShort((short) localeBytes[i].length);
+			header.put(localeBytes[i]);
+		}
+		
+		header.clear();
+		
+		return header;
+	}
+	
+	static long checksum(MappedRegion...regions)
+	{
+		CRC32 checksum = new CRC32();
+		
+		for (int i=0; i<regions.length; i++)
+		{
+			regions[i].update(checksum);
+		}
+		
+		return checksum.getValue();
+	}
+	
+	static MappedSnapshotIndex open(Path file, Collection<Locale> locales, Long version, boolean merged) throws IOException
+	{
+		if (!Files.isRegularFile(file)) return null;
+		
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		
+		// The mapped buffers are still valid once the channel is closed
+		try
+		{
+			ByteBuffer expectedHeader = toHeader((version != null ? version : 0), 0, locales, merged);
+			
+			if (channel.size() < expectedHeader.capacity()) return null;
+			
+			ByteBuffer header = ByteBuffer.allocate(expectedHeader.capacity());
+			while (header.hasRemaining())
+			{
+				if (channel.read(header, header.position()) < 0) return null;
+			}
+			
+			header.flip();
+			
+			long fileVersion = header.getLong(8);
+			int rowCount = header.getInt(16);
+			int capacity = header.getInt(24);
+			long fileChecksum = header.getLong(32);
+			
+			// Without version any version is valid, the rows and the checksum are checked later
+			if (version == null) expectedHeader.putLong(8, fileVersion);
+			expectedHeader.putInt(16, rowCount);
+			expectedHeader.putInt(24, getCapacity(rowCount));
+			expectedHeader.putLong(32, fileChecksum);
+			
+			if (!header.equals(expectedHeader)) return null;
+			
+			long tableOffset = header.capacity();
+			long rowsOffset = tableOffset + capacity * 8L;
+			long blobsOffset = rowsOffset + rowCount * (locales.size() + 1) * 8L;
+			
+			// Checks that the file is not truncated
+			if (channel.size() < blobsOffset) return null;
+			
+			MappedRegion table = new MappedRegion(channel, FileChannel.MapMode.READ_ONLY, tableOffset, rowsOffset - tableOffset);
+			MappedRegion rows = new MappedRegion(channel, FileChannel.MapMode.READ_ONLY, rowsOffset, blobsOffset - rowsOffset);
+			MappedRegion blobs = new MappedRegion(channel, FileChannel.MapMode.READ_ONLY, blobsOffset, channel.size() - blobsOffset);
+			
+			// Checks that the file is not corrupted
+			if (checksum(table, rows, blobs) != fileChecksum) return null;
+			
+			return new MappedSnapshotIndex(table, rows, blobs, rowCount, locales.size(), fileVersion);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+	
+	
+	/*
+	 * Instanced
+	 */
+	private final MappedRegion table;
+	private final MappedRegion rows;
+	private final MappedRegion blobs;
+	
+	private final int size;
+	private final int localeCount;
+	private final int mask;
+	private final long version;
+	
+	private MappedSnapshotIndex(MappedRegion table, MappedRegion rows, MappedRegion blobs, int size, int localeCount, long version)
+	{
+		this.table = table;
+		this.rows = rows;
+		this.blobs = blobs;
+		this.size = size;
+		this.localeCount = localeCount;
+		this.version = version;
+		
+		mask = (int) (table.size() / 8) - 1;
+	}
+	
+	public int indexOf(String key)
+	{
+		int hash = hash(key);
+		int slot = hash & mask;
+		long entry = table.getLong(slot * 8L);
+		
+		// Each slot holds the hash of the key and its row plus one, so only keys with the same hash are decoded
+		while (entry != 0)
+		{
+			int row = (int) entry - 1;
+			
+			if ((int) (entry >>> 32) == hash && key.equals(getKey(row))) return row;
+			
+			slot = (slot + 1) & mask;
+			entry = table.getLong(slot * 8L);
+		}
+		
+		return -1;
+	}
+	
+	public String getKey(int row)
+	{
+		return blobs.getString(rows.getLong(row * (localeCount + 1L) * 8L));
+	}
+	
+	public String getValue(int row, int localeIndex)
+	{
+		long offset = rows.getLong((row * (localeCount + 1L) + 1 + localeIndex) * 8L);
+		
+		return (offset >= 0 ? blobs.getString(offset) : null);
+	}
+	
+	public String[] getValues(int row)
+	{
+		String[] values = new String[localeCount];
+		
+		for (int i=0; i<localeCount; i++)
+		{
+			values[i] = getValue(row, i);
+		}
+		
+		return values;
+	}
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	public boolean isMapped()
+	{
+		return true;
+	}
+	
+	public long getVersion()
+	{
+		return version;
+	}
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+
+import es.molabs.jdbc.language.db.dao.KeyRowHandler;
+
+public class MappedSnapshotWriter implements KeyRowHandler
+{
+	/*
+	 * Static
+	 */
+	public static TranslationSnapshot open(Path file, Collection<Locale> locales) throws IOException
+	{
+		return open(file, locales, false);
+	}
+	
+	public static TranslationSnapshot open(Path file, Collection<Locale> locales, boolean merged) throws IOException
+	{
+		return open(file, locales, null, merged);
+	}
+	
+	public static TranslationSnapshot open(Path file, Collection<Locale> locales, long version) throws IOException
+	{
+		return open(file, locales, version, false);
+	}
+	
+	public static TranslationSnapshot open(Path file, Collection<Locale> locales, long version, boolean merged) throws IOException
+	{
+		return open(file, locales, Long.valueOf(version), merged);
+	}
+	
+	private static TranslationSnapshot open(Path file, Collection<Locale> locales, Long version, boolean merged) throws IOException
+	{
+		MappedSnapshotIndex index = MappedSnapshotIndex.open(file, locales, version, merged);
+		
+		// If the file does not exist, is corrupted or belongs to other version, locales or fallback mode
+		if (index == null) return null;
+		
+		return new TranslationSnapshot(locales.toArray(new Locale[locales.size()]), index);
+	}
+	
+	
+	/*
+	 * Instanced
+	 */
+	private Path file = null;
+	private Locale[] locales = null;
+	private long version;
+	private boolean merged;
+	
+	private Path rowsFile = null;
+	private Path blobsFile = null;
+	private DataOutputStream rowsOutput = null;
+	private DataOutputStream blobsOutput = null;
+	private long blobsSize;
+	
+	private int[] hashes = null;
+	private int size;
+	
+	public MappedSnapshotWriter(Path file, Collection<Locale> locales, long version) throws IOException
+	{
+		this(file, locales, version, false);
+	}
+	
+	public MappedSnapshotWriter(Path file, Collection<Locale> locales, long version, boolean merged) throws IOException
+	{
+		this.file = file;
+		this.locales = locales.toArray(new Locale[locales.size()]);
+		this.version = version;
+		this.merged = merged;
+		
+		// The rows and the values are written to temporary files while they are streamed
+		rowsFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".rows");
+		blobsFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".blobs");
+		rowsOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(rowsFile), 65536));
+		blobsOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(blobsFile), 65536));
+		blobsSize = 0;
+		
+		// Only the hash of each key is kept in memory
+		hashes = new int[1024];
+		size = 0;
+	}
+	
+	public void handleRow(String key, String[] values)
+	{
+		// Checks that there is a value for each locale
+		if (values.length != locales.length) throw new IllegalArgumentException("Values parameter must have [" + locales.length + "] elements.");
+		
+		if (size == hashes.length) hashes = Arrays.copyOf(hashes, size * 2);
+		
+		hashes[size++] = MappedSnapshotIndex.hash(key);
+		
+		try
+		{
+			rowsOutput.writeLong(writeBlob(key));
+			
+			// Null values have no offset
+			for (int i=0; i<values.length; i++)
+			{
+				rowsOutput.writeLong(values[i] != null ? writeBlob(values[i]) : -1);
+			}
+		}
+		catch (IOException ioe)
+		{
+			throw new UncheckedIOException(ioe);
+		}
+	}
+	
+	public TranslationSnapshot toSnapshot() throws IOException
+	{
+		MappedSnapshotIndex index = toIndex();
+		
+		return (index != null ? new TranslationSnapshot(locales.clone(), index) : null);
+	}
+	
+	MappedSnapshotIndex toIndex() throws IOException
+	{
+		rowsOutput.close();
+		blobsOutput.close();
+		
+		Path snapshotFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		
+		try
+		{
+			writeSnapshot(snapshotFile);
+			
+			// The file is replaced at once so a reader never finds it half written
+			try
+			{
+				Files.move(snapshotFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException amnse)
+			{
+				Files.move(snapshotFile, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists(snapshotFile);
+			Files.deleteIfExists(rowsFile);
+			Files.deleteIfExists(blobsFile);
+		}
+		
+		return MappedSnapshotIndex.open(file, Arrays.asList(locales), version, merged);
+	}
+	
+	public void abort()
+	{
+		// Removes the temporary files of a load that failed
+		try
+		{
+			rowsOutput.close();
+			blobsOutput.close();
+			
+			Files.deleteIfExists(rowsFile);
+			Files.deleteIfExists(blobsFile);
+		}
+		catch (IOException ioe)
+		{
+			throw new UncheckedIOException(ioe);
+		}
+	}
+	
+	private long writeBlob(String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		long blobSize = 4 + bytes.length;
+		
+		// Checks that the value fits in a mapped buffer
+		if (blobSize > MappedRegion.CHUNK_SIZE) throw new IllegalArgumentException("Value is too large to be mapped.");
+		
+		// A value never crosses two mapped buffers
+		long remaining = MappedRegion.CHUNK_SIZE - (blobsSize % MappedRegion.CHUNK_SIZE);
+		
+		if (blobSize > remaining)
+		{
+			for (long i=0; i<remaining; i++)
+			{
+				blobsOutput.write(0);
+			}
+			
+			blobsSize += remaining;
+		}
+		
+		long offset = blobsSize;
+		
+		blobsOutput.writeInt(bytes.length);
+		blobsOutput.write(bytes);
+		blobsSize += blobSize;
+		
+		return offset;
+	}
+	
+	private void writeSnapshot(Path snapshotFile) throws IOException
+	{
+		ByteBuffer header = MappedSnapshotIndex.toHeader(version, size, Arrays.asList(locales), merged);
+		int capacity = MappedSnapshotIndex.getCapacity(size);
+		
+		long tableOffset = header.capacity();
+		long rowsOffset = tableOffset + capacity * 8L;
+		long blobsOffset = rowsOffset + size * (locales.length + 1L) * 8L;
+		
+		FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		
+		try
+		{
+			while (header.hasRemaining())
+			{
+				channel.write(header, header.position());
+			}
+			
+			// The hash table is filled in place so it is never in memory
+			MappedRegion table = new MappedRegion(channel, FileChannel.MapMode.READ_WRITE, tableOffset, rowsOffset - tableOffset);
+			int mask = capacity - 1;
+			
+			for (int row=0; row<size; row++)
+			{
+				int slot = hashes[row] & mask;
+				
+				while (table.getLong(slot * 8L) != 0)
+				{
+					slot = (slot + 1) & mask;
+				}
+				
+				table.putLong(slot * 8L, ((long) hashes[row] << 32) | (row + 1));
+			}
+			
+			table.force();
+			
+			transfer(rowsFile, channel, rowsOffset);
+			transfer(blobsFile, channel, blobsOffset);
+			
+			// The checksum is read back from the written file so it covers what a reader will map
+			MappedRegion rows = new MappedRegion(channel, FileChannel.MapMode.READ_ONLY, rowsOffset, blobsOffset - rowsOffset);
+			MappedRegion blobs = new MappedRegion(channel, FileChannel.MapMode.READ_ONLY, blobsOffset, channel.size() - blobsOffset);
+			
+			ByteBuffer checksum = ByteBuffer.allocate(8);
+			checksum.putLong(0, MappedSnapshotIndex.checksum(table, rows, blobs));
+			
+			while (checksum.hasRemaining())
+			{
+				channel.write(checksum, 32 + checksum.position());
+			}
+			
+			channel.force(true);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+	
+	private void transfer(Path source, FileChannel channel, long position) throws IOException
+	{
+		FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+		
+		try
+		{
+			long size = sourceChannel.size();
+			long count = 0;
+			
+			while (count < size)
+			{
+				count += channel.transferFrom(sourceChannel, position + count, size - count);
+			}
+		}
+		finally
+		{
+			sourceChannel.close();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+public class MissingKeyCache 
+{
+	private final int maxSize;
+	private final long timeToLive;
+	
+	private LinkedHashMap<CacheKey, Long> expireTimeMap = null;
+	private KeyGenerations generations = null;
+	
+	private long hitCount;
+	
+	public MissingKeyCache(int maxSize)
+	{
+		this(maxSize, 0);
+	}
+	
+	public MissingKeyCache(int maxSize, long timeToLive)
+	{
+		// Checks that the size is valid
+		if (maxSize <= 0) throw new IllegalArgumentException("MaxSize parameter must be greater than 0.");
+		
+		// Checks that the time to live is valid
+		if (timeToLive < 0) throw new IllegalArgumentException("TimeToLive parameter cannot be negative.");
+		
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive;
+		
+		// Access ordered map so the eldest entry is always the least recently used one
+		expireTimeMap = new LinkedHashMap<CacheKey, Long>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, Long> eldest)
+			{
+				return size() > MissingKeyCache.this.maxSize;
+			}
+		};
+		
+		generations = new KeyGenerations();
+		
+		hitCount = 0;
+	}
+	
+	public synchronized boolean contains(String key, Locale locale)
+	{
+		CacheKey cacheKey = new CacheKey(key, locale);
+		Long expireTime = expireTimeMap.get(cacheKey);
+		
+		// If the key is not known to be missing
+		if (expireTime == null) return false;
+		
+		// If the entry has expired it is removed so the key is looked up again
+		if (System.currentTimeMillis() >= expireTime)
+		{
+			expireTimeMap.remove(cacheKey);
+			
+			return false;
+		}
+		
+		hitCount++;
+		
+		return true;
+	}
+	
+	public synchronized void put(String key, Locale locale)
+	{
+		long expireTime = (timeToLive > 0 ? System.currentTimeMillis() + timeToLive : Long.MAX_VALUE);
+		
+		expireTimeMap.put(new CacheKey(key, locale), expireTime);
+	}
+	
+	public synchronized void put(String key, Locale locale, long generation)
+	{
+		// The key is not recorded as missing if it was invalidated while it was looked up
+		if (generations.isValid(key, generation)) put(key, locale);
+	}
+	
+	public synchronized long getGeneration()
+	{
+		return generations.get();
+	}
+	
+	public synchronized void invalidate(String key, Locale locale)
+	{
+		expireTimeMap.remove(new CacheKey(key, locale));
+		generations.invalidate(key);
+	}
+	
+	public synchronized void invalidateAll()
+	{
+		expireTimeMap.clear();
+		generations.invalidateAll();
+	}
+	
+	public synchronized int size()
+	{
+		return expireTimeMap.size();
+	}
+	
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+	
+	public long getTimeToLive()
+	{
+		return timeToLive;
+	}
+	
+	public synchronized long getHitCount()
+	{
+		return hitCount;
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import es.molabs.jdbc.language.db.dao.KeyRowHandler;
+
+public class SnapshotRowHandler implements KeyRowHandler
+{
+	private final static int INITIAL_CAPACITY = 1024;
+	
+	private Locale[] locales = null;
+	private String[] keys = null;
+	private String[][] columns = null;
+	private int size;
+	
+	private Map<String, String> valueMap = null;
+	
+	public SnapshotRowHandler(Collection<Locale> locales, boolean deduplicate)
+	{
+		this.locales = locales.toArray(new Locale[locales.size()]);
+		
+		keys = new String[INITIAL_CAPACITY];
+		columns = new String[this.locales.length][INITIAL_CAPACITY];
+		size = 0;
+		
+		// Identical values share the same instance
+		valueMap = (deduplicate ? new HashMap<String, String>() : null);
+	}
+	
+	public void handleRow(String key, String[] values)
+	{
+		// Checks that there is a value for each locale
+		if (values.length != locales.length) throw new IllegalArgumentException("Values parameter must have [" + locales.length + "] elements.");
+		
+		if (size == keys.length) grow();
+		
+		keys[size] = key;
+		
+		for (int i=0; i<values.length; i++)
+		{
+			columns[i][size] = deduplicate(values[i]);
+		}
+		
+		size++;
+	}
+	
+	public TranslationSnapshot toSnapshot()
+	{
+		// The arrays are trimmed so the snapshot does not keep the unused slots
+		String[][] trimmedColumns = new String[columns.length][];
+		
+		for (int i=0; i<columns.length; i++)
+		{
+			trimmedColumns[i] = Arrays.copyOf(columns[i], size);
+		}
+		
+		return new TranslationSnapshot(locales, new HeapSnapshotIndex(Arrays.copyOf(keys, size), trimmedColumns, size));
+	}
+	
+	private String deduplicate(String value)
+	{
+		if (valueMap == null || value == null) return value;
+		
+		String sharedValue = valueMap.get(value);
+		
+		if (sharedValue == null)
+		{
+			valueMap.put(value, value);
+			
+			return value;
+		}
+		
+		return sharedValue;
+	}
+	
+	private void grow()
+	{
+		int capacity = keys.length * 2;
+		
+		keys = Arrays.copyOf(keys, capacity);
+		
+		for (int i=0; i<columns.length; i++)
+		{
+			columns[i] = Arrays.copyOf(columns[i], capacity);
+		}
+	}
+}
@@ -0,0 +1,381 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import es.molabs.jdbc.language.LocaleValue;
+import es.molabs.jdbc.language.LocalizedKey;
+import es.molabs.jdbc.language.db.dao.KeyRowHandler;
+
+public class TranslationSnapshot
+{
+	// Minimum number of changes kept before they are compacted into the index
+	private final static int MIN_CHANGES = 64;
+	
+	// Marks a key removed from the index
+	private final static String[] REMOVED = new String[0];
+	
+	private final Locale[] locales;
+	private final Map<Locale, Integer> localeIndexMap;
+	
+	private volatile SnapshotIndex index = null;
+	private volatile SortedRows sortedRows = null;
+	private ConcurrentHashMap<String, String[]> changeMap = null;
+	
+	public TranslationSnapshot(Collection<Locale> locales)
+	{
+		this(locales.toArray(new Locale[locales.size()]), new HeapSnapshotIndex(new String[0], new String[locales.size()][0], 0));
+	}
+	
+	TranslationSnapshot(Locale[] locales, SnapshotIndex index)
+	{
+		this.locales = locales;
+		this.index = index;
+		
+		localeIndexMap = new HashMap<Locale, Integer>();
+		
+		for (int i=0; i<this.locales.length; i++)
+		{
+			localeIndexMap.put(this.locales[i], i);
+		}
+		
+		changeMap = new ConcurrentHashMap<String, String[]>();
+	}
+	
+	public void put(String key, String[] values)
+	{
+		// Checks that there is a value for each locale
+		if (values.length != locales.length) throw new IllegalArgumentException("Values parameter must have [" + locales.length + "] elements.");
+		
+		change(key, values);
+	}
+	
+	public void put(LocalizedKey localizedKey)
+	{
+		// The locales without value are stored as null
+		change(localizedKey.getKey(), toValues(new String[locales.length], localizedKey.getLocaleValues()));
+	}
+	
+	public synchronized void merge(LocalizedKey localizedKey)
+	{
+		String[] values = getValues(localizedKey.getKey());
+		
+		// Only existing keys can be merged
+		if (values == null) return;
+		
+		// Values are replaced, not modified, so readers never see a partial update
+		change(localizedKey.getKey(), toValues(values.clone(), localizedKey.getLocaleValues()));
+	}
+	
+	public synchronized void copy(String sourceKey, String destinationKey)
+	{
+		String[] values = getValues(sourceKey);
+		
+		if (values != null) change(destinationKey, values);
+	}
+	
+	public void remove(String key)
+	{
+		change(key, REMOVED);
+	}
+	
+	public boolean containsKey(String key)
+	{
+		String[] values = changeMap.get(key);
+		
+		if (values != null) return values != REMOVED;
+		
+		return index.indexOf(key) >= 0;
+	}
+	
+	public String get(String key, Locale locale)
+	{
+		Integer localeIndex = localeIndexMap.get(locale);
+		
+		// If the locale is not in the snapshot
+		if (localeIndex == null) return null;
+		
+		// The changes are looked up first, they are empty most of the time
+		String[] values = changeMap.get(key);
+		
+		if (values != null) return (values != REMOVED ? values[localeIndex] : null);
+		
+		SnapshotIndex currentIndex = index;
+		int row = currentIndex.indexOf(key);
+		
+		return (row >= 0 ? currentIndex.getValue(row, localeIndex) : null);
+	}
+	
+	public List<LocaleValue> getLocaleValues(String key)
+	{
+		String[] values = getValues(key);
+		
+		if (values == null) return null;
+		
+		List<LocaleValue> localeValueList = new ArrayList<LocaleValue>(values.length);
+		
+		for (int i=0; i<values.length; i++)
+		{
+			localeValueList.add(new LocaleValue(locales[i], values[i]));
+		}
+		
+		return localeValueList;
+	}
+	
+	public void forEach(String prefix, KeyRowHandler handler)
+	{
+		SnapshotIndex currentIndex = index;
+		int[] rows = getSortedRows(currentIndex);
+		
+		// Only the range of sorted keys that starts with the prefix is read
+		int low = 0;
+		int high = rows.length;
+		
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			
+			if (currentIndex.getKey(rows[middle]).compareTo(prefix) < 0) low = middle + 1;
+			else high = middle;
+		}
+		
+		// The keys of the index that were not changed
+		for (int i=low; i<rows.length; i++)
+		{
+			String key = currentIndex.getKey(rows[i]);
+			
+			if (!key.startsWith(prefix)) break;
+			
+			if (!changeMap.containsKey(key)) handler.handleRow(key, currentIndex.getValues(rows[i]));
+		}
+		
+		Iterator<Map.Entry<String, String[]>> iterator = changeMap.entrySet().iterator();
+		
+		while (iterator.hasNext())
+		{
+			Map.Entry<String, String[]> entry = iterator.next();
+			
+			if (entry.getValue() != REMOVED && entry.getKey().startsWith(prefix)) handler.handleRow(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	public long getVersion()
+	{
+		return index.getVersion();
+	}
+	
+	public Locale[] getLocales()
+	{
+		return locales.clone();
+	}
+	
+	public synchronized int size()
+	{
+		SnapshotIndex currentIndex = index;
+		int size = currentIndex.size();
+		
+		Iterator<Map.Entry<String, String[]>> iterator = changeMap.entrySet().iterator();
+		
+		while (iterator.hasNext())
+		{
+			Map.Entry<String, String[]> entry = iterator.next();
+			boolean indexed = currentIndex.indexOf(entry.getKey()) >= 0;
+			
+			if (entry.getValue() == REMOVED && indexed) size--;
+			else if (entry.getValue() != REMOVED && !indexed) size++;
+		}
+		
+		return size;
+	}
+	
+	public synchronized void compact()
+	{
+		// A mapped index is not copied to the heap, its changes are kept till it is loaded again
+		if (changeMap.isEmpty() || index.isMapped()) return;
+		
+		SnapshotIndex currentIndex = index;
+		int capacity = currentIndex.size() + changeMap.size();
+		
+		String[] keys = new String[capacity];
+		String[][] columns = new String[locales.length][capacity];
+		int size = 0;
+		
+		// The keys of the index that were not changed
+		for (int row=0; row<currentIndex.size(); row++)
+		{
+			String key = currentIndex.getKey(row);
+			
+			if (changeMap.containsKey(key)) continue;
+			
+			keys[size] = key;
+			
+			for (int i=0; i<locales.length; i++)
+			{
+				columns[i][size] = currentIndex.getValue(row, i);
+			}
+			
+			size++;
+		}
+		
+		// The changed keys that were not removed
+		Iterator<Map.Entry<String, String[]>> iterator = changeMap.entrySet().iterator();
+		
+		while (iterator.hasNext())
+		{
+			Map.Entry<String, String[]> entry = iterator.next();
+			
+			if (entry.getValue() == REMOVED) continue;
+			
+			keys[size] = entry.getKey();
+			
+			for (int i=0; i<locales.length; i++)
+			{
+				columns[i][size] = entry.getValue()[i];
+			}
+			
+			size++;
+		}
+		
+		// The new index is set before the changes are cleared so readers always find the keys
+		index = new HeapSnapshotIndex(keys, columns, size);
+		changeMap.clear();
+	}
+	
+	public synchronized void compact(MappedSnapshotWriter writer) throws IOException
+	{
+		SnapshotIndex currentIndex = index;
+		
+		// The keys of the index that were not changed
+		for (int row=0; row<currentIndex.size(); row++)
+		{
+			String key = currentIndex.getKey(row);
+			
+			if (!changeMap.containsKey(key)) writer.handleRow(key, currentIndex.getValues(row));
+		}
+		
+		// The changed keys that were not removed
+		Iterator<Map.Entry<String, String[]>> iterator = changeMap.entrySet().iterator();
+		
+		while (iterator.hasNext())
+		{
+			Map.Entry<String, String[]> entry = iterator.next();
+			
+			if (entry.getValue() != REMOVED) writer.handleRow(entry.getKey(), entry.getValue());
+		}
+		
+		MappedSnapshotIndex newIndex = writer.toIndex();
+		
+		if (newIndex == null) throw new IOException("Written snapshot file cannot be read.");
+		
+		// The changes cannot be made while the file is written so they are all in the new index
+		index = newIndex;
+		changeMap.clear();
+	}
+	
+	private synchronized void change(String key, String[] values)
+	{
+		changeMap.put(key, values);
+		
+		// The changes are compacted when they are a fraction of the index so each change costs a constant time
+		if (changeMap.size() > Math.max(MIN_CHANGES, index.size() / 8)) compact();
+	}
+	
+	private int[] getSortedRows(SnapshotIndex currentIndex)
+	{
+		SortedRows currentRows = sortedRows;
+		
+		// The order is built once per index, the first time a prefix is read
+		if (currentRows != null && currentRows.index == currentIndex) return currentRows.rows;
+		
+		// The keys are read once to sort the rows so a mapped index does not decode them in each comparison
+		final String[] keys = new String[currentIndex.size()];
+		Integer[] boxedRows = new Integer[keys.length];
+		
+		for (int row=0; row<keys.length; row++)
+		{
+			keys[row] = currentIndex.getKey(row);
+			boxedRows[row] = row;
+		}
+		
+		Arrays.sort(boxedRows, new Comparator<Integer>()
+		{
+			public int compare(Integer row1, Integer row2)
+			{
+				return keys[row1].compareTo(keys[row2]);
+			}
+		});
+		
+		// Only the rows are kept, the keys are read from the index when the range is searched
+		int[] rows = new int[boxedRows.length];
+		
+		for (int i=0; i<rows.length; i++)
+		{
+			rows[i] = boxedRows[i];
+		}
+		
+		sortedRows = new SortedRows(currentIndex, rows);
+		
+		return rows;
+	}
+	
+	private String[] getValues(String key)
+	{
+		String[] values = changeMap.get(key);
+		
+		if (values != null) return (values != REMOVED ? values : null);
+		
+		SnapshotIndex currentIndex = index;
+		int row = currentIndex.indexOf(key);
+		
+		return (row >= 0 ? currentIndex.getValues(row) : null);
+	}
+	
+	private String[] toValues(String[] values, LocaleValue[] localeValues)
+	{
+		for (int i=0; i<localeValues.length; i++)
+		{
+			Integer localeIndex = localeIndexMap.get(localeValues[i].getLocale());
+			
+			// Values for locales not in the snapshot are ignored
+			if (localeIndex != null) values[localeIndex] = localeValues[i].getValue();
+		}
+		
+		return values;
+	}
+	
+	private static class SortedRows
+	{
+		private final SnapshotIndex index;
+		private final int[] rows;
+		
+		private SortedRows(SnapshotIndex index, int[] rows)
+		{
+			this.index = index;
+			this.rows = rows;
+		}
+	}
+}
\ No newline at end of file
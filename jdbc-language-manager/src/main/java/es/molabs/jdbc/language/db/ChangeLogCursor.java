@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ChangeLogCursor 
+{
+	// Maximum number of missing ids that are waited for
+	final static int MAX_GAPS = 1000;
+	
+	private final long gapTimeout;
+	
+	private long lastChange;
+	private LinkedHashMap<Long, Long> gapMap = null;
+	
+	public ChangeLogCursor(long lastChange, long gapTimeout)
+	{
+		// Checks that the timeout is valid
+		if (gapTimeout < 0) throw new IllegalArgumentException("GapTimeout parameter cannot be negative.");
+		
+		this.lastChange = lastChange;
+		this.gapTimeout = gapTimeout;
+		
+		// The missing ids are kept ordered from the oldest
+		gapMap = new LinkedHashMap<Long, Long>();
+	}
+	
+	public synchronized long getLastChange()
+	{
+		return lastChange;
+	}
+	
+	public synchronized long getVersion()
+	{
+		// Every change below the first missing id has been read
+		return (gapMap.isEmpty() ? lastChange : gapMap.keySet().iterator().next() - 1);
+	}
+	
+	public synchronized Long[] getGaps()
+	{
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<Long, Long>> iterator = gapMap.entrySet().iterator();
+		
+		// The ids missing for longer than the timeout belong to rolled back transactions or skipped sequence values
+		while (iterator.hasNext())
+		{
+			if (now - iterator.next().getValue() >= gapTimeout) iterator.remove();
+		}
+		
+		return gapMap.keySet().toArray(new Long[gapMap.size()]);
+	}
+	
+	public synchronized void add(long id)
+	{
+		if (id > lastChange)
+		{
+			long now = System.currentTimeMillis();
+			
+			// The skipped ids can still be committed by a transaction that started before
+			for (long gap=Math.max(lastChange + 1, id - MAX_GAPS); gap<id; gap++)
+			{
+				gapMap.put(gap, now);
+			}
+			
+			lastChange = id;
+			
+			// If there are too many the oldest ones are not waited for
+			Iterator<Long> iterator = gapMap.keySet().iterator();
+			
+			while (gapMap.size() > MAX_GAPS)
+			{
+				iterator.next();
+				iterator.remove();
+			}
+		}
+		else
+		{
+			gapMap.remove(id);
+		}
+	}
+}
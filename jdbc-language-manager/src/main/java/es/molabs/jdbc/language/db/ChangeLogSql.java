@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+class ChangeLogSql 
+{
+	// Maximum number of variable statements that are cached
+	private final static int MAX_CACHED_STATEMENTS = 256;
+	
+	private final String changeLogName;
+	private final String keyName;
+	private final String idName;
+	
+	private final String firstChangeSql;
+	private final String lastChangeSql;
+	private final String changeSql;
+	private final String changeRangeSql;
+	private final String purgeChangeSql;
+	
+	private ConcurrentHashMap<Integer, String> changeLogSqlMap = null;
+	private ConcurrentHashMap<Integer, String> gapSqlMap = null;
+	
+	ChangeLogSql(String changeLogName, String keyName, String idName, String createdName)
+	{
+		this.changeLogName = changeLogName;
+		this.keyName = keyName;
+		this.idName = idName;
+		
+		// The change log is the same for every storage
+		firstChangeSql = "SELECT MIN(" + idName + ") FROM " + changeLogName;
+		lastChangeSql = "SELECT MAX(" + idName + ") FROM " + changeLogName;
+		changeSql = "SELECT " + idName + ", " + keyName + " FROM " + changeLogName + " WHERE " + idName + " > ? ORDER BY " + idName;
+		changeRangeSql = "SELECT " + idName + ", " + keyName + " FROM " + changeLogName + " WHERE " + idName + " > ? AND " + idName + " <= ? ORDER BY " + idName;
+		purgeChangeSql = "DELETE FROM " + changeLogName + " WHERE " + createdName + " < ?";
+		
+		changeLogSqlMap = new ConcurrentHashMap<Integer, String>();
+		gapSqlMap = new ConcurrentHashMap<Integer, String>();
+	}
+	
+	String getChangeLogSql(int rowCount)
+	{
+		String sql = changeLogSqlMap.get(rowCount);
+		
+		if (sql == null)
+		{
+			sql = "INSERT INTO " + changeLogName + " (" + keyName + ") VALUES " + StringUtils.repeat("(?)", ", ", rowCount);
+			
+			if (changeLogSqlMap.size() < MAX_CACHED_STATEMENTS) changeLogSqlMap.put(rowCount, sql);
+		}
+		
+		return sql;
+	}
+	
+	String getFirstChangeSql()
+	{
+		return firstChangeSql;
+	}
+	
+	String getLastChangeSql()
+	{
+		return lastChangeSql;
+	}
+	
+	String getChangeSql()
+	{
+		return changeSql;
+	}
+	
+	String getChangeRangeSql()
+	{
+		return changeRangeSql;
+	}
+	
+	String getChangeSql(int gapCount)
+	{
+		if (gapCount == 0) return changeSql;
+		
+		String sql = gapSqlMap.get(gapCount);
+		
+		if (sql == null)
+		{
+			// The missing ids below the last change are read again in case they were committed since
+			sql = "SELECT " + idName + ", " + keyName + " FROM " + changeLogName + " WHERE " + idName + " > ? OR " + idName + " IN (" + StringUtils.repeat("?", ", ", gapCount) + ") ORDER BY " + idName;
+			
+			if (gapSqlMap.size() < MAX_CACHED_STATEMENTS) gapSqlMap.put(gapCount, sql);
+		}
+		
+		return sql;
+	}
+	
+	String getPurgeChangeSql()
+	{
+		return purgeChangeSql;
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db;
+
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import es.molabs.jdbc.DbQuery;
+import es.molabs.jdbc.language.DbLanguageManager;
+import es.molabs.jdbc.language.LocaleValue;
+import es.molabs.jdbc.language.LocalizedKey;
+import es.molabs.jdbc.language.db.dao.GetKeyRowMapper;
+import es.molabs.jdbc.language.db.dao.KeyRowHandler;
+import es.molabs.jdbc.language.db.dao.LongRowMapper;
+import es.molabs.jdbc.language.db.dao.StreamKeyRowMapper;
+import es.molabs.jdbc.language.db.dao.TimestampRowMapper;
+import es.molabs.jdbc.language.db.dao.WriterRowMapper;
+import es.molabs.jdbc.mapper.ClobRowMapper;
+
+class ColumnStorage implements MultilanguageStorage 
+{
+	private DbLanguageManager languageManager = null;
+	private MultilanguageSql sql = null;
+	
+	ColumnStorage(DbLanguageManager languageManager)
+	{
+		this.languageManager = languageManager;
+		
+		// One column per locale
+		sql = new MultilanguageSql(languageManager.getTableName(), languageManager.getKeyName(), languageManager.getUpdatedName(), languageManager.getLocaleSet());
+	}
+	
+	public String getKey(String key, String field, DbQuery dbQuery)
+	{
+		return dbQuery.getObject(ClobRowMapper.getInstance(), sql.getSelectSql(field), key);
+	}
+	
+	public Long writeKey(String key, String field, Writer writer, DbQuery dbQuery)
+	{
+		return dbQuery.getObject(new WriterRowMapper(writer), sql.getSelectSql(field), key);
+	}
+	
+	public List<String> getValues(String key, DbQuery dbQuery)
+	{
+		return dbQuery.getObject(GetKeyRowMapper.getInstance(), sql.getSelectSql(), key);
+	}
+	
+	public void streamChunk(Object[] keys, String field, KeyRowHandler handler, DbQuery dbQuery)
+	{
+		// Without field every column is read
+		dbQuery.getObject(new StreamKeyRowMapper(handler, 0), sql.getChunkSql((field != null ? field : sql.getFields()), keys.length), keys);
+	}
+	
+	public int streamKeys(KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		return count(dbQuery.getObject(new StreamKeyRowMapper(handler, fetchSize), sql.getStreamSql()));
+	}
+	
+	public int streamField(String field, KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		return count(dbQuery.getObject(new StreamKeyRowMapper(handler, fetchSize), sql.getFieldStreamSql(field)));
+	}
+	
+	public int streamBundle(String pattern, KeyRowHandler handler, DbQuery dbQuery)
+	{
+		return count(dbQuery.getObject(new StreamKeyRowMapper(handler, 0), sql.getBundleSql(), pattern));
+	}
+	
+	public int streamKeyNames(KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		// Only the key column is read so the handler receives no values
+		return count(dbQuery.getObject(new StreamKeyRowMapper(handler, fetchSize), sql.getKeySql()));
+	}
+	
+	public long getKeyCount(DbQuery dbQuery)
+	{
+		Long count = dbQuery.getObject(LongRowMapper.getInstance(), sql.getCountSql());
+		
+		return (count != null ? count : 0);
+	}
+	
+	public Timestamp getLastUpdated(DbQuery dbQuery)
+	{
+		return dbQuery.getObject(TimestampRowMapper.getInstance(), sql.getLastUpdatedSql());
+	}
+	
+	public int streamUpdatedKeys(Timestamp since, KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		return count(dbQuery.getObject(new StreamKeyRowMapper(handler, fetchSize), sql.getUpdatedSql(), since));
+	}
+	
+	public String getBatchKey(LocalizedKey localizedKey)
+	{
+		// Keys with the same fields (locales) share the same statement
+		return toFields(localizedKey.getLocaleValues());
+	}
+	
+	public int insertBatch(List<LocalizedKey> batch, DbQuery dbQuery)
+	{
+		int valueCount = batch.get(0).getLocaleValues().length;
+		
+		return dbQuery.executeUpdate(sql.getInsertSql(getBatchKey(batch.get(0)), valueCount, batch.size()), toInsertValues(valueCount, batch));
+	}
+	
+	public int updateKey(LocalizedKey localizedKey, DbQuery dbQuery)
+	{
+		LocaleValue[] localeValues = localizedKey.getLocaleValues();
+		
+		// Keys with the same fields (locales) share the same statement
+		return dbQuery.executeUpdate(sql.getUpdateSql(toFields(localeValues), localeValues), toUpdateValues(localizedKey));
+	}
+	
+	public int deleteKey(String key, DbQuery dbQuery)
+	{
+		return dbQuery.executeUpdate(sql.getDeleteSql(), key);
+	}
+	
+	public int duplicateKey(String sourceKey, String destinationKey, DbQuery dbQuery)
+	{
+		return dbQuery.executeUpdate(sql.getDuplicateSql(), destinationKey, sourceKey);
+	}
+	
+	public StringBuilder export(String key, StringBuilder sqlBuilder, DbQuery dbQuery)
+	{
+		sqlBuilder.append(sql.getExportSql());
+		sqlBuilder.append("'");
+		sqlBuilder.append(key);
+		sqlBuilder.append("'");
+				
+		// For each locale
+		Iterator<Locale> iterator = languageManager.getLocaleSet().iterator();
+		while (iterator.hasNext())
+		{
+			Locale locale = iterator.next();
+		
+			sqlBuilder.append(", '");			
+			sqlBuilder.append(getKey(key, languageManager.getField(locale), dbQuery));
+			sqlBuilder.append("'");
+		}
+		
+		sqlBuilder.append(");");
+		
+		return sqlBuilder;
+	}
+	
+	private int count(Integer count)
+	{
+		// If there are no rows the mapper is never called
+		return (count != null ? count : 0);
+	}
+	
+	private String toFields(LocaleValue[] localeValues)
+	{
+		StringBuilder fieldBuilder = new StringBuilder();
+		
+		for (int i=0; i<localeValues.length; i++)
+		{
+			if (i != 0) fieldBuilder.append(", ");
+			
+			fieldBuilder.append(localeValues[i].getLocale().toString());
+		}
+		
+		return fieldBuilder.toString();
+	}
+	
+	private Object[] toInsertValues(int valueCount, List<LocalizedKey> batch)
+	{
+		Object[] values = new Object[batch.size() * (valueCount + 1)];
+		int index = 0;
+		
+		// For each LocalizedKey
+		for (int k=0; k<batch.size(); k++)
+		{
+			LocalizedKey localizedKey = batch.get(k);
+			
+			values[index++] = localizedKey.getKey();
+			
+			// For each LocaleValue of the LocalizedKey
+			for (int i=0; i<valueCount; i++)
+			{
+				values[index++] = localizedKey.getLocaleValues()[i].getValue();
+			}
+		}
+		
+		return values;
+	}
+	
+	private Object[] toUpdateValues(LocalizedKey localizedKey)
+	{
+		LocaleValue[] localeValues = localizedKey.getLocaleValues();
+		Object[] values = new Object[localeValues.length + 1];
+		
+		// For each LocaleValue of the LocalizedKey
+		for (int i=0; i<localeValues.length; i++)
+		{
+			values[i] = localeValues[i].getValue();
+		}
+		
+		// The key is the last parameter
+		values[localeValues.length] = localizedKey.getKey();
+		
+		return values;
+	}
+}
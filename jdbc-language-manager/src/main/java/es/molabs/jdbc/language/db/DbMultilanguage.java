@@ -15,45 +15,219 @@
  */
 package es.molabs.jdbc.language.db;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-import org.apache.commons.lang3.StringUtils;
-
 import es.molabs.jdbc.DbQuery;
 import es.molabs.jdbc.exception.DbException;
 import es.molabs.jdbc.language.DbLanguageManager;
 import es.molabs.jdbc.language.LocaleValue;
 import es.molabs.jdbc.language.LocalizedKey;
-import es.molabs.jdbc.language.db.dao.GetKeyRowMapper;
-import es.molabs.jdbc.mapper.ClobRowMapper;
+import es.molabs.jdbc.language.db.dao.BundleRowHandler;
+import es.molabs.jdbc.language.db.dao.ChangeLogRowMapper;
+import es.molabs.jdbc.language.db.dao.KeyRowHandler;
+import es.molabs.jdbc.language.db.dao.LongRowMapper;
+import es.molabs.jdbc.language.io.KeyWriter;
 
 public class DbMultilanguage 
 {
+	// Maximum number of keys appended to the change log by a single statement
+	private final static int CHANGE_LOG_BATCH_SIZE = 100;
+	
 	private DbLanguageManager languageManager = null;
+	private volatile MultilanguageStorage storage = null;
+	private volatile ChangeLogSql changeLogSql = null;
 	
 	public DbMultilanguage(DbLanguageManager languageManager)
 	{
 		this.languageManager = languageManager;
 	}
 	
+	public void reset()
+	{
+		// The statements are built again the next time they are needed
+		storage = null;
+		changeLogSql = null;
+	}
+	
 	public String getKey(String key, String field, DbQuery dbQuery) throws DbException
 	{		
-		return dbQuery.getObject(ClobRowMapper.getInstance(), "SELECT " + field + " FROM " + languageManager.getTableName() + " WHERE " + languageManager.getKeyName() + " = ?", key);
+		return getStorage().getKey(key, field, dbQuery);
+	}
+	
+	public Long writeKey(String key, String field, Writer writer, DbQuery dbQuery) throws IOException
+	{
+		try
+		{
+			return getStorage().writeKey(key, field, writer, dbQuery);
+		}
+		catch (UncheckedIOException uioe)
+		{
+			throw uioe.getCause();
+		}
 	}
 	
 	public List<LocaleValue> getKey(String key, DbQuery dbQuery)
 	{
-		String fields = StringUtils.join(languageManager.getLocaleSet().iterator(), ", ");
-				
-		return toLocaleValueList(languageManager.getLocaleSet(), dbQuery.getObject(GetKeyRowMapper.getInstance(), "SELECT " + fields + " FROM " + languageManager.getTableName() + " WHERE " + languageManager.getKeyName() + " = ?", key));
+		return toLocaleValueList(languageManager.getLocaleSet(), getStorage().getValues(key, dbQuery));
+	}
+	
+	public Map<String, String> getKeys(Collection<String> keys, String field, int chunkSize, DbQuery dbQuery)
+	{
+		final Map<String, String> valueMap = new HashMap<String, String>();
+		
+		streamChunks(keys, field, chunkSize, new KeyRowHandler()
+		{
+			public void handleRow(String key, String[] values)
+			{
+				valueMap.put(key, values[0]);
+			}
+		}, dbQuery);
+		
+		return valueMap;
+	}
+	
+	public Map<String, List<LocaleValue>> getKeys(Collection<String> keys, int chunkSize, DbQuery dbQuery)
+	{
+		final Map<String, List<LocaleValue>> localeValueMap = new HashMap<String, List<LocaleValue>>();
+		final Set<Locale> localeSet = languageManager.getLocaleSet();
+		
+		streamChunks(keys, null, chunkSize, new KeyRowHandler()
+		{
+			public void handleRow(String key, String[] values)
+			{
+				localeValueMap.put(key, toLocaleValueList(localeSet, values));
+			}
+		}, dbQuery);
+		
+		return localeValueMap;
+	}
+	
+	public Map<Locale, Map<String, String>> getBundle(String prefix, DbQuery dbQuery)
+	{
+		BundleRowHandler handler = new BundleRowHandler(languageManager.getLocaleSet());
+		
+		// Escapes the LIKE wildcards so the prefix is matched literally
+		String pattern = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+		
+		getStorage().streamBundle(pattern, handler, dbQuery);
+		
+		return handler.toMap();
+	}
+	
+	public int streamKeys(KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		return getStorage().streamKeys(handler, fetchSize, dbQuery);
+	}
+	
+	public int streamField(String field, KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		return getStorage().streamField(field, handler, fetchSize, dbQuery);
+	}
+	
+	public int streamKeyNames(KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		return getStorage().streamKeyNames(handler, fetchSize, dbQuery);
+	}
+	
+	public long getKeyCount(DbQuery dbQuery)
+	{
+		return getStorage().getKeyCount(dbQuery);
+	}
+	
+	public Timestamp getLastUpdated(DbQuery dbQuery)
+	{
+		Timestamp lastUpdated = getUpdatedStorage().getLastUpdated(dbQuery);
+		
+		// If no row has been stamped yet every stamped row is a change
+		return (lastUpdated != null ? lastUpdated : new Timestamp(0));
+	}
+	
+	public int streamUpdatedKeys(Timestamp since, KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		return getUpdatedStorage().streamUpdatedKeys(since, handler, fetchSize, dbQuery);
+	}
+	
+	public long getFirstChange(DbQuery dbQuery)
+	{
+		Long firstChange = dbQuery.getObject(LongRowMapper.getInstance(), getChangeLogSql().getFirstChangeSql());
+		
+		// If the change log is empty there is no change
+		return (firstChange != null ? firstChange : 0);
+	}
+	
+	public long getLastChange(DbQuery dbQuery)
+	{
+		Long lastChange = dbQuery.getObject(LongRowMapper.getInstance(), getChangeLogSql().getLastChangeSql());
+		
+		// If the change log is empty every change is new
+		return (lastChange != null ? lastChange : 0);
+	}
+	
+	public ChangeLogCursor getChangeLogCursor(long gapTimeout, DbQuery dbQuery)
+	{
+		long firstChange = getFirstChange(dbQuery);
+		long lastChange = getLastChange(dbQuery);
+		
+		// If the change log is empty every change is new
+		if (firstChange == 0) return new ChangeLogCursor(lastChange, gapTimeout);
+		
+		// The cursor starts below the last change so the lower ids of the transactions not committed yet are waited for
+		ChangeLogCursor cursor = new ChangeLogCursor(Math.max(firstChange - 1, lastChange - ChangeLogCursor.MAX_GAPS), gapTimeout);
+		
+		Map<Long, String> changeMap = new LinkedHashMap<Long, String>();
+		dbQuery.getObject(new ChangeLogRowMapper(changeMap), getChangeLogSql().getChangeRangeSql(), cursor.getLastChange(), lastChange);
+		
+		Iterator<Long> iterator = changeMap.keySet().iterator();
+		
+		// The committed changes are already in the table, the missing ids between them are the gaps
+		while (iterator.hasNext())
+		{
+			cursor.add(iterator.next());
+		}
+		
+		return cursor;
+	}
+	
+	public void getChanges(ChangeLogCursor cursor, Collection<String> keys, DbQuery dbQuery)
+	{
+		Long[] gaps = cursor.getGaps();
+		Object[] params = new Object[gaps.length + 1];
+		
+		params[0] = cursor.getLastChange();
+		System.arraycopy(gaps, 0, params, 1, gaps.length);
+		
+		Map<Long, String> changeMap = new LinkedHashMap<Long, String>();
+		dbQuery.getObject(new ChangeLogRowMapper(changeMap), getChangeLogSql().getChangeSql(gaps.length), params);
+		
+		Iterator<Map.Entry<Long, String>> iterator = changeMap.entrySet().iterator();
+		
+		// The cursor is moved with every change read, including the ones that filled a gap
+		while (iterator.hasNext())
+		{
+			Map.Entry<Long, String> entry = iterator.next();
+			
+			cursor.add(entry.getKey());
+			keys.add(entry.getValue());
+		}
+	}
+	
+	public int purgeChanges(Timestamp before, DbQuery dbQuery)
+	{
+		return dbQuery.executeUpdate(getChangeLogSql().getPurgeChangeSql(), before);
 	}
 	
 	public int insertKey(DbQuery dbQuery, LocalizedKey...localizedKeys)
@@ -61,170 +235,275 @@ public class DbMultilanguage
 		// Checks that localizedKeys is not null or empty
 		if (localizedKeys == null || localizedKeys.length == 0) throw new IllegalArgumentException("LocalizedKeys parameter cannot be null or empty.");
 		
-		StringBuffer sql = null;
+		return insertKey(dbQuery, localizedKeys.length, localizedKeys);
+	}
+	
+	public int insertKey(DbQuery dbQuery, int batchSize, LocalizedKey...localizedKeys)
+	{
+		// Checks that localizedKeys is not null or empty
+		if (localizedKeys == null || localizedKeys.length == 0) throw new IllegalArgumentException("LocalizedKeys parameter cannot be null or empty.");
+		
+		// Checks that the batch size is valid
+		if (batchSize <= 0) throw new IllegalArgumentException("BatchSize parameter must be greater than 0.");
+		
+		// Keys that can share the same statement are inserted together
+		MultilanguageStorage currentStorage = getStorage();
+		Map<String, List<LocalizedKey>> batchMap = new LinkedHashMap<String, List<LocalizedKey>>();
+		int count = 0;
 		
 		// For each LocalizedKey
 		for (int k=0; k<localizedKeys.length; k++)
 		{
-			LocaleValue[] localeValues = localizedKeys[k].getLocaleValues();
+			String batchKey = currentStorage.getBatchKey(localizedKeys[k]);
+			
+			List<LocalizedKey> batch = batchMap.get(batchKey);
 			
-			// If its the first value we look for the fields (locale) and the values
-			if (k == 0)
+			if (batch == null)
 			{
-				StringBuilder fieldBuilder = new StringBuilder();
-				StringBuilder valueBuilder = new StringBuilder();
-				
-				for (int i=0; i<localeValues.length; i++)
-				{
-					if (i != 0)
-					{
-						fieldBuilder.append(", ");
-						valueBuilder.append(", ");
-					}
-					
-					fieldBuilder.append(localeValues[i].getLocale().toString());			
-					valueBuilder.append("?");
-				}				
-				
-				sql = new StringBuffer("INSERT INTO " + languageManager.getTableName() + " (" + languageManager.getKeyName() + ", " + fieldBuilder.toString() + ") VALUES (?, " + valueBuilder.toString() + ")");
+				batch = new ArrayList<LocalizedKey>(Math.min(batchSize, localizedKeys.length));
+				batchMap.put(batchKey, batch);
 			}
-			// If there is only values
-			else
+			
+			batch.add(localizedKeys[k]);
+			
+			// If the batch is full it is inserted
+			if (batch.size() == batchSize)
 			{
-				StringBuilder valueBuilder = new StringBuilder();
-				
-				for (int i=0; i<localeValues.length; i++)
-				{
-					if (i != 0) valueBuilder.append(", ");
-					
-					valueBuilder.append("?");
-				}
-				
-				sql.append(",(?, " + valueBuilder.toString() + ")");
-			}						
-		}		
-
-		return dbQuery.executeUpdate(sql.toString(), toInsertValues(localizedKeys));
-	}	
+				count += insertBatch(currentStorage, batch, dbQuery);
+				batch.clear();
+			}
+		}
+		
+		// Inserts the remaining keys
+		Iterator<Map.Entry<String, List<LocalizedKey>>> iterator = batchMap.entrySet().iterator();
+		
+		while (iterator.hasNext())
+		{
+			Map.Entry<String, List<LocalizedKey>> entry = iterator.next();
+			
+			if (!entry.getValue().isEmpty()) count += insertBatch(currentStorage, entry.getValue(), dbQuery);
+		}
+		
+		return count;
+	}
 	
 	public int updateKey(DbQuery dbQuery, LocalizedKey...localizedKeys)
 	{		
 		// Checks that localizedKeys is not null or empty
 		if (localizedKeys == null || localizedKeys.length == 0) throw new IllegalArgumentException("LocalizedKeys parameter cannot be null or empty.");
-				
-		Map<String, StringBuilder> fieldValueMap = new HashMap<String, StringBuilder>();		
 		
-		StringBuilder sql = null;
-		StringBuilder keyBuilder = new StringBuilder();		
-				
-		// For each LocalizedKey
-		for (int k=0; k<localizedKeys.length; k++)
-		{
-			// Adds the key
-			if (k != 0) keyBuilder.append(",");			
-			keyBuilder.append("?");
-			
-			LocaleValue[] localeValues = localizedKeys[k].getLocaleValues();			
-			
-			// Anadimos los valores de esta key para este campo (locale) al map
-			for (int i=0; i<localeValues.length; i++)
-			{				
-				if (fieldValueMap.get(localeValues[i].getLocale().toString()) == null) fieldValueMap.put(localeValues[i].getLocale().toString(), new StringBuilder());				
-				
-				fieldValueMap.get(localeValues[i].getLocale().toString()).append(" WHEN " + languageManager.getKeyName() + " = '" + localizedKeys[k].getKey() +  "' THEN '" + localeValues[i].getValue() + "'");				
-			}
-		}		
-		
-		sql = new StringBuilder("UPDATE " + languageManager.getTableName() + " SET ");
+		int count = 0;
 		
-		boolean first = true;
-		Iterator<String> iterator = fieldValueMap.keySet().iterator();
+		// The updated keys are appended to the change log after the updates
+		List<String> changedKeyList = (languageManager.getChangeLogName() != null ? new ArrayList<String>(localizedKeys.length) : null);
 		
-		// For each value in the map adds it to the sql
-		while (iterator.hasNext())
+		// For each LocalizedKey
+		for (int k=0; k<localizedKeys.length; k++)
 		{
-			String field = iterator.next();
+			// If there is nothing to update
+			if (localizedKeys[k].getLocaleValues().length == 0) continue;
 			
-			if (!first) sql.append(", ");
-		
-			sql.append(field);		
-			sql.append(" = (CASE" + fieldValueMap.get(field).toString() + " END)");
+			int updateCount = getStorage().updateKey(localizedKeys[k], dbQuery);
 			
-			if (!first) sql.append(" ");
+			if (updateCount > 0 && changedKeyList != null) changedKeyList.add(localizedKeys[k].getKey());
 			
-			first = false;
+			count += updateCount;
 		}
 		
-		sql.append("WHERE " + languageManager.getKeyName() + " IN (" + keyBuilder.toString() + ")");
-				
-		return dbQuery.executeUpdate(sql.toString(), toUpdateValues(localizedKeys));
+		if (changedKeyList != null) logChanges(changedKeyList, dbQuery);
+		
+		return count;
 	}
 	
 	public int deleteKey(String key, DbQuery dbQuery)
 	{		
-		return dbQuery.executeUpdate("DELETE FROM " + languageManager.getTableName() + " WHERE " + languageManager.getKeyName() + " = ?", key);		
+		int count = getStorage().deleteKey(key, dbQuery);
+		
+		if (count > 0 && languageManager.getChangeLogName() != null) logChanges(Collections.singletonList(key), dbQuery);
+		
+		return count;
 	}
 	
 	public int duplicateKey(String sourceKey, String destinationKey, DbQuery dbQuery)
 	{
-		String fields = StringUtils.join(languageManager.getLocaleSet().iterator(), ", ");
+		int count = getStorage().duplicateKey(sourceKey, destinationKey, dbQuery);
+		
+		if (count > 0 && languageManager.getChangeLogName() != null) logChanges(Collections.singletonList(destinationKey), dbQuery);
 		
-		return dbQuery.executeUpdate("INSERT INTO " + languageManager.getTableName() + " (SELECT '" + StringEscapeUtils.escapeJava(destinationKey) + "', " + fields + " FROM " + languageManager.getTableName() + " WHERE " + languageManager.getKeyName() + " = ?)", sourceKey);
+		return count;
 	}
 	
 	public StringBuilder export(String key, StringBuilder sql, DbQuery dbQuery)
-	{		
-		// Fields to insert
-		String fields = StringUtils.join(languageManager.getLocaleSet().iterator(), ", ");
-				
-		sql.append("INSERT INTO " + languageManager.getTableName() + " (" + languageManager.getKeyName() + ", " + fields + ") VALUES ('" + key + "'");
-				
-		// For each locale
-		Iterator<Locale> iterator = languageManager.getLocaleSet().iterator();
+	{
+		return getStorage().export(key, sql, dbQuery);
+	}
+	
+	public int export(final KeyWriter keyWriter, int fetchSize, DbQuery dbQuery) throws IOException
+	{
+		Set<Locale> localeSet = languageManager.getLocaleSet();
+		
+		keyWriter.writeStart(languageManager.getTableName(), languageManager.getKeyName(), localeSet.toArray(new Locale[localeSet.size()]));
+		
+		int count = 0;
+		
+		try
+		{
+			// Each row is written as it is read
+			count = streamKeys(new KeyRowHandler()
+			{
+				public void handleRow(String key, String[] values)
+				{
+					try
+					{
+						keyWriter.writeKey(key, values);
+					}
+					catch (IOException ioe)
+					{
+						throw new UncheckedIOException(ioe);
+					}
+				}
+			}, fetchSize, dbQuery);
+		}
+		catch (UncheckedIOException uioe)
+		{
+			throw uioe.getCause();
+		}
+		
+		keyWriter.writeEnd();
+		
+		return count;
+	}
+	
+	private void streamChunks(Collection<String> keys, String field, int chunkSize, KeyRowHandler handler, DbQuery dbQuery)
+	{
+		// Checks that the chunk size is valid
+		if (chunkSize <= 0) throw new IllegalArgumentException("ChunkSize parameter must be greater than 0.");
+		
+		// Removes the duplicated keys
+		Set<String> keySet = new LinkedHashSet<String>(keys);
+		
+		if (keySet.isEmpty()) return;
+		
+		// If there are less keys than the chunk size uses a smaller chunk
+		int size = Math.min(chunkSize, keySet.size());
+		
+		MultilanguageStorage currentStorage = getStorage();
+		Iterator<String> iterator = keySet.iterator();
+		
+		// For each chunk of keys
 		while (iterator.hasNext())
 		{
-			Locale locale = iterator.next();
+			Object[] chunk = new Object[size];
+			int count = 0;
+			
+			while (iterator.hasNext() && count < size)
+			{
+				chunk[count++] = iterator.next();
+			}
+			
+			// The last chunk is filled repeating its last key
+			for (int i=count; i<size; i++)
+			{
+				chunk[i] = chunk[count-1];
+			}
+			
+			// Every chunk has the same size so the statement can be cached
+			currentStorage.streamChunk(chunk, field, handler, dbQuery);
+		}
+	}
+	
+	private MultilanguageStorage getStorage()
+	{
+		MultilanguageStorage currentStorage = storage;
 		
-			sql.append(", '");			
-			sql.append(getKey(key, languageManager.getField(locale), dbQuery));
-			sql.append("'");
+		// Builds the storage for the current locales
+		if (currentStorage == null)
+		{
+			// If there is a locale column every value is a row of its own
+			if (languageManager.getLocaleName() != null)
+			{
+				currentStorage = new LocaleRowStorage(languageManager);
+			}
+			else
+			{
+				currentStorage = new ColumnStorage(languageManager);
+			}
+			
+			storage = currentStorage;
 		}
 		
-		sql.append(");");
+		return currentStorage;
+	}
+	
+	private MultilanguageStorage getUpdatedStorage()
+	{
+		// Checks that there is a column to detect the changes
+		if (languageManager.getUpdatedName() == null) throw new IllegalStateException("Updated name not set.");
+		
+		return getStorage();
+	}
+	
+	private ChangeLogSql getChangeLogSql()
+	{
+		ChangeLogSql sql = changeLogSql;
+		
+		// Builds the statements for the current change log
+		if (sql == null)
+		{
+			// Checks that there is a change log
+			if (languageManager.getChangeLogName() == null) throw new IllegalStateException("Change log name not set.");
+			
+			sql = new ChangeLogSql(languageManager.getChangeLogName(), languageManager.getKeyName(), languageManager.getChangeLogIdName(), languageManager.getChangeLogCreatedName());
+			
+			changeLogSql = sql;
+		}
 		
 		return sql;
 	}
 	
-	private Object[] toInsertValues(LocalizedKey...localizedKeys)
+	private int insertBatch(MultilanguageStorage currentStorage, List<LocalizedKey> batch, DbQuery dbQuery)
 	{
-		List<Object> valueList = new LinkedList<Object>();
+		int count = currentStorage.insertBatch(batch, dbQuery);
 		
-		// For each LocalizedKey
-		for (int k=0; k<localizedKeys.length; k++)
+		// The inserted keys are appended to the change log with the same DbQuery so they share its transaction
+		if (languageManager.getChangeLogName() != null)
 		{
-			valueList.add(localizedKeys[k].getKey());
+			List<String> keyList = new ArrayList<String>(batch.size());
 			
-			// For each LocaleValue of the LocalizedKey
-			for (int i=0; i<localizedKeys[k].getLocaleValues().length; i++)
+			for (int k=0; k<batch.size(); k++)
 			{
-				valueList.add(localizedKeys[k].getLocaleValues()[i].getValue());
+				keyList.add(batch.get(k).getKey());
 			}
+			
+			logChanges(keyList, dbQuery);
 		}
 		
-		return valueList.toArray();
+		return count;
+	}
+	
+	private void logChanges(List<String> keyList, DbQuery dbQuery)
+	{
+		// Appends the keys in blocks so long lists do not create huge statements
+		for (int i=0; i<keyList.size(); i+=CHANGE_LOG_BATCH_SIZE)
+		{
+			List<String> block = keyList.subList(i, Math.min(i + CHANGE_LOG_BATCH_SIZE, keyList.size()));
+			
+			dbQuery.executeUpdate(getChangeLogSql().getChangeLogSql(block.size()), block.toArray());
+		}
 	}
 	
-	private Object[] toUpdateValues(LocalizedKey...localizedKeys)
+	private List<LocaleValue> toLocaleValueList(Set<Locale> localeSet, String[] values)
 	{
-		Object[] values = new Object[localizedKeys.length];
+		List<LocaleValue> localeValueList = new ArrayList<LocaleValue>(values.length);
 		
-		// For each LocalizedKey
-		for (int k=0; k<localizedKeys.length; k++)
+		Iterator<Locale> localeIterator = localeSet.iterator();
+		
+		for (int i=0; i<values.length && localeIterator.hasNext(); i++)
 		{
-			values[k] = localizedKeys[k].getKey();			
+			localeValueList.add(new LocaleValue(localeIterator.next(), values[i]));
 		}
 		
-		return values;
+		return localeValueList;
 	}
 	
 	private List<LocaleValue> toLocaleValueList(Set<Locale> localeSet, List<String> valueList)
@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+class LocaleRowSql 
+{
+	// Maximum number of variable statements that are cached
+	private final static int MAX_CACHED_STATEMENTS = 256;
+	
+	private final String tableName;
+	private final String keyName;
+	private final String updatedName;
+	private final String columns;
+	
+	private final String selectSql;
+	private final String valuesSql;
+	private final String streamSql;
+	private final String fieldStreamSql;
+	private final String keySql;
+	private final String countSql;
+	private final String existsSql;
+	private final String bundleSql;
+	private final String fieldChunkSql;
+	private final String chunkSql;
+	private final String updateSql;
+	private final String deleteSql;
+	private final String duplicateSql;
+	private final String exportSql;
+	private final String lastUpdatedSql;
+	private final String updatedSql;
+	
+	private ConcurrentHashMap<Integer, String> fieldChunkSqlMap = null;
+	private ConcurrentHashMap<Integer, String> chunkSqlMap = null;
+	private ConcurrentHashMap<Integer, String> insertSqlMap = null;
+	
+	LocaleRowSql(String tableName, String keyName, String localeName, String valueName, String updatedName)
+	{
+		this.tableName = tableName;
+		this.keyName = keyName;
+		this.updatedName = updatedName;
+		
+		// Every value is a row of its own
+		columns = keyName + ", " + localeName + ", " + valueName;
+		
+		selectSql = "SELECT " + valueName + " FROM " + tableName + " WHERE " + keyName + " = ? AND " + localeName + " = ?";
+		valuesSql = "SELECT " + columns + " FROM " + tableName + " WHERE " + keyName + " = ?";
+		streamSql = "SELECT " + columns + " FROM " + tableName + " ORDER BY " + keyName;
+		fieldStreamSql = "SELECT " + keyName + ", " + valueName + " FROM " + tableName + " WHERE " + localeName + " = ?";
+		keySql = "SELECT DISTINCT " + keyName + " FROM " + tableName;
+		countSql = "SELECT COUNT(DISTINCT " + keyName + ") FROM " + tableName;
+		existsSql = "SELECT COUNT(*) FROM " + tableName + " WHERE " + keyName + " = ?";
+		bundleSql = "SELECT " + columns + " FROM " + tableName + " WHERE " + keyName + " LIKE ? ESCAPE '\\' ORDER BY " + keyName;
+		deleteSql = "DELETE FROM " + tableName + " WHERE " + keyName + " = ?";
+		exportSql = "INSERT INTO " + tableName + " (" + columns + ") VALUES (";
+		
+		// Start of the chunk statements, the placeholders for the keys are added for each size
+		fieldChunkSql = "SELECT " + keyName + ", " + valueName + " FROM " + tableName + " WHERE " + localeName + " = ? AND " + keyName + " IN (";
+		chunkSql = "SELECT " + columns + " FROM " + tableName + " WHERE " + keyName + " IN (";
+		
+		// If there is an updated column every write stamps the rows it changes
+		if (updatedName != null)
+		{
+			updateSql = "UPDATE " + tableName + " SET " + valueName + " = ?, " + updatedName + " = CURRENT_TIMESTAMP WHERE " + keyName + " = ? AND " + localeName + " = ?";
+			duplicateSql = "INSERT INTO " + tableName + " (" + columns + ", " + updatedName + ") SELECT ?, " + localeName + ", " + valueName + ", CURRENT_TIMESTAMP FROM " + tableName + " WHERE " + keyName + " = ?";
+			lastUpdatedSql = "SELECT MAX(" + updatedName + ") FROM " + tableName;
+			
+			// Every row of a changed key is read so the key is complete
+			updatedSql = "SELECT " + columns + " FROM " + tableName + " WHERE " + keyName + " IN (SELECT " + keyName + " FROM " + tableName + " WHERE " + updatedName + " >= ?) ORDER BY " + keyName;
+		}
+		else
+		{
+			updateSql = "UPDATE " + tableName + " SET " + valueName + " = ? WHERE " + keyName + " = ? AND " + localeName + " = ?";
+			duplicateSql = "INSERT INTO " + tableName + " (" + columns + ") SELECT ?, " + localeName + ", " + valueName + " FROM " + tableName + " WHERE " + keyName + " = ?";
+			lastUpdatedSql = null;
+			updatedSql = null;
+		}
+		
+		fieldChunkSqlMap = new ConcurrentHashMap<Integer, String>();
+		chunkSqlMap = new ConcurrentHashMap<Integer, String>();
+		insertSqlMap = new ConcurrentHashMap<Integer, String>();
+	}
+	
+	String getFieldChunkSql(int chunkSize)
+	{
+		return getChunkSql(fieldChunkSqlMap, fieldChunkSql, chunkSize, ")");
+	}
+	
+	String getChunkSql(int chunkSize)
+	{
+		return getChunkSql(chunkSqlMap, chunkSql, chunkSize, ") ORDER BY " + keyName);
+	}
+	
+	String getInsertSql(int rowCount)
+	{
+		String sql = insertSqlMap.get(rowCount);
+		
+		if (sql == null)
+		{
+			// Placeholders for the key, the locale and the value
+			String row = "(?, ?, ?" + (updatedName != null ? ", CURRENT_TIMESTAMP" : "") + ")";
+			
+			sql = "INSERT INTO " + tableName + " (" + columns + (updatedName != null ? ", " + updatedName : "") + ") VALUES " + StringUtils.repeat(row, ", ", rowCount);
+			
+			if (insertSqlMap.size() < MAX_CACHED_STATEMENTS) insertSqlMap.put(rowCount, sql);
+		}
+		
+		return sql;
+	}
+	
+	String getSelectSql()
+	{
+		return selectSql;
+	}
+	
+	String getValuesSql()
+	{
+		return valuesSql;
+	}
+	
+	String getStreamSql()
+	{
+		return streamSql;
+	}
+	
+	String getFieldStreamSql()
+	{
+		return fieldStreamSql;
+	}
+	
+	String getKeySql()
+	{
+		return keySql;
+	}
+	
+	String getCountSql()
+	{
+		return countSql;
+	}
+	
+	String getExistsSql()
+	{
+		return existsSql;
+	}
+	
+	String getBundleSql()
+	{
+		return bundleSql;
+	}
+	
+	String getUpdateSql()
+	{
+		return updateSql;
+	}
+	
+	String getDeleteSql()
+	{
+		return deleteSql;
+	}
+	
+	String getDuplicateSql()
+	{
+		return duplicateSql;
+	}
+	
+	String getExportSql()
+	{
+		return exportSql;
+	}
+	
+	String getLastUpdatedSql()
+	{
+		return lastUpdatedSql;
+	}
+	
+	String getUpdatedSql()
+	{
+		return updatedSql;
+	}
+	
+	private String getChunkSql(ConcurrentHashMap<Integer, String> sqlMap, String prefix, int chunkSize, String suffix)
+	{
+		String sql = sqlMap.get(chunkSize);
+		
+		if (sql == null)
+		{
+			sql = prefix + StringUtils.repeat("?", ", ", chunkSize) + suffix;
+			
+			if (sqlMap.size() < MAX_CACHED_STATEMENTS) sqlMap.put(chunkSize, sql);
+		}
+		
+		return sql;
+	}
+}
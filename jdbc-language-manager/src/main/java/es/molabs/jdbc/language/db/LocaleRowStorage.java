@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db;
+
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import es.molabs.jdbc.DbQuery;
+import es.molabs.jdbc.language.DbLanguageManager;
+import es.molabs.jdbc.language.LocaleValue;
+import es.molabs.jdbc.language.LocalizedKey;
+import es.molabs.jdbc.language.db.dao.KeyRowHandler;
+import es.molabs.jdbc.language.db.dao.LocaleRowMapper;
+import es.molabs.jdbc.language.db.dao.LongRowMapper;
+import es.molabs.jdbc.language.db.dao.StreamKeyRowMapper;
+import es.molabs.jdbc.language.db.dao.TimestampRowMapper;
+import es.molabs.jdbc.language.db.dao.WriterRowMapper;
+import es.molabs.jdbc.mapper.ClobRowMapper;
+
+class LocaleRowStorage implements MultilanguageStorage 
+{
+	private LocaleRowSql sql = null;
+	private String[] fields = null;
+	private Map<String, Integer> fieldMap = null;
+	private Map<Locale, String> localeFieldMap = null;
+	
+	LocaleRowStorage(DbLanguageManager languageManager)
+	{
+		// One row per key and locale
+		sql = new LocaleRowSql(languageManager.getTableName(), languageManager.getKeyName(), languageManager.getLocaleName(), languageManager.getValueName(), languageManager.getUpdatedName());
+		
+		// The values are returned in the same order than the locales
+		fields = new String[languageManager.getLocaleSet().size()];
+		fieldMap = new HashMap<String, Integer>();
+		localeFieldMap = new HashMap<Locale, String>();
+		
+		Iterator<Locale> iterator = languageManager.getLocaleSet().iterator();
+		
+		for (int i=0; iterator.hasNext(); i++)
+		{
+			Locale locale = iterator.next();
+			
+			fields[i] = languageManager.getField(locale);
+			fieldMap.put(fields[i], i);
+			localeFieldMap.put(locale, fields[i]);
+		}
+	}
+	
+	public String getKey(String key, String field, DbQuery dbQuery)
+	{
+		return dbQuery.getObject(ClobRowMapper.getInstance(), sql.getSelectSql(), key, field);
+	}
+	
+	public Long writeKey(String key, String field, Writer writer, DbQuery dbQuery)
+	{
+		return dbQuery.getObject(new WriterRowMapper(writer), sql.getSelectSql(), key, field);
+	}
+	
+	public List<String> getValues(String key, DbQuery dbQuery)
+	{
+		final List<String> valueList = new ArrayList<String>();
+		
+		dbQuery.getObject(new LocaleRowMapper(new KeyRowHandler()
+		{
+			public void handleRow(String key, String[] values)
+			{
+				valueList.addAll(Arrays.asList(values));
+			}
+		}, fieldMap, 0), sql.getValuesSql(), key);
+		
+		// If the key does not exists the mapper is never called
+		return (valueList.isEmpty() ? null : valueList);
+	}
+	
+	public void streamChunk(Object[] keys, String field, KeyRowHandler handler, DbQuery dbQuery)
+	{
+		// Without field the rows of every locale are read
+		if (field == null)
+		{
+			dbQuery.getObject(new LocaleRowMapper(handler, fieldMap, 0), sql.getChunkSql(keys.length), keys);
+			
+			return;
+		}
+		
+		// The locale is the first parameter
+		Object[] params = new Object[keys.length + 1];
+		params[0] = field;
+		System.arraycopy(keys, 0, params, 1, keys.length);
+		
+		dbQuery.getObject(new StreamKeyRowMapper(handler, 0), sql.getFieldChunkSql(keys.length), params);
+	}
+	
+	public int streamKeys(KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		return count(dbQuery.getObject(new LocaleRowMapper(handler, fieldMap, fetchSize), sql.getStreamSql()));
+	}
+	
+	public int streamField(String field, KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		// Only the keys with a row for the locale are read
+		return count(dbQuery.getObject(new StreamKeyRowMapper(handler, fetchSize), sql.getFieldStreamSql(), field));
+	}
+	
+	public int streamBundle(String pattern, KeyRowHandler handler, DbQuery dbQuery)
+	{
+		return count(dbQuery.getObject(new LocaleRowMapper(handler, fieldMap, 0), sql.getBundleSql(), pattern));
+	}
+	
+	public int streamKeyNames(KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		// Only the key column is read so the handler receives no values
+		return count(dbQuery.getObject(new StreamKeyRowMapper(handler, fetchSize), sql.getKeySql()));
+	}
+	
+	public long getKeyCount(DbQuery dbQuery)
+	{
+		Long count = dbQuery.getObject(LongRowMapper.getInstance(), sql.getCountSql());
+		
+		return (count != null ? count : 0);
+	}
+	
+	public Timestamp getLastUpdated(DbQuery dbQuery)
+	{
+		return dbQuery.getObject(TimestampRowMapper.getInstance(), sql.getLastUpdatedSql());
+	}
+	
+	public int streamUpdatedKeys(Timestamp since, KeyRowHandler handler, int fetchSize, DbQuery dbQuery)
+	{
+		return count(dbQuery.getObject(new LocaleRowMapper(handler, fieldMap, fetchSize), sql.getUpdatedSql(), since));
+	}
+	
+	public String getBatchKey(LocalizedKey localizedKey)
+	{
+		// The statement only depends on the number of rows
+		return "";
+	}
+	
+	public int insertBatch(List<LocalizedKey> batch, DbQuery dbQuery)
+	{
+		List<Object> valueList = new ArrayList<Object>();
+		int count = 0;
+		
+		// For each LocalizedKey
+		for (int k=0; k<batch.size(); k++)
+		{
+			LocalizedKey localizedKey = batch.get(k);
+			LocaleValue[] localeValues = localizedKey.getLocaleValues();
+			
+			// A key is only stored through its values
+			if (localeValues.length > 0) count++;
+			
+			addRows(localizedKey.getKey(), Arrays.asList(localeValues), valueList);
+		}
+		
+		if (!valueList.isEmpty()) dbQuery.executeUpdate(sql.getInsertSql(valueList.size() / 3), valueList.toArray());
+		
+		return count;
+	}
+	
+	public int updateKey(LocalizedKey localizedKey, DbQuery dbQuery)
+	{
+		LocaleValue[] localeValues = localizedKey.getLocaleValues();
+		List<LocaleValue> missingList = new ArrayList<LocaleValue>();
+		boolean exists = false;
+		
+		// For each LocaleValue of the LocalizedKey
+		for (int i=0; i<localeValues.length; i++)
+		{
+			if (dbQuery.executeUpdate(sql.getUpdateSql(), localeValues[i].getValue(), localizedKey.getKey(), toField(localeValues[i].getLocale())) > 0)
+			{
+				exists = true;
+			}
+			else
+			{
+				missingList.add(localeValues[i]);
+			}
+		}
+		
+		// The locales without row are inserted only if the key exists
+		if (!missingList.isEmpty() && (exists || dbQuery.getObject(LongRowMapper.getInstance(), sql.getExistsSql(), localizedKey.getKey()) > 0))
+		{
+			List<Object> valueList = new ArrayList<Object>();
+			addRows(localizedKey.getKey(), missingList, valueList);
+			
+			dbQuery.executeUpdate(sql.getInsertSql(missingList.size()), valueList.toArray());
+			
+			exists = true;
+		}
+		
+		return (exists ? 1 : 0);
+	}
+	
+	public int deleteKey(String key, DbQuery dbQuery)
+	{
+		return (dbQuery.executeUpdate(sql.getDeleteSql(), key) > 0 ? 1 : 0);
+	}
+	
+	public int duplicateKey(String sourceKey, String destinationKey, DbQuery dbQuery)
+	{
+		return (dbQuery.executeUpdate(sql.getDuplicateSql(), destinationKey, sourceKey) > 0 ? 1 : 0);
+	}
+	
+	public StringBuilder export(String key, StringBuilder sqlBuilder, DbQuery dbQuery)
+	{
+		List<String> valueList = getValues(key, dbQuery);
+		if (valueList == null) valueList = Collections.nCopies(fields.length, null);
+		
+		// One insert for each locale
+		for (int i=0; i<fields.length; i++)
+		{
+			sqlBuilder.append(sql.getExportSql());
+			sqlBuilder.append("'");
+			sqlBuilder.append(key);
+			sqlBuilder.append("', '");
+			sqlBuilder.append(fields[i]);
+			sqlBuilder.append("', '");
+			sqlBuilder.append(valueList.get(i));
+			sqlBuilder.append("');");
+		}
+		
+		return sqlBuilder;
+	}
+	
+	private int count(Integer count)
+	{
+		// If there are no rows the mapper is never called
+		return (count != null ? count : 0);
+	}
+	
+	private void addRows(String key, List<LocaleValue> localeValueList, List<Object> valueList)
+	{
+		for (int i=0; i<localeValueList.size(); i++)
+		{
+			valueList.add(key);
+			valueList.add(toField(localeValueList.get(i).getLocale()));
+			valueList.add(localeValueList.get(i).getValue());
+		}
+	}
+	
+	private String toField(Locale locale)
+	{
+		String field = localeFieldMap.get(locale);
+		
+		// The locales without field are stored with the same name than the columns of a table with one column per locale
+		return (field != null ? field : locale.toString());
+	}
+}
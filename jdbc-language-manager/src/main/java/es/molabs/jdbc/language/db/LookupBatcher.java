@@ -0,0 +1,284 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import es.molabs.jdbc.DbQuery;
+
+public class LookupBatcher 
+{
+	private final long window;
+	private final int maxKeys;
+	
+	private ConcurrentHashMap<BatchKey, Batch> batchMap = null;
+	
+	private AtomicLong batchCount = null;
+	private AtomicLong keyCount = null;
+	
+	public LookupBatcher(long window, TimeUnit unit, int maxKeys)
+	{
+		// Checks that the window is valid
+		if (window < 0) throw new IllegalArgumentException("Window parameter cannot be negative.");
+		
+		// Checks that the batch size is valid
+		if (maxKeys <= 0) throw new IllegalArgumentException("MaxKeys parameter must be greater than 0.");
+		
+		this.window = unit.toNanos(window);
+		this.maxKeys = maxKeys;
+		
+		batchMap = new ConcurrentHashMap<BatchKey, Batch>();
+		
+		batchCount = new AtomicLong();
+		keyCount = new AtomicLong();
+	}
+	
+	public String getKey(DbMultilanguage dbMultilanguage, String key, String field, DbQuery dbQuery)
+	{
+		// A locale without field cannot be batched
+		if (field == null) return dbMultilanguage.getKey(key, field, dbQuery);
+		
+		BatchKey batchKey = new BatchKey(field, dbQuery);
+		
+		while (true)
+		{
+			Batch batch = batchMap.get(batchKey);
+			
+			// If there is no open batch the thread opens one and runs it when the window ends
+			if (batch == null)
+			{
+				batch = new Batch(Thread.currentThread());
+				CompletableFuture<String> future = batch.add(key, maxKeys);
+				
+				if (batchMap.putIfAbsent(batchKey, batch) != null) continue;
+				
+				run(batchKey, batch, dbMultilanguage, field, dbQuery);
+				
+				return join(future);
+			}
+			
+			CompletableFuture<String> future = batch.add(key, maxKeys);
+			
+			// If the batch was already closed looks for the next one
+			if (future == null)
+			{
+				batchMap.remove(batchKey, batch);
+				
+				continue;
+			}
+			
+			// If the batch is full it is run without waiting for the window to end
+			if (batch.isClosed())
+			{
+				batchMap.remove(batchKey, batch);
+				LockSupport.unpark(batch.getLeader());
+			}
+			
+			return join(future);
+		}
+	}
+	
+	public long getWindow(TimeUnit unit)
+	{
+		return unit.convert(window, TimeUnit.NANOSECONDS);
+	}
+	
+	public int getMaxKeys()
+	{
+		return maxKeys;
+	}
+	
+	public long getBatchCount()
+	{
+		return batchCount.get();
+	}
+	
+	public long getKeyCount()
+	{
+		return keyCount.get();
+	}
+	
+	private void run(BatchKey batchKey, Batch batch, DbMultilanguage dbMultilanguage, String field, DbQuery dbQuery)
+	{
+		long deadline = System.nanoTime() + window;
+		long remaining = window;
+		boolean interrupted = false;
+		
+		// Waits till the window ends or the batch is full, an interrupted thread does not park so it stops waiting
+		while (remaining > 0 && !batch.isClosed())
+		{
+			if (Thread.interrupted())
+			{
+				interrupted = true;
+				
+				break;
+			}
+			
+			LockSupport.parkNanos(this, remaining);
+			
+			remaining = deadline - System.nanoTime();
+		}
+		
+		try
+		{
+			runBatch(batchKey, batch, dbMultilanguage, field, dbQuery);
+		}
+		finally
+		{
+			// The interrupt is kept for the caller once the batch has run
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void runBatch(BatchKey batchKey, Batch batch, DbMultilanguage dbMultilanguage, String field, DbQuery dbQuery)
+	{
+		
+		Map<String, CompletableFuture<String>> futureMap = batch.close();
+		batchMap.remove(batchKey, batch);
+		
+		batchCount.incrementAndGet();
+		keyCount.addAndGet(futureMap.size());
+		
+		try
+		{
+			// Every key of the batch is read with a single query
+			Map<String, String> valueMap = dbMultilanguage.getKeys(futureMap.keySet(), field, maxKeys, dbQuery);
+			
+			Iterator<Map.Entry<String, CompletableFuture<String>>> iterator = futureMap.entrySet().iterator();
+			
+			while (iterator.hasNext())
+			{
+				Map.Entry<String, CompletableFuture<String>> entry = iterator.next();
+				
+				entry.getValue().complete(valueMap.get(entry.getKey()));
+			}
+		}
+		catch (RuntimeException re)
+		{
+			Iterator<CompletableFuture<String>> iterator = futureMap.values().iterator();
+			
+			while (iterator.hasNext())
+			{
+				iterator.next().completeExceptionally(re);
+			}
+		}
+	}
+	
+	private String join(CompletableFuture<String> future)
+	{
+		try
+		{
+			return future.join();
+		}
+		catch (CompletionException ce)
+		{
+			// Throws the exception of the query as if it was run by the calling thread
+			if (ce.getCause() instanceof RuntimeException) throw (RuntimeException) ce.getCause();
+			
+			throw ce;
+		}
+	}
+	
+	private static class Batch
+	{
+		private final Thread leader;
+		private final Map<String, CompletableFuture<String>> futureMap;
+		
+		private volatile boolean closed;
+		
+		private Batch(Thread leader)
+		{
+			this.leader = leader;
+			
+			futureMap = new LinkedHashMap<String, CompletableFuture<String>>();
+			closed = false;
+		}
+		
+		private synchronized CompletableFuture<String> add(String key, int maxKeys)
+		{
+			if (closed) return null;
+			
+			// The same key requested twice is only read once
+			CompletableFuture<String> future = futureMap.get(key);
+			
+			if (future == null)
+			{
+				future = new CompletableFuture<String>();
+				futureMap.put(key, future);
+				
+				if (futureMap.size() >= maxKeys) closed = true;
+			}
+			
+			return future;
+		}
+		
+		private synchronized Map<String, CompletableFuture<String>> close()
+		{
+			closed = true;
+			
+			return futureMap;
+		}
+		
+		private boolean isClosed()
+		{
+			return closed;
+		}
+		
+		private Thread getLeader()
+		{
+			return leader;
+		}
+	}
+	
+	private static class BatchKey
+	{
+		private final String field;
+		private final DbQuery dbQuery;
+		private final int hashCode;
+		
+		private BatchKey(String field, DbQuery dbQuery)
+		{
+			this.field = field;
+			this.dbQuery = dbQuery;
+			
+			// Lookups made through different DbQuery instances are never mixed
+			hashCode = 31 * field.hashCode() + System.identityHashCode(dbQuery);
+		}
+		
+		public int hashCode()
+		{
+			return hashCode;
+		}
+		
+		public boolean equals(Object object)
+		{
+			if (this == object) return true;
+			if (!(object instanceof BatchKey)) return false;
+			
+			BatchKey other = (BatchKey) object;
+			
+			return field.equals(other.field) && dbQuery == other.dbQuery;
+		}
+	}
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import es.molabs.jdbc.language.LocaleValue;
+
+class MultilanguageSql 
+{
+	// Maximum number of variable statements that are cached
+	private final static int MAX_CACHED_STATEMENTS = 256;
+	
+	private final String tableName;
+	private final String keyName;
+	private final String updatedName;
+	private final String fields;
+	
+	private final String selectSql;
+	private final String streamSql;
+	private final String keySql;
+	private final String countSql;
+	private final String bundleSql;
+	private final String deleteSql;
+	private final String duplicateSql;
+	private final String exportSql;
+	private final String lastUpdatedSql;
+	private final String updatedSql;
+	
+	private ConcurrentHashMap<String, String> fieldSqlMap = null;
+	private ConcurrentHashMap<String, String> fieldStreamSqlMap = null;
+	private ConcurrentHashMap<String, String> chunkSqlMap = null;
+	private ConcurrentHashMap<String, String> insertSqlMap = null;
+	private ConcurrentHashMap<String, String> updateSqlMap = null;
+	
+	MultilanguageSql(String tableName, String keyName, String updatedName, Collection<Locale> locales)
+	{
+		this.tableName = tableName;
+		this.keyName = keyName;
+		this.updatedName = updatedName;
+		
+		fields = StringUtils.join(locales.iterator(), ", ");
+		
+		selectSql = "SELECT " + fields + " FROM " + tableName + " WHERE " + keyName + " = ?";
+		streamSql = "SELECT " + keyName + ", " + fields + " FROM " + tableName;
+		keySql = "SELECT " + keyName + " FROM " + tableName;
+		countSql = "SELECT COUNT(*) FROM " + tableName;
+		bundleSql = streamSql + " WHERE " + keyName + " LIKE ? ESCAPE '\\'";
+		deleteSql = "DELETE FROM " + tableName + " WHERE " + keyName + " = ?";
+		exportSql = "INSERT INTO " + tableName + " (" + keyName + ", " + fields + ") VALUES (";
+		
+		// If there is an updated column every write stamps the rows it changes
+		if (updatedName != null)
+		{
+			duplicateSql = "INSERT INTO " + tableName + " (" + keyName + ", " + fields + ", " + updatedName + ") SELECT ?, " + fields + ", CURRENT_TIMESTAMP FROM " + tableName + " WHERE " + keyName + " = ?";
+			lastUpdatedSql = "SELECT MAX(" + updatedName + ") FROM " + tableName;
+			updatedSql = streamSql + " WHERE " + updatedName + " >= ?";
+		}
+		else
+		{
+			duplicateSql = "INSERT INTO " + tableName + " (" + keyName + ", " + fields + ") SELECT ?, " + fields + " FROM " + tableName + " WHERE " + keyName + " = ?";
+			lastUpdatedSql = null;
+			updatedSql = null;
+		}
+		
+		fieldSqlMap = new ConcurrentHashMap<String, String>();
+		fieldStreamSqlMap = new ConcurrentHashMap<String, String>();
+		chunkSqlMap = new ConcurrentHashMap<String, String>();
+		insertSqlMap = new ConcurrentHashMap<String, String>();
+		updateSqlMap = new ConcurrentHashMap<String, String>();
+	}
+	
+	String getFields()
+	{
+		return fields;
+	}
+	
+	String getSelectSql()
+	{
+		return selectSql;
+	}
+	
+	String getSelectSql(String field)
+	{
+		// A locale without field is not cached
+		if (field == null) return "SELECT " + field + " FROM " + tableName + " WHERE " + keyName + " = ?";
+		
+		String sql = fieldSqlMap.get(field);
+		
+		if (sql == null)
+		{
+			sql = "SELECT " + field + " FROM " + tableName + " WHERE " + keyName + " = ?";
+			
+			fieldSqlMap.put(field, sql);
+		}
+		
+		return sql;
+	}
+	
+	String getFieldStreamSql(String field)
+	{
+		String sql = fieldStreamSqlMap.get(field);
+		
+		if (sql == null)
+		{
+			sql = "SELECT " + keyName + ", " + field + " FROM " + tableName;
+			
+			if (fieldStreamSqlMap.size() < MAX_CACHED_STATEMENTS) fieldStreamSqlMap.put(field, sql);
+		}
+		
+		return sql;
+	}
+	
+	String getChunkSql(String fields, int chunkSize)
+	{
+		String chunkKey = fields + "#" + chunkSize;
+		String sql = chunkSqlMap.get(chunkKey);
+		
+		if (sql == null)
+		{
+			sql = "SELECT " + keyName + ", " + fields + " FROM " + tableName + " WHERE " + keyName + " IN (" + StringUtils.repeat("?", ", ", chunkSize) + ")";
+			
+			if (chunkSqlMap.size() < MAX_CACHED_STATEMENTS) chunkSqlMap.put(chunkKey, sql);
+		}
+		
+		return sql;
+	}
+	
+	String getInsertSql(String fields, int valueCount, int rowCount)
+	{
+		String insertKey = fields + "#" + rowCount;
+		String sql = insertSqlMap.get(insertKey);
+		
+		if (sql == null)
+		{
+			// Placeholders for the key and its values
+			String row = "(" + StringUtils.repeat("?", ", ", valueCount + 1) + (updatedName != null ? ", CURRENT_TIMESTAMP" : "") + ")";
+			
+			sql = "INSERT INTO " + tableName + " (" + keyName + (valueCount > 0 ? ", " + fields : "") + (updatedName != null ? ", " + updatedName : "") + ") VALUES " + StringUtils.repeat(row, ", ", rowCount);
+			
+			if (insertSqlMap.size() < MAX_CACHED_STATEMENTS) insertSqlMap.put(insertKey, sql);
+		}
+		
+		return sql;
+	}
+	
+	String getUpdateSql(String fields, LocaleValue[] localeValues)
+	{
+		String sql = updateSqlMap.get(fields);
+		
+		if (sql == null)
+		{
+			StringBuilder sqlBuilder = new StringBuilder("UPDATE " + tableName + " SET ");
+			
+			for (int i=0; i<localeValues.length; i++)
+			{
+				if (i != 0) sqlBuilder.append(", ");
+				
+				sqlBuilder.append(localeValues[i].getLocale().toString());
+				sqlBuilder.append(" = ?");
+			}
+			
+			if (updatedName != null) sqlBuilder.append(", " + updatedName + " = CURRENT_TIMESTAMP");
+			
+			sqlBuilder.append(" WHERE " + keyName + " = ?");
+			
+			sql = sqlBuilder.toString();
+			
+			if (updateSqlMap.size() < MAX_CACHED_STATEMENTS) updateSqlMap.put(fields, sql);
+		}
+		
+		return sql;
+	}
+	
+	String getStreamSql()
+	{
+		return streamSql;
+	}
+	
+	String getKeySql()
+	{
+		return keySql;
+	}
+	
+	String getCountSql()
+	{
+		return countSql;
+	}
+	
+	String getBundleSql()
+	{
+		return bundleSql;
+	}
+	
+	String getDeleteSql()
+	{
+		return deleteSql;
+	}
+	
+	String getDuplicateSql()
+	{
+		return duplicateSql;
+	}
+	
+	String getExportSql()
+	{
+		return exportSql;
+	}
+	
+	String getLastUpdatedSql()
+	{
+		return lastUpdatedSql;
+	}
+	
+	String getUpdatedSql()
+	{
+		return updatedSql;
+	}
+}
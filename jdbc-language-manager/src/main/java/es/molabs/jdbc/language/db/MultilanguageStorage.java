@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db;
+
+import java.io.Writer;
+import java.sql.Timestamp;
+import java.util.List;
+
+import es.molabs.jdbc.DbQuery;
+import es.molabs.jdbc.language.LocalizedKey;
+import es.molabs.jdbc.language.db.dao.KeyRowHandler;
+
+interface MultilanguageStorage 
+{
+	public String getKey(String key, String field, DbQuery dbQuery);
+	
+	public Long writeKey(String key, String field, Writer writer, DbQuery dbQuery);
+	
+	public List<String> getValues(String key, DbQuery dbQuery);
+	
+	public void streamChunk(Object[] keys, String field, KeyRowHandler handler, DbQuery dbQuery);
+	
+	public int streamKeys(KeyRowHandler handler, int fetchSize, DbQuery dbQuery);
+	
+	public int streamField(String field, KeyRowHandler handler, int fetchSize, DbQuery dbQuery);
+	
+	public int streamBundle(String pattern, KeyRowHandler handler, DbQuery dbQuery);
+	
+	public int streamKeyNames(KeyRowHandler handler, int fetchSize, DbQuery dbQuery);
+	
+	public long getKeyCount(DbQuery dbQuery);
+	
+	public Timestamp getLastUpdated(DbQuery dbQuery);
+	
+	public int streamUpdatedKeys(Timestamp since, KeyRowHandler handler, int fetchSize, DbQuery dbQuery);
+	
+	public int insertBatch(List<LocalizedKey> batch, DbQuery dbQuery);
+	
+	public String getBatchKey(LocalizedKey localizedKey);
+	
+	public int updateKey(LocalizedKey localizedKey, DbQuery dbQuery);
+	
+	public int deleteKey(String key, DbQuery dbQuery);
+	
+	public int duplicateKey(String sourceKey, String destinationKey, DbQuery dbQuery);
+	
+	public StringBuilder export(String key, StringBuilder sql, DbQuery dbQuery);
+}
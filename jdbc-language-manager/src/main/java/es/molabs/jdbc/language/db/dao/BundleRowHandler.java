@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class BundleRowHandler implements KeyRowHandler
+{
+	private Locale[] locales = null;
+	private List<Map<String, String>> valueMapList = null;
+	
+	public BundleRowHandler(Collection<Locale> locales)
+	{
+		this.locales = locales.toArray(new Locale[locales.size()]);
+		
+		valueMapList = new ArrayList<Map<String, String>>(this.locales.length);
+		
+		for (int i=0; i<this.locales.length; i++)
+		{
+			valueMapList.add(new HashMap<String, String>());
+		}
+	}
+	
+	public void handleRow(String key, String[] values)
+	{
+		for (int i=0; i<values.length && i<valueMapList.size(); i++)
+		{
+			// Missing translations are not added to the bundle
+			if (values[i] != null) valueMapList.get(i).put(key, values[i]);
+		}
+	}
+	
+	public Map<Locale, Map<String, String>> toMap()
+	{
+		Map<Locale, Map<String, String>> localeMap = new LinkedHashMap<Locale, Map<String, String>>();
+		
+		for (int i=0; i<locales.length; i++)
+		{
+			localeMap.put(locales[i], Collections.unmodifiableMap(valueMapList.get(i)));
+		}
+		
+		return Collections.unmodifiableMap(localeMap);
+	}
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+import es.molabs.jdbc.mapper.DbRowMapper;
+
+public class ChangeLogRowMapper implements DbRowMapper<Integer> 
+{
+	private Map<Long, String> changeMap = null;
+	
+	public ChangeLogRowMapper(Map<Long, String> changeMap)
+	{
+		this.changeMap = changeMap;
+	}
+	
+	public Integer mapRow(ResultSet resultSet, int rowNum) throws SQLException 
+	{
+		int count = 0;
+		
+		// Consumes the whole result set from the current row, the rows are ordered by id
+		do
+		{
+			changeMap.put(resultSet.getLong(1), resultSet.getString(2));
+			
+			count++;
+		}
+		while (resultSet.next());
+		
+		return count;
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+import es.molabs.jdbc.mapper.DbRowMapper;
+
+public class LocaleRowMapper implements DbRowMapper<Integer> 
+{
+	private KeyRowHandler handler = null;
+	private Map<String, Integer> fieldMap = null;
+	private int fetchSize;
+	
+	public LocaleRowMapper(KeyRowHandler handler, Map<String, Integer> fieldMap, int fetchSize)
+	{
+		this.handler = handler;
+		this.fieldMap = fieldMap;
+		this.fetchSize = fetchSize;
+	}
+	
+	public Integer mapRow(ResultSet resultSet, int rowNum) throws SQLException 
+	{
+		// Hints the driver to fetch the remaining rows in blocks instead of all at once
+		if (fetchSize > 0) resultSet.setFetchSize(fetchSize);
+		
+		String key = null;
+		String[] values = null;
+		int count = 0;
+		
+		// Each row is a key, a locale and its value, the rows of a key come together
+		do
+		{
+			String rowKey = resultSet.getString(1);
+			
+			// The previous key is complete when the next one starts
+			if (!rowKey.equals(key))
+			{
+				if (key != null) handler.handleRow(key, values);
+				
+				key = rowKey;
+				values = new String[fieldMap.size()];
+				count++;
+			}
+			
+			Integer index = fieldMap.get(resultSet.getString(2));
+			
+			// The values of locales without field are ignored
+			if (index != null) values[index] = resultSet.getString(3);
+		}
+		while (resultSet.next());
+		
+		handler.handleRow(key, values);
+		
+		return count;
+	}
+}
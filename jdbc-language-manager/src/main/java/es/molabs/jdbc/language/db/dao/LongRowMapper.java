@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import es.molabs.jdbc.mapper.DbRowMapper;
+
+public class LongRowMapper implements DbRowMapper<Long> 
+{
+	/*
+	 * Static
+	 */
+	private static LongRowMapper INSTANCE = null;
+	
+	static
+	{
+		INSTANCE = new LongRowMapper();
+	}
+	
+	public static LongRowMapper getInstance()
+	{
+		return INSTANCE;
+	}
+	
+	
+	/*
+	 * Instanced
+	 */
+	private LongRowMapper()
+	{			
+	}
+	
+	public Long mapRow(ResultSet resultSet, int rowNum) throws SQLException 
+	{
+		long value = resultSet.getLong(1);
+		
+		// An aggregate over no rows returns null
+		return (resultSet.wasNull() ? null : value);
+	}
+}
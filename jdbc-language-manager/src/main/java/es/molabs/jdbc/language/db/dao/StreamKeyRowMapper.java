@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import es.molabs.jdbc.mapper.DbRowMapper;
+
+public class StreamKeyRowMapper implements DbRowMapper<Integer> 
+{
+	private KeyRowHandler handler = null;
+	private int fetchSize;
+	
+	public StreamKeyRowMapper(KeyRowHandler handler, int fetchSize)
+	{
+		this.handler = handler;
+		this.fetchSize = fetchSize;
+	}
+	
+	public Integer mapRow(ResultSet resultSet, int rowNum) throws SQLException 
+	{
+		// Hints the driver to fetch the remaining rows in blocks instead of all at once
+		if (fetchSize > 0) resultSet.setFetchSize(fetchSize);
+		
+		// The first column is the key and the rest are the values
+		int valueCount = resultSet.getMetaData().getColumnCount() - 1;
+		int count = 0;
+		
+		// Consumes the whole result set from the current row so each row is handled and discarded
+		do
+		{
+			String[] values = new String[valueCount];
+			
+			for (int i=0; i<valueCount; i++)
+			{
+				values[i] = resultSet.getString(i+2);
+			}
+			
+			handler.handleRow(resultSet.getString(1), values);
+			
+			count++;
+		}
+		while (resultSet.next());
+		
+		return count;
+	}
+}
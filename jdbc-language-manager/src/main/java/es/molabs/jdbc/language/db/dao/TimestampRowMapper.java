@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db.dao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import es.molabs.jdbc.mapper.DbRowMapper;
+
+public class TimestampRowMapper implements DbRowMapper<Timestamp> 
+{
+	/*
+	 * Static
+	 */
+	private static TimestampRowMapper INSTANCE = null;
+	
+	static
+	{
+		INSTANCE = new TimestampRowMapper();
+	}
+	
+	public static TimestampRowMapper getInstance()
+	{
+		return INSTANCE;
+	}
+	
+	
+	/*
+	 * Instanced
+	 */
+	private TimestampRowMapper()
+	{			
+	}
+	
+	public Timestamp mapRow(ResultSet resultSet, int rowNum) throws SQLException 
+	{
+		return resultSet.getTimestamp(1);
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.db.dao;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import es.molabs.jdbc.mapper.DbRowMapper;
+
+public class WriterRowMapper implements DbRowMapper<Long> 
+{
+	// Number of characters read from the value at a time
+	private final static int BUFFER_SIZE = 8192;
+	
+	private Writer writer = null;
+	
+	public WriterRowMapper(Writer writer)
+	{
+		this.writer = writer;
+	}
+	
+	public Long mapRow(ResultSet resultSet, int rowNum) throws SQLException 
+	{
+		// The value is read in blocks so it is never held whole in memory
+		Reader reader = resultSet.getCharacterStream(1);
+		
+		if (reader == null) return null;
+		
+		char[] buffer = new char[BUFFER_SIZE];
+		long count = 0;
+		
+		try
+		{
+			try
+			{
+				int read;
+				
+				while ((read = reader.read(buffer)) != -1)
+				{
+					writer.write(buffer, 0, read);
+					
+					count += read;
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch (IOException ioe)
+		{
+			throw new UncheckedIOException(ioe);
+		}
+		
+		return count;
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.format;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class MessageTemplate 
+{
+	private final String pattern;
+	private final MessageFormat messageFormat;
+	
+	// Literal text around each simple argument, null if the pattern has other kind of arguments
+	private String[] literals = null;
+	private int[] indexes = null;
+	private int literalLength;
+	
+	public MessageTemplate(String pattern, Locale locale)
+	{
+		// Checks that the pattern is not null
+		if (pattern == null) throw new IllegalArgumentException("Pattern parameter cannot be null.");
+		
+		this.pattern = pattern;
+		
+		// Also checks that the pattern is valid
+		messageFormat = new MessageFormat(pattern, locale);
+		
+		parse();
+	}
+	
+	public String getPattern()
+	{
+		return pattern;
+	}
+	
+	public boolean isSimple()
+	{
+		return literals != null;
+	}
+	
+	public String format(Object...args)
+	{
+		// Only strings are rendered without the MessageFormat, other values need its formats
+		if (literals == null || !isText(args))
+		{
+			// MessageFormat is not thread safe
+			synchronized (messageFormat)
+			{
+				return messageFormat.format(args);
+			}
+		}
+		
+		// Computes the final length so the text is built without resizing
+		int length = literalLength;
+		
+		for (int i=0; i<indexes.length; i++)
+		{
+			length += getArgument(args, indexes[i]).length();
+		}
+		
+		StringBuilder text = new StringBuilder(length);
+		text.append(literals[0]);
+		
+		for (int i=0; i<indexes.length; i++)
+		{
+			text.append(getArgument(args, indexes[i]));
+			text.append(literals[i+1]);
+		}
+		
+		return text.toString();
+	}
+	
+	private boolean isText(Object[] args)
+	{
+		if (args == null) return true;
+		
+		for (int i=0; i<args.length; i++)
+		{
+			if (args[i] != null && !(args[i] instanceof String)) return false;
+		}
+		
+		return true;
+	}
+	
+	private String getArgument(Object[] args, int index)
+	{
+		// Same output than MessageFormat for missing and null arguments
+		if (args == null || index >= args.length) return "{" + index + "}";
+		if (args[index] == null) return "null";
+		
+		return (String) args[index];
+	}
+	
+	private void parse()
+	{
+		List<String> literalList = new ArrayList<String>();
+		List<Integer> indexList = new ArrayList<Integer>();
+		StringBuilder literal = new StringBuilder();
+		boolean quoted = false;
+		
+		// Follows the MessageFormat quoting rules
+		for (int i=0; i<pattern.length(); i++)
+		{
+			char character = pattern.charAt(i);
+			
+			if (character == '\'')
+			{
+				// Two quotes are a single quote, quoted or not
+				if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'')
+				{
+					literal.append(character);
+					i++;
+				}
+				else
+				{
+					quoted = !quoted;
+				}
+			}
+			else if (quoted)
+			{
+				literal.append(character);
+			}
+			else if (character == '{')
+			{
+				int end = pattern.indexOf('}', i);
+				
+				// Only arguments with just an index are simple
+				if (end < 0 || !isIndex(pattern, i + 1, end)) return;
+				
+				literalList.add(literal.toString());
+				indexList.add(Integer.valueOf(pattern.substring(i + 1, end)));
+				literal.setLength(0);
+				
+				i = end;
+			}
+			else if (character == '}')
+			{
+				return;
+			}
+			else
+			{
+				literal.append(character);
+			}
+		}
+		
+		literalList.add(literal.toString());
+		
+		literals = literalList.toArray(new String[literalList.size()]);
+		indexes = new int[indexList.size()];
+		literalLength = 0;
+		
+		for (int i=0; i<indexes.length; i++)
+		{
+			indexes[i] = indexList.get(i);
+		}
+		
+		for (int i=0; i<literals.length; i++)
+		{
+			literalLength += literals[i].length();
+		}
+	}
+	
+	private boolean isIndex(String text, int start, int end)
+	{
+		// Up to 9 digits so the index always fits in an int
+		if (start == end || end - start > 9) return false;
+		
+		for (int i=start; i<end; i++)
+		{
+			if (text.charAt(i) < '0' || text.charAt(i) > '9') return false;
+		}
+		
+		return true;
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.format;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TemplateCache 
+{
+	private final int maxKeys;
+	
+	private ConcurrentHashMap<String, KeyTemplates> keyMap = null;
+	private ArrayDeque<KeyTemplates> evictionQueue = null;
+	
+	public TemplateCache(int maxKeys)
+	{
+		// Checks that the number of keys is valid
+		if (maxKeys <= 0) throw new IllegalArgumentException("MaxKeys parameter must be greater than 0.");
+		
+		this.maxKeys = maxKeys;
+		
+		keyMap = new ConcurrentHashMap<String, KeyTemplates>();
+		
+		// The keys in insertion order, a used key gets a second chance before it is evicted
+		evictionQueue = new ArrayDeque<KeyTemplates>();
+	}
+	
+	public MessageTemplate get(String key, Locale locale)
+	{
+		KeyTemplates keyTemplates = keyMap.get(key);
+		
+		if (keyTemplates == null) return null;
+		
+		// Lookups do not lock, the key is only written the first time it is used since it was last checked for eviction
+		if (!keyTemplates.used) keyTemplates.used = true;
+		
+		return keyTemplates.templateMap.get(locale);
+	}
+	
+	public synchronized void put(String key, Locale locale, MessageTemplate template)
+	{
+		KeyTemplates keyTemplates = keyMap.get(key);
+		
+		if (keyTemplates == null)
+		{
+			keyTemplates = new KeyTemplates(key);
+			
+			keyMap.put(key, keyTemplates);
+			evictionQueue.addLast(keyTemplates);
+			
+			// The removed keys stay in the queue till they are reached, so the queue bounds the number of keys
+			while (evictionQueue.size() > maxKeys)
+			{
+				KeyTemplates eldest = evictionQueue.pollFirst();
+				
+				if (keyMap.get(eldest.key) != eldest) continue;
+				
+				if (eldest.used)
+				{
+					eldest.used = false;
+					evictionQueue.addLast(eldest);
+				}
+				else
+				{
+					keyMap.remove(eldest.key, eldest);
+				}
+			}
+		}
+		
+		keyTemplates.templateMap.put(locale, template);
+	}
+	
+	public void remove(String key)
+	{
+		keyMap.remove(key);
+	}
+	
+	public synchronized void clear()
+	{
+		keyMap.clear();
+		evictionQueue.clear();
+	}
+	
+	public int size()
+	{
+		return keyMap.size();
+	}
+	
+	public int getMaxKeys()
+	{
+		return maxKeys;
+	}
+	
+	private static class KeyTemplates
+	{
+		private final String key;
+		private final ConcurrentHashMap<Locale, MessageTemplate> templateMap;
+		
+		private volatile boolean used;
+		
+		private KeyTemplates(String key)
+		{
+			this.key = key;
+			
+			templateMap = new ConcurrentHashMap<Locale, MessageTemplate>();
+			used = false;
+		}
+	}
+}
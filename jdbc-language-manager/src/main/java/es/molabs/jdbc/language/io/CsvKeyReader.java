@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import es.molabs.jdbc.language.LocaleValue;
+import es.molabs.jdbc.language.LocalizedKey;
+
+public class CsvKeyReader implements KeyReader 
+{
+	private BufferedReader reader = null;
+	
+	private int keyIndex;
+	private Locale[] locales = null;
+	private int lineNumber;
+	
+	public CsvKeyReader(Reader reader)
+	{
+		this.reader = (reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
+		
+		keyIndex = -1;
+		lineNumber = 0;
+	}
+	
+	public void readStart(String keyName, Map<String, Locale> columnMap) throws IOException
+	{
+		List<String> header = readRecord();
+		
+		if (header == null) throw new IOException("Header not found.");
+		
+		locales = new Locale[header.size()];
+		
+		// Maps each column to the key or to a locale, other columns are ignored
+		for (int i=0; i<header.size(); i++)
+		{
+			if (keyName.equals(header.get(i)))
+			{
+				keyIndex = i;
+			}
+			else
+			{
+				locales[i] = columnMap.get(header.get(i));
+			}
+		}
+		
+		if (keyIndex < 0) throw new IOException("Key column [" + keyName + "] not found.");
+	}
+	
+	public LocalizedKey readKey() throws IOException
+	{
+		List<String> record = readRecord();
+		
+		// If there are no more records
+		if (record == null) return null;
+		
+		// Checks that the record has every column
+		if (record.size() != locales.length) throw new IOException("Line [" + lineNumber + "] must have [" + locales.length + "] columns.");
+		
+		List<LocaleValue> localeValueList = new ArrayList<LocaleValue>(record.size());
+		
+		for (int i=0; i<record.size(); i++)
+		{
+			if (locales[i] != null) localeValueList.add(new LocaleValue(locales[i], record.get(i)));
+		}
+		
+		return new LocalizedKey(record.get(keyIndex), localeValueList.toArray(new LocaleValue[localeValueList.size()]));
+	}
+	
+	private List<String> readRecord() throws IOException
+	{
+		int character = reader.read();
+		
+		// If the end of the file was reached
+		if (character == -1) return null;
+		
+		lineNumber++;
+		
+		List<String> record = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		
+		boolean quoted = false;
+		boolean inQuotes = false;
+		
+		while (true)
+		{
+			if (inQuotes)
+			{
+				if (character == -1) throw new IOException("Line [" + lineNumber + "] has an unclosed quote.");
+				
+				if (character == '"')
+				{
+					reader.mark(1);
+					
+					// A double quote is an escaped quote
+					if (reader.read() == '"')
+					{
+						field.append('"');
+					}
+					else
+					{
+						reader.reset();
+						inQuotes = false;
+					}
+				}
+				else
+				{
+					if (character == '\n') lineNumber++;
+					
+					field.append((char) character);
+				}
+			}
+			else if (character == '"')
+			{
+				quoted = true;
+				inQuotes = true;
+			}
+			else if (character == ',')
+			{
+				record.add(toValue(field, quoted));
+				
+				field.setLength(0);
+				quoted = false;
+			}
+			else if (character == '\r' || character == '\n' || character == -1)
+			{
+				// Consumes the line feed of a CRLF line end
+				if (character == '\r')
+				{
+					reader.mark(1);
+					
+					if (reader.read() != '\n') reader.reset();
+				}
+				
+				record.add(toValue(field, quoted));
+				
+				return record;
+			}
+			else
+			{
+				field.append((char) character);
+			}
+			
+			character = reader.read();
+		}
+	}
+	
+	private String toValue(StringBuilder field, boolean quoted)
+	{
+		// An empty field without quotes is a null value
+		return (field.length() == 0 && !quoted ? null : field.toString());
+	}
+}
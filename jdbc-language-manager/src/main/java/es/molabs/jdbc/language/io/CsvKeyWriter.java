@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+public class CsvKeyWriter implements KeyWriter 
+{
+	private Writer writer = null;
+	
+	public CsvKeyWriter(Writer writer)
+	{
+		this.writer = writer;
+	}
+	
+	public void writeStart(String tableName, String keyName, Locale[] locales) throws IOException
+	{
+		// The header has the key column and a column for each locale
+		writeValue(keyName);
+		
+		for (int i=0; i<locales.length; i++)
+		{
+			writer.write(',');
+			writeValue(locales[i].toString());
+		}
+		
+		writer.write("\r\n");
+	}
+	
+	public void writeKey(String key, String[] values) throws IOException
+	{
+		writeValue(key);
+		
+		for (int i=0; i<values.length; i++)
+		{
+			writer.write(',');
+			writeValue(values[i]);
+		}
+		
+		writer.write("\r\n");
+	}
+	
+	public void writeEnd() throws IOException
+	{
+		writer.flush();
+	}
+	
+	private void writeValue(String value) throws IOException
+	{
+		// A null value is an empty field and an empty value is an empty quoted field
+		if (value == null) return;
+		
+		if (value.isEmpty() || value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)
+		{
+			writer.write('"');
+			writer.write(value.replace("\"", "\"\""));
+			writer.write('"');
+		}
+		else
+		{
+			writer.write(value);
+		}
+	}
+}
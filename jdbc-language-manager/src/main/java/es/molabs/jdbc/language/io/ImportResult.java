@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.io;
+
+public class ImportResult 
+{
+	private int insertedCount;
+	private int updatedCount;
+	private int unchangedCount;
+	
+	public ImportResult(int insertedCount, int updatedCount, int unchangedCount)
+	{
+		this.insertedCount = insertedCount;
+		this.updatedCount = updatedCount;
+		this.unchangedCount = unchangedCount;
+	}
+	
+	public int getInsertedCount()
+	{
+		return insertedCount;
+	}
+	
+	public int getUpdatedCount()
+	{
+		return updatedCount;
+	}
+	
+	public int getUnchangedCount()
+	{
+		return unchangedCount;
+	}
+	
+	public String toString()
+	{
+		return "inserted [" + insertedCount + "], updated [" + updatedCount + "], unchanged [" + unchangedCount + "]";
+	}
+}
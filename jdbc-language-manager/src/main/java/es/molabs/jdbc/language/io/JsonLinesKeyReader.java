@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import es.molabs.jdbc.language.LocaleValue;
+import es.molabs.jdbc.language.LocalizedKey;
+
+public class JsonLinesKeyReader implements KeyReader 
+{
+	private BufferedReader reader = null;
+	
+	private String keyName = null;
+	private Map<String, Locale> columnMap = null;
+	
+	private String line = null;
+	private int position;
+	private int lineNumber;
+	
+	public JsonLinesKeyReader(Reader reader)
+	{
+		this.reader = (reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
+		
+		lineNumber = 0;
+	}
+	
+	public void readStart(String keyName, Map<String, Locale> columnMap) throws IOException
+	{
+		this.keyName = keyName;
+		this.columnMap = columnMap;
+	}
+	
+	public LocalizedKey readKey() throws IOException
+	{
+		// Skips the empty lines
+		do
+		{
+			line = reader.readLine();
+			lineNumber++;
+			
+			if (line == null) return null;
+		}
+		while (line.trim().isEmpty());
+		
+		position = 0;
+		
+		String key = null;
+		List<LocaleValue> localeValueList = new ArrayList<LocaleValue>();
+		
+		// Each line is a JSON object with the key and a member for each locale
+		expect('{');
+		
+		if (peek() != '}')
+		{
+			do
+			{
+				String name = readString();
+				expect(':');
+				String value = readValue();
+				
+				if (keyName.equals(name))
+				{
+					key = value;
+				}
+				else
+				{
+					Locale locale = columnMap.get(name);
+					
+					// Members that are not locales are ignored
+					if (locale != null) localeValueList.add(new LocaleValue(locale, value));
+				}
+			}
+			while (next(','));
+		}
+		
+		expect('}');
+		
+		if (key == null) throw new IOException("Line [" + lineNumber + "] has no [" + keyName + "] member.");
+		
+		return new LocalizedKey(key, localeValueList.toArray(new LocaleValue[localeValueList.size()]));
+	}
+	
+	private String readValue() throws IOException
+	{
+		skipWhitespace();
+		
+		// Only strings and null values are allowed
+		if (line.startsWith("null", position))
+		{
+			position += 4;
+			
+			return null;
+		}
+		
+		return readString();
+	}
+	
+	private String readString() throws IOException
+	{
+		expect('"');
+		
+		StringBuilder value = new StringBuilder();
+		
+		while (position < line.length())
+		{
+			char character = line.charAt(position++);
+			
+			if (character == '"') return value.toString();
+			
+			if (character == '\\')
+			{
+				if (position >= line.length()) break;
+				
+				char escaped = line.charAt(position++);
+				
+				switch (escaped)
+				{
+					case 'n': value.append('\n'); break;
+					case 'r': value.append('\r'); break;
+					case 't': value.append('\t'); break;
+					case 'b': value.append('\b'); break;
+					case 'f': value.append('\f'); break;
+					case 'u':
+					{
+						if (position + 4 > line.length()) throw error("Invalid unicode escape");
+						
+						int code = 0;
+						
+						// Exactly four hexadecimal digits, without sign
+						for (int i=0; i<4; i++)
+						{
+							int digit = "0123456789abcdef".indexOf(Character.toLowerCase(line.charAt(position)));
+							
+							if (digit < 0) throw error("Invalid unicode escape");
+							
+							code = code * 16 + digit;
+							position++;
+						}
+						
+						value.append((char) code);
+						
+						break;
+					}
+					default: value.append(escaped);
+				}
+			}
+			else
+			{
+				value.append(character);
+			}
+		}
+		
+		throw error("Unclosed string");
+	}
+	
+	private char peek() throws IOException
+	{
+		skipWhitespace();
+		
+		if (position >= line.length()) throw error("Unexpected end of line");
+		
+		return line.charAt(position);
+	}
+	
+	private boolean next(char character) throws IOException
+	{
+		if (peek() != character) return false;
+		
+		position++;
+		
+		return true;
+	}
+	
+	private void expect(char character) throws IOException
+	{
+		if (!next(character)) throw error("Expected [" + character + "]");
+	}
+	
+	private void skipWhitespace()
+	{
+		while (position < line.length() && Character.isWhitespace(line.charAt(position)))
+		{
+			position++;
+		}
+	}
+	
+	private IOException error(String message)
+	{
+		return new IOException(message + " at line [" + lineNumber + "], position [" + position + "].");
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+public class JsonLinesKeyWriter implements KeyWriter 
+{
+	private Writer writer = null;
+	
+	private String keyName = null;
+	private String[] fieldNames = null;
+	
+	public JsonLinesKeyWriter(Writer writer)
+	{
+		this.writer = writer;
+	}
+	
+	public void writeStart(String tableName, String keyName, Locale[] locales) throws IOException
+	{
+		this.keyName = keyName;
+		
+		fieldNames = new String[locales.length];
+		
+		for (int i=0; i<locales.length; i++)
+		{
+			fieldNames[i] = locales[i].toString();
+		}
+	}
+	
+	public void writeKey(String key, String[] values) throws IOException
+	{
+		// Each key is a JSON object in its own line
+		writer.write('{');
+		writeString(keyName);
+		writer.write(':');
+		writeString(key);
+		
+		for (int i=0; i<values.length; i++)
+		{
+			writer.write(',');
+			writeString(fieldNames[i]);
+			writer.write(':');
+			writeString(values[i]);
+		}
+		
+		writer.write("}\n");
+	}
+	
+	public void writeEnd() throws IOException
+	{
+		writer.flush();
+	}
+	
+	private void writeString(String value) throws IOException
+	{
+		if (value == null)
+		{
+			writer.write("null");
+			
+			return;
+		}
+		
+		writer.write('"');
+		
+		for (int i=0; i<value.length(); i++)
+		{
+			char character = value.charAt(i);
+			
+			switch (character)
+			{
+				case '"': writer.write("\\\""); break;
+				case '\\': writer.write("\\\\"); break;
+				case '\n': writer.write("\\n"); break;
+				case '\r': writer.write("\\r"); break;
+				case '\t': writer.write("\\t"); break;
+				case '\b': writer.write("\\b"); break;
+				case '\f': writer.write("\\f"); break;
+				default:
+				{
+					if (character < 0x20)
+					{
+						writer.write(String.format("\\u%04x", (int) character));
+					}
+					else
+					{
+						writer.write(character);
+					}
+				}
+			}
+		}
+		
+		writer.write('"');
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+public class SqlKeyWriter implements KeyWriter 
+{
+	private Writer writer = null;
+	private String insertSql = null;
+	
+	public SqlKeyWriter(Writer writer)
+	{
+		this.writer = writer;
+	}
+	
+	public void writeStart(String tableName, String keyName, Locale[] locales) throws IOException
+	{
+		StringBuilder sqlBuilder = new StringBuilder("INSERT INTO " + tableName + " (" + keyName);
+		
+		for (int i=0; i<locales.length; i++)
+		{
+			sqlBuilder.append(", ");
+			sqlBuilder.append(locales[i].toString());
+		}
+		
+		sqlBuilder.append(") VALUES (");
+		
+		// Every row uses the same insert
+		insertSql = sqlBuilder.toString();
+	}
+	
+	public void writeKey(String key, String[] values) throws IOException
+	{
+		writer.write(insertSql);
+		writeValue(key);
+		
+		for (int i=0; i<values.length; i++)
+		{
+			writer.write(", ");
+			writeValue(values[i]);
+		}
+		
+		writer.write(");\n");
+	}
+	
+	public void writeEnd() throws IOException
+	{
+		writer.flush();
+	}
+	
+	private void writeValue(String value) throws IOException
+	{
+		if (value == null)
+		{
+			writer.write("NULL");
+		}
+		else
+		{
+			writer.write('\'');
+			writer.write(value.replace("'", "''"));
+			writer.write('\'');
+		}
+	}
+}
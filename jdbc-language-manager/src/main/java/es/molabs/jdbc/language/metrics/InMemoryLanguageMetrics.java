@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class InMemoryLanguageMetrics implements LanguageMetrics
+{
+	private final int maxKeys;
+	
+	private ConcurrentHashMap<Locale, LongAdder> lookupMap = null;
+	private ConcurrentHashMap<Locale, LongAdder> fallbackMap = null;
+	private ConcurrentHashMap<String, LongAdder> keyLookupMap = null;
+	private ConcurrentHashMap<String, LongAdder> missMap = null;
+	private Map<Operation, LatencyHistogram> histogramMap = null;
+	
+	public InMemoryLanguageMetrics()
+	{
+		this(10000);
+	}
+	
+	public InMemoryLanguageMetrics(int maxKeys)
+	{
+		this.maxKeys = maxKeys;
+		
+		lookupMap = new ConcurrentHashMap<Locale, LongAdder>();
+		fallbackMap = new ConcurrentHashMap<Locale, LongAdder>();
+		keyLookupMap = new ConcurrentHashMap<String, LongAdder>();
+		missMap = new ConcurrentHashMap<String, LongAdder>();
+		
+		histogramMap = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+		
+		Operation[] operations = Operation.values();
+		
+		for (int i=0; i<operations.length; i++)
+		{
+			histogramMap.put(operations[i], new LatencyHistogram());
+		}
+	}
+	
+	public void recordLookup(String key, Locale locale)
+	{
+		// The lookups without locale are counted as the root locale
+		increment(lookupMap, (locale != null ? locale : Locale.ROOT), Integer.MAX_VALUE);
+		increment(keyLookupMap, key, maxKeys);
+	}
+	
+	public void recordMiss(String key, Locale locale)
+	{
+		increment(missMap, key, maxKeys);
+	}
+	
+	public void recordFallback(Locale requestedLocale, Locale normalizedLocale)
+	{
+		increment(fallbackMap, (requestedLocale != null ? requestedLocale : Locale.ROOT), Integer.MAX_VALUE);
+	}
+	
+	public void recordOperation(Operation operation, long nanos)
+	{
+		histogramMap.get(operation).record(nanos);
+	}
+	
+	public Map<Locale, Long> getLookupCounts()
+	{
+		return toCounts(lookupMap);
+	}
+	
+	public Map<Locale, Long> getFallbackCounts()
+	{
+		return toCounts(fallbackMap);
+	}
+	
+	public Map<String, Long> getKeyLookupCounts()
+	{
+		return toCounts(keyLookupMap);
+	}
+	
+	public Map<String, Long> getMissCounts()
+	{
+		return toCounts(missMap);
+	}
+	
+	public LatencyHistogram getHistogram(Operation operation)
+	{
+		return histogramMap.get(operation);
+	}
+	
+	private <T> void increment(ConcurrentHashMap<T, LongAdder> counterMap, T name, int maxSize)
+	{
+		if (name == null) return;
+		
+		LongAdder counter = counterMap.get(name);
+		
+		if (counter == null)
+		{
+			// New names are not counted once the map is full
+			if (counterMap.size() >= maxSize) return;
+			
+			LongAdder newCounter = new LongAdder();
+			counter = counterMap.putIfAbsent(name, newCounter);
+			
+			if (counter == null) counter = newCounter;
+		}
+		
+		counter.increment();
+	}
+	
+	private <T> Map<T, Long> toCounts(ConcurrentHashMap<T, LongAdder> counterMap)
+	{
+		Map<T, Long> countMap = new HashMap<T, Long>();
+		Iterator<Map.Entry<T, LongAdder>> iterator = counterMap.entrySet().iterator();
+		
+		while (iterator.hasNext())
+		{
+			Map.Entry<T, LongAdder> entry = iterator.next();
+			
+			countMap.put(entry.getKey(), entry.getValue().sum());
+		}
+		
+		return Collections.unmodifiableMap(countMap);
+	}
+}
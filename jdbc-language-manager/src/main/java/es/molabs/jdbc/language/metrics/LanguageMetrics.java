@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.metrics;
+
+import java.util.Locale;
+
+public interface LanguageMetrics 
+{
+	public void recordLookup(String key, Locale locale);
+	
+	public void recordMiss(String key, Locale locale);
+	
+	public void recordFallback(Locale requestedLocale, Locale normalizedLocale);
+	
+	public void recordOperation(Operation operation, long nanos);
+}
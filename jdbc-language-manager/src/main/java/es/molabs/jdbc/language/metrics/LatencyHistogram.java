@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram 
+{
+	// Bucket i counts the latencies from 2^(i-1) to 2^i - 1 nanoseconds, bucket 0 counts 0
+	private final static int BUCKET_COUNT = 64;
+	
+	private AtomicLongArray buckets = null;
+	private LongAdder count = null;
+	private LongAdder sum = null;
+	private AtomicLong max = null;
+	
+	public LatencyHistogram()
+	{
+		buckets = new AtomicLongArray(BUCKET_COUNT);
+		count = new LongAdder();
+		sum = new LongAdder();
+		max = new AtomicLong();
+	}
+	
+	public void record(long nanos)
+	{
+		if (nanos < 0) nanos = 0;
+		
+		buckets.incrementAndGet(BUCKET_COUNT - Long.numberOfLeadingZeros(nanos));
+		count.increment();
+		sum.add(nanos);
+		
+		// The maximum is only updated when it grows
+		long currentMax = max.get();
+		
+		while (nanos > currentMax && !max.compareAndSet(currentMax, nanos))
+		{
+			currentMax = max.get();
+		}
+	}
+	
+	public long getCount()
+	{
+		return count.sum();
+	}
+	
+	public long getMean()
+	{
+		long currentCount = count.sum();
+		
+		return (currentCount > 0 ? sum.sum() / currentCount : 0);
+	}
+	
+	public long getMax()
+	{
+		return max.get();
+	}
+	
+	public long getPercentile(double percentile)
+	{
+		// Checks that the percentile is valid
+		if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile parameter must be between 0 and 100.");
+		
+		long currentCount = count.sum();
+		
+		if (currentCount == 0) return 0;
+		
+		long rank = Math.max(1, (long) Math.ceil((percentile / 100) * currentCount));
+		long accumulated = 0;
+		
+		// Returns the upper bound of the bucket that contains the rank
+		for (int i=0; i<BUCKET_COUNT; i++)
+		{
+			accumulated += buckets.get(i);
+			
+			if (accumulated >= rank) return Math.min(getUpperBound(i), max.get());
+		}
+		
+		return max.get();
+	}
+	
+	private long getUpperBound(int bucket)
+	{
+		return (bucket < BUCKET_COUNT - 1 ? (1L << bucket) - 1 : Long.MAX_VALUE);
+	}
+}
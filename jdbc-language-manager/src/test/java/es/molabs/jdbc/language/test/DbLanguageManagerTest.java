@@ -15,13 +15,27 @@
  */
 package es.molabs.jdbc.language.test;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.dbutils.QueryRunner;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.h2.jdbcx.JdbcConnectionPool;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -33,9 +47,22 @@ import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import es.molabs.jdbc.DbManager;
+import es.molabs.jdbc.DbQuery;
+import es.molabs.jdbc.language.AsyncLanguageManager;
 import es.molabs.jdbc.language.DbLanguageManager;
 import es.molabs.jdbc.language.LocaleValue;
 import es.molabs.jdbc.language.LocalizedKey;
+import es.molabs.jdbc.language.cache.LocalizedKeyCache;
+import es.molabs.jdbc.language.cache.MappedSnapshotWriter;
+import es.molabs.jdbc.language.cache.MissingKeyCache;
+import es.molabs.jdbc.language.cache.TranslationSnapshot;
+import es.molabs.jdbc.language.db.LookupBatcher;
+import es.molabs.jdbc.language.io.ExportFormat;
+import es.molabs.jdbc.language.io.ImportFormat;
+import es.molabs.jdbc.language.io.ImportResult;
+import es.molabs.jdbc.language.metrics.InMemoryLanguageMetrics;
+import es.molabs.jdbc.language.metrics.NoOpLanguageMetrics;
+import es.molabs.jdbc.language.metrics.Operation;
 
 @RunWith(MockitoJUnitRunner.class)
 public class DbLanguageManagerTest 
@@ -152,6 +179,29 @@ public class DbLanguageManagerTest
 		languageManager.destroy();
 	}
 	
+	@Test
+	public void testNormalizeLocale() throws Throwable
+	{
+		Locale localeMx = new Locale("es", "MX");
+		
+		// Checks that the locales are resolved through the fallback chain
+		testNormalizeLocale(languageManager, localeMx, LOCALE_ES);
+		testNormalizeLocale(languageManager, new Locale("en", "US", "POSIX"), LOCALE_EN);
+		testNormalizeLocale(languageManager, new Locale("fr"), LOCALE_EN);
+		testNormalizeLocale(languageManager, null, LOCALE_EN);
+		
+		// Checks that a resolved locale returns the same value again
+		testNormalizeLocale(languageManager, localeMx, LOCALE_ES);
+		
+		// Adds a field for the locale so previous resolutions are discarded
+		languageManager.setField("es", localeMx);
+		testNormalizeLocale(languageManager, localeMx, localeMx);
+		
+		// Changes the default locale so previous resolutions are discarded
+		languageManager.setDefaultLocale(LOCALE_ES);
+		testNormalizeLocale(languageManager, new Locale("fr"), LOCALE_ES);
+	}
+	
 	@Test 
 	public void testGetKey() throws Throwable
 	{
@@ -176,6 +226,85 @@ public class DbLanguageManagerTest
 		}
 	}
 	
+	@Test
+	public void testGetLocalizedKeys() throws Throwable
+	{
+		// Uses a chunk size smaller than the number of keys
+		languageManager.setChunkSize(2);
+		
+		Map<String, String> valueMap = languageManager.getLocalizedKeys(Arrays.asList("KEY_1", "KEY_2", "KEY_3", "KEY_1", "KEY_MISSING"), LOCALE_ES, dbManager.getDbNonTransaction());
+		
+		// Checks that only the existing keys are returned
+		Assert.assertEquals("Value must be [" + 3 + "].", 3, valueMap.size());
+		Assert.assertEquals("Value must be [" + "castellano_1" + "].", "castellano_1", valueMap.get("KEY_1"));
+		Assert.assertEquals("Value must be [" + "castellano_2" + "].", "castellano_2", valueMap.get("KEY_2"));
+		Assert.assertEquals("Value must be [" + "castellano_3" + "].", "castellano_3", valueMap.get("KEY_3"));
+		
+		// Checks that a locale that does not exists gets the default locale values
+		valueMap = languageManager.getLocalizedKeys(Arrays.asList("KEY_1", "KEY_2"), new Locale("fr"), dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + "english_2" + "].", "english_2", valueMap.get("KEY_2"));
+	}
+	
+	@Test
+	public void testGetKeys() throws Throwable
+	{
+		Map<String, List<LocaleValue>> localeValueMap = languageManager.getKeys(Arrays.asList("KEY_2", "KEY_3", "KEY_MISSING"), dbManager.getDbNonTransaction());
+		
+		// Checks that only the existing keys are returned
+		Assert.assertEquals("Value must be [" + 2 + "].", 2, localeValueMap.size());
+		
+		// Checks that each key has a value for every locale
+		List<LocaleValue> localeValueList = localeValueMap.get("KEY_3");
+		Assert.assertEquals("Value must be [" + 2 + "].", 2, localeValueList.size());
+		Assert.assertEquals("Value must be [" + LOCALE_EN + "].", LOCALE_EN, localeValueList.get(0).getLocale());
+		Assert.assertEquals("Value must be [" + "english_3" + "].", "english_3", localeValueList.get(0).getValue());
+		Assert.assertEquals("Value must be [" + "castellano_3" + "].", "castellano_3", localeValueList.get(1).getValue());
+	}
+	
+	@Test
+	public void testGetBundle() throws Throwable
+	{
+		languageManager.setCacheBundles(true);
+		
+		// Inserts keys that share a prefix and one that contains a LIKE wildcard
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("checkout.button.pay", new LocaleValue(LOCALE_EN, "pay"), new LocaleValue(LOCALE_ES, "pagar")));
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("checkout.error.card", new LocaleValue(LOCALE_EN, "card error")), new LocalizedKey("checkoutXbutton", new LocaleValue(LOCALE_EN, "wildcard")));
+		
+		Map<Locale, Map<String, String>> bundle = languageManager.getBundle("checkout.", dbManager.getDbNonTransaction());
+		
+		// Checks the values for each locale
+		Assert.assertEquals("Value must be [" + 2 + "].", 2, bundle.get(LOCALE_EN).size());
+		Assert.assertEquals("Value must be [" + "pay" + "].", "pay", bundle.get(LOCALE_EN).get("checkout.button.pay"));
+		Assert.assertEquals("Value must be [" + 1 + "].", 1, bundle.get(LOCALE_ES).size());
+		
+		// Checks the bundle for a locale that does not exists so it gets the default locale bundle
+		Map<String, String> localeBundle = languageManager.getBundle("checkout.", new Locale("fr"), dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + "card error" + "].", "card error", localeBundle.get("checkout.error.card"));
+		
+		// Checks that the bundle cannot be modified
+		Exception exception = null;
+		
+		try
+		{
+			localeBundle.put("checkout.new", "new");
+		}
+		catch (Exception e)
+		{
+			exception = e;
+		}
+		Assert.assertEquals("Value must be [" + true + "].", true, exception.getClass() == UnsupportedOperationException.class);
+		
+		// Updates a key of the bundle so the cached bundle is invalidated
+		languageManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("checkout.button.pay", new LocaleValue(LOCALE_EN, "pay now")));
+		
+		bundle = languageManager.getBundle("checkout.", dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + "pay now" + "].", "pay now", bundle.get(LOCALE_EN).get("checkout.button.pay"));
+		
+		languageManager.removeKey("checkout.button.pay", dbManager.getDbNonTransaction());
+		languageManager.removeKey("checkout.error.card", dbManager.getDbNonTransaction());
+		languageManager.removeKey("checkoutXbutton", dbManager.getDbNonTransaction());
+	}
+	
 	@Test
 	public void testInsertKey() throws Throwable
 	{
@@ -201,6 +330,41 @@ public class DbLanguageManagerTest
 		testLocalizeString(languageManager, "KEY_INSERT_2", LOCALE_ES, "insertada 2");
 	}
 	
+	@Test
+	public void testAddKeys() throws Throwable
+	{
+		List<LocalizedKey> localizedKeyList = new ArrayList<LocalizedKey>();
+		
+		// Creates keys with different locales so they need different statements
+		for (int i=0; i<25; i++)
+		{
+			if (i % 2 == 0)
+			{
+				localizedKeyList.add(new LocalizedKey("KEY_BULK_" + i, new LocaleValue(LOCALE_EN, "bulk_" + i), new LocaleValue(LOCALE_ES, "masivo_" + i)));
+			}
+			else
+			{
+				localizedKeyList.add(new LocalizedKey("KEY_BULK_" + i, new LocaleValue(LOCALE_ES, "masivo_" + i)));
+			}
+		}
+		
+		// Inserts the keys in batches smaller than the number of keys
+		languageManager.setBatchSize(4);
+		int count = languageManager.addKeys(dbManager.getDbNonTransaction(), localizedKeyList.iterator());
+		
+		// Checks that every key was inserted
+		Assert.assertEquals("Value must be [" + 25 + "].", 25, count);
+		testLocalizeString(languageManager, "KEY_BULK_0", LOCALE_EN, "bulk_0");
+		testLocalizeString(languageManager, "KEY_BULK_13", LOCALE_ES, "masivo_13");
+		testLocalizeString(languageManager, "KEY_BULK_13", LOCALE_EN, null);
+		testLocalizeString(languageManager, "KEY_BULK_24", LOCALE_ES, "masivo_24");
+		
+		for (int i=0; i<25; i++)
+		{
+			languageManager.removeKey("KEY_BULK_" + i, dbManager.getDbNonTransaction());
+		}
+	}
+	
 	@Test
 	public void testUpdateKey() throws Throwable
 	{
@@ -221,6 +385,18 @@ public class DbLanguageManagerTest
 		testLocalizeString(languageManager, "KEY_UPDATE", LOCALE_ES, "actualizar_3");
 		testLocalizeString(languageManager, "KEY_UPDATE_2", LOCALE_EN, "update2_2");
 		testLocalizeString(languageManager, "KEY_UPDATE_2", LOCALE_ES, "actualizar2_2");
+		
+		// Updates keys with different locales and values with quotes
+		languageManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_UPDATE", new LocaleValue(LOCALE_EN, "it's updated")), new LocalizedKey("KEY_UPDATE_2", new LocaleValue(LOCALE_ES, "'actualizar'")));
+		
+		// Checks that only the given locales were updated
+		testLocalizeString(languageManager, "KEY_UPDATE", LOCALE_EN, "it's updated");
+		testLocalizeString(languageManager, "KEY_UPDATE", LOCALE_ES, "actualizar_3");
+		testLocalizeString(languageManager, "KEY_UPDATE_2", LOCALE_EN, "update2_2");
+		testLocalizeString(languageManager, "KEY_UPDATE_2", LOCALE_ES, "'actualizar'");
+		
+		languageManager.removeKey("KEY_UPDATE", dbManager.getDbNonTransaction());
+		languageManager.removeKey("KEY_UPDATE_2", dbManager.getDbNonTransaction());
 	}
 	
 	@Test
@@ -264,12 +440,1170 @@ public class DbLanguageManagerTest
 		Assert.assertEquals("Value must be [" + expectedValue + "].", expectedValue, sql.toString());
 	}
 	
+	@Test
+	public void testCache() throws Throwable
+	{
+		languageManager.setCache(new LocalizedKeyCache(100));
+		
+		// Inserts a new key and loads it into the cache
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_CACHE", new LocaleValue(LOCALE_EN, "cache_1"), new LocaleValue(LOCALE_ES, "cache_es_1")));
+		testLocalizeString(languageManager, "KEY_CACHE", LOCALE_EN, "cache_1");
+		
+		// Changes the value directly in the database
+		dbManager.getDbNonTransaction().executeUpdate("UPDATE multilanguage2 SET en = 'cache_db' WHERE key2 = ?", "KEY_CACHE");
+		
+		// Checks that the cached value is returned, also for a locale that normalizes to the same one
+		testLocalizeString(languageManager, "KEY_CACHE", LOCALE_EN, "cache_1");
+		testLocalizeString(languageManager, "KEY_CACHE", new Locale("en", "US"), "cache_1");
+		
+		// Updates the key through the manager so the cache is invalidated
+		languageManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_CACHE", new LocaleValue(LOCALE_EN, "cache_2")));
+		testLocalizeString(languageManager, "KEY_CACHE", LOCALE_EN, "cache_2");
+		
+		// Duplicates the key and checks the destination value
+		languageManager.duplicateKey("KEY_CACHE", "KEY_CACHE_DUPLICATED", dbManager.getDbNonTransaction());
+		testLocalizeString(languageManager, "KEY_CACHE_DUPLICATED", LOCALE_ES, "cache_es_1");
+		
+		// Removes the keys so the cache is invalidated
+		languageManager.removeKey("KEY_CACHE", dbManager.getDbNonTransaction());
+		languageManager.removeKey("KEY_CACHE_DUPLICATED", dbManager.getDbNonTransaction());
+		testLocalizeString(languageManager, "KEY_CACHE", LOCALE_EN, null);
+		testLocalizeString(languageManager, "KEY_CACHE_DUPLICATED", LOCALE_ES, null);
+	}
+	
+	@Test
+	public void testPreload() throws Throwable
+	{
+		// Initializes the manager with preload enabled
+		languageManager.destroy();
+		languageManager.setPreload(true);
+		languageManager.setFetchSize(2);
+		languageManager.init(dbManager.getDbNonTransaction());
+		
+		// Checks that the preloaded values are served
+		testLocalizeString(languageManager, "KEY_1", LOCALE_ES, "castellano_1");
+		testLocalizeString(languageManager, "KEY_3", new Locale("fr"), "english_3");
+		
+		// Changes a value directly in the database
+		dbManager.getDbNonTransaction().executeUpdate("UPDATE multilanguage2 SET en = 'english_db' WHERE key2 = ?", "KEY_2");
+		
+		// Checks that the value is served from the snapshot
+		testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_2");
+		
+		List<LocaleValue> localeValueList = languageManager.getKey("KEY_2", dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + "english_2" + "].", "english_2", localeValueList.get(0).getValue());
+		
+		// Inserts a key through the manager and checks that the snapshot has it
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_PRELOAD", new LocaleValue(LOCALE_EN, "preload_1")));
+		testLocalizeString(languageManager, "KEY_PRELOAD", LOCALE_EN, "preload_1");
+		testLocalizeString(languageManager, "KEY_PRELOAD", LOCALE_ES, null);
+		
+		// Removes the key through the manager and checks that the snapshot does not have it
+		languageManager.removeKey("KEY_PRELOAD", dbManager.getDbNonTransaction());
+		testLocalizeString(languageManager, "KEY_PRELOAD", LOCALE_EN, null);
+		
+		// Checks that the bundles built from the snapshot are cached and invalidated
+		languageManager.setCacheBundles(true);
+		
+		Map<Locale, Map<String, String>> bundle = languageManager.getBundle("KEY_", dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + true + "].", true, bundle == languageManager.getBundle("KEY_", dbManager.getDbNonTransaction()));
+		Assert.assertEquals("Value must be [" + "english_2" + "].", "english_2", bundle.get(LOCALE_EN).get("KEY_2"));
+		
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_PRELOAD", new LocaleValue(LOCALE_EN, "preload_1")));
+		
+		bundle = languageManager.getBundle("KEY_", dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + "preload_1" + "].", "preload_1", bundle.get(LOCALE_EN).get("KEY_PRELOAD"));
+		Assert.assertEquals("Value must be [" + 0 + "].", 0, languageManager.getBundle("KEY_PRELOAD_", LOCALE_EN, dbManager.getDbNonTransaction()).size());
+		
+		languageManager.removeKey("KEY_PRELOAD", dbManager.getDbNonTransaction());
+		
+		// Restores the original value
+		dbManager.getDbNonTransaction().executeUpdate("UPDATE multilanguage2 SET en = 'english_2' WHERE key2 = ?", "KEY_2");
+		
+		// Checks that preload without a DbQuery is not allowed
+		languageManager.destroy();
+		
+		Exception exception = null;
+		
+		try
+		{
+			languageManager.init();
+		}
+		catch (Exception e)
+		{
+			exception = e;
+		}
+		Assert.assertEquals("Value must be [" + true + "].", true, exception.getClass() == IllegalArgumentException.class);
+	}
+	
+	@Test
+	public void testExportKeys() throws Throwable
+	{
+		// Inserts a key with values that must be escaped
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_EXPORT", new LocaleValue(LOCALE_EN, "it's \"quoted\", too")));
+		
+		// Exports the table as sql
+		StringWriter writer = new StringWriter();
+		int count = languageManager.exportKeys(writer, ExportFormat.SQL, dbManager.getDbNonTransaction());
+		
+		String[] lines = writer.toString().split("\n");
+		Assert.assertEquals("Value must be [" + count + "].", count, lines.length);
+		testContains(writer.toString(), "INSERT INTO multilanguage2 (key2, en, es) VALUES ('KEY_2', 'english_2', 'castellano_2');\n");
+		testContains(writer.toString(), "INSERT INTO multilanguage2 (key2, en, es) VALUES ('KEY_EXPORT', 'it''s \"quoted\", too', NULL);\n");
+		
+		// Exports the table as csv
+		writer = new StringWriter();
+		count = languageManager.exportKeys(writer, ExportFormat.CSV, dbManager.getDbNonTransaction());
+		
+		lines = writer.toString().split("\r\n");
+		Assert.assertEquals("Value must be [" + (count + 1) + "].", count + 1, lines.length);
+		Assert.assertEquals("Value must be [" + "key2,en,es" + "].", "key2,en,es", lines[0]);
+		testContains(writer.toString(), "\r\nKEY_2,english_2,castellano_2\r\n");
+		testContains(writer.toString(), "\r\nKEY_EXPORT,\"it's \"\"quoted\"\", too\",\r\n");
+		
+		// Exports the table as json lines
+		writer = new StringWriter();
+		count = languageManager.exportKeys(writer, ExportFormat.JSON_LINES, dbManager.getDbNonTransaction());
+		
+		lines = writer.toString().split("\n");
+		Assert.assertEquals("Value must be [" + count + "].", count, lines.length);
+		testContains(writer.toString(), "{\"key2\":\"KEY_2\",\"en\":\"english_2\",\"es\":\"castellano_2\"}\n");
+		testContains(writer.toString(), "{\"key2\":\"KEY_EXPORT\",\"en\":\"it's \\\"quoted\\\", too\",\"es\":null}\n");
+		
+		languageManager.removeKey("KEY_EXPORT", dbManager.getDbNonTransaction());
+	}
+	
+	@Test
+	public void testImportKeys() throws Throwable
+	{
+		languageManager.setBatchSize(2);
+		
+		// Exports the table and imports it again so nothing changes
+		StringWriter writer = new StringWriter();
+		int count = languageManager.exportKeys(writer, ExportFormat.CSV, dbManager.getDbNonTransaction());
+		
+		ImportResult importResult = languageManager.importKeys(new StringReader(writer.toString()), ImportFormat.CSV, dbManager.getDbNonTransaction());
+		testImportResult(importResult, 0, 0, count);
+		
+		// Imports a csv with a new key, a changed key and an unchanged key
+		String csv = "key2,es,unknown,en\r\nKEY_IMPORT,\"importada, \"\"csv\"\"\",x,\r\nKEY_1,castellano_1,x,english_1\r\nKEY_2,castellano_2,x,english_import\r\n";
+		
+		importResult = languageManager.importKeys(new StringReader(csv), ImportFormat.CSV, dbManager.getDbNonTransaction());
+		testImportResult(importResult, 1, 1, 1);
+		
+		testLocalizeString(languageManager, "KEY_IMPORT", LOCALE_ES, "importada, \"csv\"");
+		testLocalizeString(languageManager, "KEY_IMPORT", LOCALE_EN, null);
+		testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_import");
+		
+		// Imports json lines that restore the changed key and update the new one
+		String json = "{\"key2\":\"KEY_2\",\"en\":\"english_2\"}\n\n{\"key2\": \"KEY_IMPORT\", \"en\": \"imported\\n\\u0041\", \"es\": \"importada, \\\"csv\\\"\"}\n";
+		
+		importResult = languageManager.importKeys(new StringReader(json), ImportFormat.JSON_LINES, dbManager.getDbNonTransaction());
+		testImportResult(importResult, 0, 2, 0);
+		
+		testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_2");
+		testLocalizeString(languageManager, "KEY_IMPORT", LOCALE_EN, "imported\nA");
+		
+		// Imports a null value with whitespace before it
+		json = "{ \"key2\" : \"KEY_IMPORT\", \"en\": \t null }";
+		
+		importResult = languageManager.importKeys(new StringReader(json), ImportFormat.JSON_LINES, dbManager.getDbNonTransaction());
+		testImportResult(importResult, 0, 1, 0);
+		
+		testLocalizeString(languageManager, "KEY_IMPORT", LOCALE_EN, null);
+		
+		// Checks that an invalid unicode escape is a parse error
+		json = "{\"key2\":\"KEY_IMPORT\"}\n{\"key2\":\"KEY_IMPORT\",\"en\":\"\\u00zz\"}";
+		
+		try
+		{
+			languageManager.importKeys(new StringReader(json), ImportFormat.JSON_LINES, dbManager.getDbNonTransaction());
+			
+			Assert.fail("Invalid unicode escape must fail.");
+		}
+		catch (IOException ioe)
+		{
+			Assert.assertEquals("Value must be [" + true + "].", true, ioe.getMessage().contains("line [2]"));
+		}
+		
+		languageManager.removeKey("KEY_IMPORT", dbManager.getDbNonTransaction());
+	}
+	
+	@Test
+	public void testImportKeysPreload() throws Throwable
+	{
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_IMPORT_FALLBACK", new LocaleValue(LOCALE_EN, "fallback_1")));
+		
+		// The snapshot has merged values
+		languageManager.destroy();
+		languageManager.setPreload(true);
+		languageManager.setFallbackValues(true);
+		languageManager.init(dbManager.getDbNonTransaction());
+		
+		// Other manager adds a key that is not in the snapshot
+		DbLanguageManager otherManager = new DbLanguageManager(LOCALE_EN, "multilanguage2", "key2");
+		otherManager.setField("en", LOCALE_EN);
+		otherManager.setField("es", LOCALE_ES);
+		otherManager.init();
+		otherManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_IMPORT_STALE", new LocaleValue(LOCALE_EN, "stale_1")));
+		
+		// Checks that the keys are compared with the table instead of the snapshot
+		String json = "{\"key2\":\"KEY_IMPORT_STALE\",\"en\":\"stale_2\"}\n{\"key2\":\"KEY_IMPORT_FALLBACK\",\"es\":\"fallback_1\"}\n";
+		
+		ImportResult importResult = languageManager.importKeys(new StringReader(json), ImportFormat.JSON_LINES, dbManager.getDbNonTransaction());
+		testImportResult(importResult, 0, 2, 0);
+		
+		testLocalizeString(otherManager, "KEY_IMPORT_STALE", LOCALE_EN, "stale_2");
+		testLocalizeString(otherManager, "KEY_IMPORT_FALLBACK", LOCALE_ES, "fallback_1");
+		otherManager.destroy();
+		
+		languageManager.removeKey("KEY_IMPORT_STALE", dbManager.getDbNonTransaction());
+		languageManager.removeKey("KEY_IMPORT_FALLBACK", dbManager.getDbNonTransaction());
+	}
+	
+	@Test
+	public void testMetrics() throws Throwable
+	{
+		InMemoryLanguageMetrics metrics = new InMemoryLanguageMetrics();
+		languageManager.setMetrics(metrics);
+		
+		// Looks up some keys, one of them with a fallback and other missing
+		testLocalizeString(languageManager, "KEY_1", LOCALE_EN, "english_1");
+		testLocalizeString(languageManager, "KEY_1", new Locale("fr"), "english_1");
+		testLocalizeString(languageManager, "KEY_MISSING", LOCALE_ES, null);
+		
+		// Checks the lookup counters
+		Assert.assertEquals("Value must be [" + 2 + "].", Long.valueOf(2), metrics.getLookupCounts().get(LOCALE_EN));
+		Assert.assertEquals("Value must be [" + 1 + "].", Long.valueOf(1), metrics.getLookupCounts().get(LOCALE_ES));
+		Assert.assertEquals("Value must be [" + 2 + "].", Long.valueOf(2), metrics.getKeyLookupCounts().get("KEY_1"));
+		Assert.assertEquals("Value must be [" + 1 + "].", Long.valueOf(1), metrics.getFallbackCounts().get(new Locale("fr")));
+		Assert.assertEquals("Value must be [" + 1 + "].", Long.valueOf(1), metrics.getMissCounts().get("KEY_MISSING"));
+		Assert.assertEquals("Value must be [" + null + "].", null, metrics.getMissCounts().get("KEY_1"));
+		
+		// Checks the operation latencies
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_METRICS", new LocaleValue(LOCALE_EN, "metrics_1")));
+		languageManager.removeKey("KEY_METRICS", dbManager.getDbNonTransaction());
+		
+		Assert.assertEquals("Value must be [" + 3 + "].", 3, metrics.getHistogram(Operation.GET).getCount());
+		Assert.assertEquals("Value must be [" + 1 + "].", 1, metrics.getHistogram(Operation.INSERT).getCount());
+		Assert.assertEquals("Value must be [" + 1 + "].", 1, metrics.getHistogram(Operation.DELETE).getCount());
+		Assert.assertEquals("Value must be [" + 0 + "].", 0, metrics.getHistogram(Operation.EXPORT).getCount());
+		Assert.assertEquals("Value must be [" + true + "].", true, metrics.getHistogram(Operation.GET).getMax() >= metrics.getHistogram(Operation.GET).getPercentile(0.5));
+		
+		// Checks that a null metrics restores the default one
+		languageManager.setMetrics(null);
+		Assert.assertEquals("Value must be [" + NoOpLanguageMetrics.getInstance() + "].", NoOpLanguageMetrics.getInstance(), languageManager.getMetrics());
+	}
+	
+	@Test
+	public void testRefresh() throws Throwable
+	{
+		// Initializes the manager with preload and change detection enabled
+		languageManager.destroy();
+		languageManager.setPreload(true);
+		languageManager.setUpdatedName("updated_at");
+		languageManager.init(dbManager.getDbNonTransaction());
+		
+		// Other manager changes the keys like another node would do
+		DbLanguageManager otherManager = new DbLanguageManager(LOCALE_EN, "multilanguage2", "key2");
+		otherManager.setField("en", LOCALE_EN);
+		otherManager.setField("es", LOCALE_ES);
+		otherManager.setUpdatedName("updated_at");
+		otherManager.init();
+		
+		otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_2", new LocaleValue(LOCALE_EN, "english_refresh")));
+		otherManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_REFRESH", new LocaleValue(LOCALE_EN, "refresh_1"), new LocaleValue(LOCALE_ES, "refresco_1")));
+		
+		// Checks that the snapshot still has the previous values
+		testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_2");
+		testLocalizeString(languageManager, "KEY_REFRESH", LOCALE_ES, null);
+		
+		// Checks that only the changed keys are refreshed
+		int count = languageManager.refresh(dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + 2 + "].", 2, count);
+		
+		testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_refresh");
+		testLocalizeString(languageManager, "KEY_2", LOCALE_ES, "castellano_2");
+		testLocalizeString(languageManager, "KEY_REFRESH", LOCALE_ES, "refresco_1");
+		
+		// Changes a key with a timestamp before the last change like a transaction that commits late
+		dbManager.getDbNonTransaction().executeUpdate("UPDATE multilanguage2 SET en = 'english_late', updated_at = DATEADD('SECOND', -1, (SELECT MAX(updated_at) FROM multilanguage2)) WHERE key2 = ?", "KEY_3");
+		
+		// Checks that the change is missed without lookback and picked up with it
+		languageManager.setUpdatedLookback(0);
+		languageManager.refresh(dbManager.getDbNonTransaction());
+		testLocalizeString(languageManager, "KEY_3", LOCALE_EN, "english_3");
+		
+		languageManager.setUpdatedLookback(5000);
+		languageManager.refresh(dbManager.getDbNonTransaction());
+		testLocalizeString(languageManager, "KEY_3", LOCALE_EN, "english_late");
+		
+		// Checks that the scheduled refresh picks up the changes
+		languageManager.startRefresh(dbManager.getDbNonTransaction(), 10, TimeUnit.MILLISECONDS);
+		Assert.assertEquals("Value must be [" + true + "].", true, languageManager.isRefreshStarted());
+		
+		otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_REFRESH", new LocaleValue(LOCALE_ES, "refresco_2")));
+		
+		long timeout = System.currentTimeMillis() + 5000;
+		while (!"refresco_2".equals(languageManager.getLocalizedKey("KEY_REFRESH", LOCALE_ES, dbManager.getDbNonTransaction())) && System.currentTimeMillis() < timeout)
+		{
+			Thread.sleep(10);
+		}
+		
+		testLocalizeString(languageManager, "KEY_REFRESH", LOCALE_ES, "refresco_2");
+		
+		// Checks that destroying the manager stops the refresh
+		languageManager.destroy();
+		Assert.assertEquals("Value must be [" + false + "].", false, languageManager.isRefreshStarted());
+		
+		// Restores the original values
+		otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_2", new LocaleValue(LOCALE_EN, "english_2")), new LocalizedKey("KEY_3", new LocaleValue(LOCALE_EN, "english_3")));
+		otherManager.removeKey("KEY_REFRESH", dbManager.getDbNonTransaction());
+		otherManager.destroy();
+		
+		languageManager.init(dbManager.getDbNonTransaction());
+	}
+	
+	@Test
+	public void testChangeLog() throws Throwable
+	{
+		// Initializes the manager with preload and change log enabled
+		languageManager.destroy();
+		languageManager.setPreload(true);
+		languageManager.setChangeLogName("multilanguage2_log");
+		languageManager.init(dbManager.getDbNonTransaction());
+		
+		// Other manager with a cache changes the keys like another node would do
+		DbLanguageManager otherManager = new DbLanguageManager(LOCALE_EN, "multilanguage2", "key2");
+		otherManager.setField("en", LOCALE_EN);
+		otherManager.setField("es", LOCALE_ES);
+		otherManager.setCache(new LocalizedKeyCache(100));
+		otherManager.setChangeLogName("multilanguage2_log");
+		otherManager.init(dbManager.getDbNonTransaction());
+		
+		testLocalizeString(otherManager, "KEY_1", LOCALE_EN, "english_1");
+		
+		otherManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_LOG", new LocaleValue(LOCALE_EN, "log_1")));
+		otherManager.duplicateKey("KEY_LOG", "KEY_LOG_COPY", dbManager.getDbNonTransaction());
+		otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_LOG", new LocaleValue(LOCALE_EN, "log_2")));
+		otherManager.removeKey("KEY_LOG_COPY", dbManager.getDbNonTransaction());
+		
+		// Checks that the snapshot still has the previous values
+		testLocalizeString(languageManager, "KEY_LOG", LOCALE_EN, null);
+		
+		// Checks that the changed keys are refreshed once and the deleted ones removed
+		int count = languageManager.refresh(dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + 2 + "].", 2, count);
+		
+		testLocalizeString(languageManager, "KEY_LOG", LOCALE_EN, "log_2");
+		testLocalizeString(languageManager, "KEY_LOG_COPY", LOCALE_EN, null);
+		
+		// Checks that nothing is refreshed if nothing changed
+		count = languageManager.refresh(dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + 0 + "].", 0, count);
+		
+		// Changes a value through this manager and checks that the other manager evicts it from its cache
+		languageManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_1", new LocaleValue(LOCALE_EN, "english_log")));
+		testLocalizeString(otherManager, "KEY_1", LOCALE_EN, "english_1");
+		
+		otherManager.refresh(dbManager.getDbNonTransaction());
+		testLocalizeString(otherManager, "KEY_1", LOCALE_EN, "english_log");
+		
+		// Restores the original values
+		languageManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_1", new LocaleValue(LOCALE_EN, "english_1")));
+		languageManager.removeKey("KEY_LOG", dbManager.getDbNonTransaction());
+		otherManager.destroy();
+		
+		// Checks that the changes are purged
+		count = languageManager.purgeChangeLog(-1, TimeUnit.MINUTES, dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + true + "].", true, count > 0);
+	}
+	
+	@Test
+	public void testChangeLogGaps() throws Throwable
+	{
+		QueryRunner query = new QueryRunner(dataSource);
+		
+		// Uses a change log with other column names whose ids are written by the test
+		languageManager.destroy();
+		languageManager.setPreload(true);
+		languageManager.setChangeLogName("multilanguage2_log2", "log_id", "log_created");
+		languageManager.init(dbManager.getDbNonTransaction());
+		
+		// The change with the lower id is committed after the other one is read
+		query.update("UPDATE multilanguage2 SET en = 'gap_1' WHERE key2 = 'KEY_1'");
+		query.update("UPDATE multilanguage2 SET en = 'gap_2' WHERE key2 = 'KEY_2'");
+		query.update("INSERT INTO multilanguage2_log2 (log_id, key2) VALUES (2, 'KEY_2')");
+		
+		int count = languageManager.refresh(dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + 1 + "].", 1, count);
+		testLocalizeString(languageManager, "KEY_1", LOCALE_EN, "english_1");
+		testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "gap_2");
+		
+		// Checks that the late change is not skipped
+		query.update("INSERT INTO multilanguage2_log2 (log_id, key2) VALUES (1, 'KEY_1')");
+		
+		count = languageManager.refresh(dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + 1 + "].", 1, count);
+		testLocalizeString(languageManager, "KEY_1", LOCALE_EN, "gap_1");
+		
+		// Checks that the filled gap is not read again
+		count = languageManager.refresh(dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + 0 + "].", 0, count);
+		
+		// Checks that a gap is not waited for after the timeout
+		languageManager.destroy();
+		languageManager.setChangeLogGapTimeout(0);
+		languageManager.init(dbManager.getDbNonTransaction());
+		
+		query.update("INSERT INTO multilanguage2_log2 (log_id, key2) VALUES (4, 'KEY_2')");
+		languageManager.refresh(dbManager.getDbNonTransaction());
+		query.update("INSERT INTO multilanguage2_log2 (log_id, key2) VALUES (3, 'KEY_1')");
+		
+		count = languageManager.refresh(dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + 0 + "].", 0, count);
+		
+		// Checks that a change not committed yet when the manager starts is not skipped
+		languageManager.destroy();
+		languageManager.setChangeLogGapTimeout(60000);
+		
+		query.update("INSERT INTO multilanguage2_log2 (log_id, key2) VALUES (6, 'KEY_2')");
+		languageManager.init(dbManager.getDbNonTransaction());
+		
+		query.update("UPDATE multilanguage2 SET en = 'gap_start' WHERE key2 = 'KEY_1'");
+		query.update("INSERT INTO multilanguage2_log2 (log_id, key2) VALUES (5, 'KEY_1')");
+		
+		count = languageManager.refresh(dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + 1 + "].", 1, count);
+		testLocalizeString(languageManager, "KEY_1", LOCALE_EN, "gap_start");
+		
+		// Checks that the changes are purged with the other column name
+		count = languageManager.purgeChangeLog(-1, TimeUnit.MINUTES, dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + 6 + "].", 6, count);
+		
+		query.update("UPDATE multilanguage2 SET en = 'english_1' WHERE key2 = 'KEY_1'");
+		query.update("UPDATE multilanguage2 SET en = 'english_2' WHERE key2 = 'KEY_2'");
+	}
+	
+	@Test
+	public void testAsync() throws Throwable
+	{
+		ThreadPoolExecutor executor = (ThreadPoolExecutor) AsyncLanguageManager.newBoundedExecutor(1, 10);
+		AsyncLanguageManager asyncManager = new AsyncLanguageManager(languageManager, executor);
+		
+		// Blocks the only thread so the requests stay in flight
+		final CountDownLatch latch = new CountDownLatch(1);
+		executor.execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					latch.await();
+				}
+				catch (InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		
+		DbQuery dbQuery = dbManager.getDbNonTransaction();
+		
+		// Other DbManager gives a DbQuery that could be in other transaction
+		DbManager otherDbManager = new DbManager();
+		otherDbManager.init(dataSource);
+		DbQuery otherQuery = otherDbManager.getDbNonTransaction();
+		
+		CompletableFuture<String> future1 = asyncManager.getLocalizedKey("KEY_1", LOCALE_ES, dbQuery);
+		CompletableFuture<String> future2 = asyncManager.getLocalizedKey("KEY_1", LOCALE_ES, dbQuery);
+		CompletableFuture<String> future3 = asyncManager.getLocalizedKey("KEY_2", LOCALE_ES, dbQuery);
+		CompletableFuture<Map<String, String>> future4 = asyncManager.getLocalizedKeys(Arrays.asList("KEY_1", "KEY_3"), LOCALE_EN, dbQuery);
+		CompletableFuture<List<LocaleValue>> future5 = asyncManager.getKey("KEY_3", dbQuery);
+		CompletableFuture<String> future6 = asyncManager.getLocalizedKey("KEY_1", LOCALE_ES, otherQuery);
+		CompletableFuture<List<LocaleValue>> future7 = asyncManager.getKey("KEY_3", otherQuery);
+		
+		// Checks that the identical requests are coalesced into a single query, but not the ones of other DbQuery
+		Assert.assertEquals("Value must be [" + 6 + "].", 6, executor.getQueue().size());
+		
+		latch.countDown();
+		
+		Assert.assertEquals("Value must be [" + "castellano_1" + "].", "castellano_1", future1.get());
+		Assert.assertEquals("Value must be [" + "castellano_1" + "].", "castellano_1", future2.get());
+		Assert.assertEquals("Value must be [" + "castellano_2" + "].", "castellano_2", future3.get());
+		Assert.assertEquals("Value must be [" + "english_3" + "].", "english_3", future4.get().get("KEY_3"));
+		Assert.assertEquals("Value must be [" + "castellano_3" + "].", "castellano_3", future5.get().get(1).getValue());
+		Assert.assertEquals("Value must be [" + "castellano_1" + "].", "castellano_1", future6.get());
+		Assert.assertEquals("Value must be [" + "castellano_3" + "].", "castellano_3", future7.get().get(1).getValue());
+		
+		otherDbManager.destroy();
+		
+		// Checks that a request after the previous one finished queries again
+		Assert.assertEquals("Value must be [" + "english_1" + "].", "english_1", asyncManager.getLocalizedKey("KEY_1", LOCALE_EN, dbManager.getDbNonTransaction()).get());
+		
+		// Checks that the errors are returned through the future
+		languageManager.destroy();
+		
+		Exception exception = null;
+		
+		try
+		{
+			asyncManager.getLocalizedKey("KEY_1", LOCALE_EN, dbManager.getDbNonTransaction()).get();
+		}
+		catch (ExecutionException ee)
+		{
+			exception = (Exception) ee.getCause();
+		}
+		Assert.assertEquals("Value must be [" + true + "].", true, exception.getClass() == IllegalStateException.class);
+		
+		asyncManager.destroy();
+		executor.shutdown();
+	}
+	
+	@Test
+	public void testLookupBatcher() throws Throwable
+	{
+		// Only a full batch runs before the window ends
+		final LookupBatcher lookupBatcher = new LookupBatcher(10, TimeUnit.SECONDS, 3);
+		languageManager.setLookupBatcher(lookupBatcher);
+		
+		final String[] keys = new String[] {"KEY_1", "KEY_2", "KEY_3"};
+		final String[] values = new String[keys.length];
+		final CountDownLatch latch = new CountDownLatch(1);
+		Thread[] threads = new Thread[keys.length];
+		
+		// Looks up a different key from each thread at the same time
+		for (int i=0; i<keys.length; i++)
+		{
+			final int index = i;
+			
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						latch.await();
+						
+						values[index] = languageManager.getLocalizedKey(keys[index], LOCALE_ES, dbManager.getDbNonTransaction());
+					}
+					catch (InterruptedException ie)
+					{
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			
+			threads[i].start();
+		}
+		
+		latch.countDown();
+		
+		for (int i=0; i<threads.length; i++)
+		{
+			threads[i].join();
+		}
+		
+		// Checks that every thread got its value from a single query
+		Assert.assertEquals("Value must be [" + "castellano_1" + "].", "castellano_1", values[0]);
+		Assert.assertEquals("Value must be [" + "castellano_2" + "].", "castellano_2", values[1]);
+		Assert.assertEquals("Value must be [" + "castellano_3" + "].", "castellano_3", values[2]);
+		Assert.assertEquals("Value must be [" + 1 + "].", 1, lookupBatcher.getBatchCount());
+		Assert.assertEquals("Value must be [" + 3 + "].", 3, lookupBatcher.getKeyCount());
+		
+		// Checks that a single lookup runs when the window ends
+		languageManager.setLookupBatcher(new LookupBatcher(1, TimeUnit.MILLISECONDS, 3));
+		testLocalizeString(languageManager, "KEY_1", LOCALE_EN, "english_1");
+		testLocalizeString(languageManager, "KEY_MISSING", LOCALE_EN, null);
+		Assert.assertEquals("Value must be [" + 2 + "].", 2, languageManager.getLookupBatcher().getBatchCount());
+		
+		// Checks that an interrupted thread does not wait for the window and keeps its interrupt
+		languageManager.setLookupBatcher(new LookupBatcher(10, TimeUnit.SECONDS, 3));
+		
+		long startTime = System.currentTimeMillis();
+		Thread.currentThread().interrupt();
+		
+		testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_2");
+		
+		Assert.assertEquals("Value must be [" + true + "].", true, Thread.interrupted());
+		Assert.assertEquals("Value must be [" + true + "].", true, System.currentTimeMillis() - startTime < 5000);
+	}
+	
+	@Test
+	public void testSnapshotFile() throws Throwable
+	{
+		Path file = Files.createTempFile("multilanguage2", ".snapshot");
+		
+		try
+		{
+			// Initializes the manager with the snapshot mapped from a file
+			languageManager.destroy();
+			languageManager.setPreload(true);
+			languageManager.setChangeLogName("multilanguage2_log");
+			languageManager.setSnapshotFile(file);
+			languageManager.init(dbManager.getDbNonTransaction());
+			
+			testLocalizeString(languageManager, "KEY_1", LOCALE_ES, "castellano_1");
+			
+			// Changes a value without the change log so the table version does not change
+			dbManager.getDbNonTransaction().executeUpdate("UPDATE multilanguage2 SET en = 'english_file' WHERE key2 = ?", "KEY_2");
+			
+			// Checks that the file is reused when the version did not change
+			languageManager.destroy();
+			languageManager.init(dbManager.getDbNonTransaction());
+			
+			testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_2");
+			
+			// Checks that the file is written again when the version changed
+			languageManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_3", new LocaleValue(LOCALE_EN, "english_3")));
+			languageManager.destroy();
+			languageManager.init(dbManager.getDbNonTransaction());
+			
+			testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_file");
+		}
+		finally
+		{
+			dbManager.getDbNonTransaction().executeUpdate("UPDATE multilanguage2 SET en = 'english_2' WHERE key2 = ?", "KEY_2");
+			
+			languageManager.destroy();
+			Files.deleteIfExists(file);
+		}
+	}
+	
+	@Test
+	public void testWarmStart() throws Throwable
+	{
+		Path file = Files.createTempFile("multilanguage2", ".snapshot");
+		
+		try
+		{
+			// Other manager writes the changes to the change log
+			DbLanguageManager otherManager = new DbLanguageManager(LOCALE_EN, "multilanguage2", "key2");
+			otherManager.setField("en", LOCALE_EN);
+			otherManager.setField("es", LOCALE_ES);
+			otherManager.setChangeLogName("multilanguage2_log");
+			otherManager.init();
+			otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_3", new LocaleValue(LOCALE_EN, "english_3")));
+			
+			// Initializes the manager so it writes the snapshot file
+			languageManager.destroy();
+			languageManager.setPreload(true);
+			languageManager.setChangeLogName("multilanguage2_log");
+			languageManager.setSnapshotFile(file);
+			languageManager.setWarmStart(true);
+			languageManager.init(dbManager.getDbNonTransaction());
+			
+			testLocalizeString(languageManager, "KEY_1", LOCALE_EN, "english_1");
+			languageManager.destroy();
+			
+			long version = MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_EN, LOCALE_ES)).getVersion();
+			
+			// Other manager changes a key while this one is stopped
+			otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_1", new LocaleValue(LOCALE_EN, "english_warm")));
+			
+			// Starts from the file and checks that the change is picked up in the background
+			languageManager.init(dbManager.getDbNonTransaction());
+			
+			testLocalizeString(languageManager, "KEY_2", LOCALE_ES, "castellano_2");
+			
+			long timeout = System.currentTimeMillis() + 5000;
+			while (!"english_warm".equals(languageManager.getLocalizedKey("KEY_1", LOCALE_EN, dbManager.getDbNonTransaction())) && System.currentTimeMillis() < timeout)
+			{
+				Thread.sleep(10);
+			}
+			
+			testLocalizeString(languageManager, "KEY_1", LOCALE_EN, "english_warm");
+			
+			// Checks that the file is written again with the changes read from the change log
+			waitForVersion(file, version + 1);
+			version = MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_EN, LOCALE_ES)).getVersion();
+			
+			// Changes a value without the change log so only a load of the table finds it
+			dbManager.getDbNonTransaction().executeUpdate("UPDATE multilanguage2 SET en = 'english_direct' WHERE key2 = ?", "KEY_2");
+			otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_3", new LocaleValue(LOCALE_EN, "english_logged")));
+			
+			// Checks that only the changes of the change log are read when it has every change since the file
+			languageManager.destroy();
+			languageManager.init(dbManager.getDbNonTransaction());
+			
+			waitForVersion(file, version + 1);
+			version = MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_EN, LOCALE_ES)).getVersion();
+			
+			testLocalizeString(languageManager, "KEY_3", LOCALE_EN, "english_logged");
+			testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_2");
+			
+			// Checks that the table is loaded when the changes since the file were purged from the change log
+			otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_3", new LocaleValue(LOCALE_EN, "english_purged")));
+			languageManager.purgeChangeLog(-1, TimeUnit.HOURS, dbManager.getDbNonTransaction());
+			otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_1", new LocaleValue(LOCALE_EN, "english_warm")));
+			
+			languageManager.destroy();
+			languageManager.init(dbManager.getDbNonTransaction());
+			
+			waitForVersion(file, version + 2);
+			
+			timeout = System.currentTimeMillis() + 5000;
+			while (!"english_direct".equals(languageManager.getLocalizedKey("KEY_2", LOCALE_EN, dbManager.getDbNonTransaction())) && System.currentTimeMillis() < timeout)
+			{
+				Thread.sleep(10);
+			}
+			
+			testLocalizeString(languageManager, "KEY_3", LOCALE_EN, "english_purged");
+			testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_direct");
+			
+			// Checks that a corrupted file is ignored and the table is loaded
+			languageManager.destroy();
+			Files.write(file, new byte[] {1, 2, 3});
+			languageManager.init(dbManager.getDbNonTransaction());
+			
+			testLocalizeString(languageManager, "KEY_1", LOCALE_EN, "english_warm");
+			
+			// Writes the file again without merged values
+			otherManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_WARM_FALLBACK", new LocaleValue(LOCALE_EN, "fallback_1")));
+			
+			languageManager.destroy();
+			languageManager.setWarmStart(false);
+			languageManager.init(dbManager.getDbNonTransaction());
+			
+			testLocalizeString(languageManager, "KEY_WARM_FALLBACK", LOCALE_ES, null);
+			
+			// Checks that the file is not used when merged values are expected
+			languageManager.destroy();
+			languageManager.setFallbackValues(true);
+			languageManager.setWarmStart(true);
+			languageManager.init(dbManager.getDbNonTransaction());
+			
+			testLocalizeString(languageManager, "KEY_WARM_FALLBACK", LOCALE_ES, "fallback_1");
+			
+			// Restores the original values
+			otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_1", new LocaleValue(LOCALE_EN, "english_1")));
+			otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_2", new LocaleValue(LOCALE_EN, "english_2")));
+			otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_3", new LocaleValue(LOCALE_EN, "english_3")));
+			otherManager.removeKey("KEY_WARM_FALLBACK", dbManager.getDbNonTransaction());
+			otherManager.destroy();
+		}
+		finally
+		{
+			languageManager.destroy();
+			Files.deleteIfExists(file);
+		}
+	}
+	
+	@Test
+	public void testFormat() throws Throwable
+	{
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_FORMAT", new LocaleValue(LOCALE_EN, "Hello {0}"), new LocaleValue(LOCALE_ES, "Hola {0}")));
+		
+		// Checks that the value is formatted for each locale
+		testFormat(languageManager, "KEY_FORMAT", LOCALE_EN, "Hello john", "john");
+		testFormat(languageManager, "KEY_FORMAT", LOCALE_ES, "Hola john", "john");
+		testFormat(languageManager, "KEY_MISSING", LOCALE_EN, null, "john");
+		
+		// Checks that a new value is formatted after it is set
+		languageManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_FORMAT", new LocaleValue(LOCALE_EN, "You have {0,number,integer} messages")));
+		testFormat(languageManager, "KEY_FORMAT", LOCALE_EN, "You have 1,234 messages", 1234);
+		
+		languageManager.removeKey("KEY_FORMAT", dbManager.getDbNonTransaction());
+		testFormat(languageManager, "KEY_FORMAT", LOCALE_EN, null, "john");
+	}
+	
+	@Test
+	public void testMissingKeys() throws Throwable
+	{
+		MissingKeyCache missingKeyCache = new MissingKeyCache(10);
+		
+		// Builds the key filter from the table
+		languageManager.destroy();
+		languageManager.setFilterKeys(true);
+		languageManager.setMissingKeyCache(missingKeyCache);
+		languageManager.init(dbManager.getDbNonTransaction());
+		
+		testLocalizeString(languageManager, "KEY_1", LOCALE_EN, "english_1");
+		testLocalizeString(languageManager, "KEY_MISSING", LOCALE_EN, null);
+		
+		// Other manager adds the key so only a lookup in the database would find it
+		DbLanguageManager otherManager = new DbLanguageManager(LOCALE_EN, "multilanguage2", "key2");
+		otherManager.setField("en", LOCALE_EN);
+		otherManager.setField("es", LOCALE_ES);
+		otherManager.init();
+		otherManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_MISSING", new LocaleValue(LOCALE_EN, "missing_1")));
+		
+		// Checks that the filter answers without going to the database
+		testLocalizeString(languageManager, "KEY_MISSING", LOCALE_EN, null);
+		Assert.assertEquals("Value must be [" + 0 + "].", 0, missingKeyCache.size());
+		
+		// Checks that a key added by the manager passes the filter
+		languageManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_MISSING", new LocaleValue(LOCALE_EN, "missing_2")));
+		testLocalizeString(languageManager, "KEY_MISSING", LOCALE_EN, "missing_2");
+		
+		// Checks that a key removed by the other manager is cached as missing
+		otherManager.removeKey("KEY_MISSING", dbManager.getDbNonTransaction());
+		otherManager.destroy();
+		
+		testLocalizeString(languageManager, "KEY_MISSING", LOCALE_EN, null);
+		testLocalizeString(languageManager, "KEY_MISSING", LOCALE_EN, null);
+		Assert.assertEquals("Value must be [" + 1 + "].", 1, missingKeyCache.size());
+		Assert.assertEquals("Value must be [" + 1 + "].", 1, missingKeyCache.getHitCount());
+		
+		// Checks that the missing key is also skipped in multiple lookups
+		Map<String, String> valueMap = languageManager.getLocalizedKeys(Arrays.asList("KEY_2", "KEY_MISSING"), LOCALE_EN, dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + "english_2" + "].", "english_2", valueMap.get("KEY_2"));
+		Assert.assertEquals("Value must be [" + false + "].", false, valueMap.containsKey("KEY_MISSING"));
+		Assert.assertEquals("Value must be [" + 2 + "].", 2, missingKeyCache.getHitCount());
+		
+		// Checks that adding the key again invalidates the missing entry
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_MISSING", new LocaleValue(LOCALE_EN, "missing_3")));
+		testLocalizeString(languageManager, "KEY_MISSING", LOCALE_EN, "missing_3");
+		
+		languageManager.removeKey("KEY_MISSING", dbManager.getDbNonTransaction());
+		
+		// Checks that a key invalidated while it was looked up is not recorded as missing
+		long generation = missingKeyCache.getGeneration();
+		languageManager.invalidateKey("KEY_ADDED");
+		
+		missingKeyCache.put("KEY_ADDED", LOCALE_EN, generation);
+		Assert.assertEquals("Value must be [" + false + "].", false, missingKeyCache.contains("KEY_ADDED", LOCALE_EN));
+		
+		missingKeyCache.put("KEY_ADDED", LOCALE_EN, missingKeyCache.getGeneration());
+		Assert.assertEquals("Value must be [" + true + "].", true, missingKeyCache.contains("KEY_ADDED", LOCALE_EN));
+	}
+	
+	@Test
+	public void testLocaleRowStorage() throws Throwable
+	{
+		// Uses a table with a row for each key and locale
+		DbLanguageManager rowManager = new DbLanguageManager(LOCALE_EN, "multilanguage3", "key3", "locale", "text");
+		rowManager.setField("en", LOCALE_EN);
+		rowManager.setField("es", LOCALE_ES);
+		rowManager.setUpdatedName("updated_at");
+		rowManager.init(dbManager.getDbNonTransaction());
+		
+		try
+		{
+			// Checks the lookups of single and multiple keys
+			testLocalizeString(rowManager, "KEY_1", LOCALE_ES, "castellano_1");
+			testLocalizeString(rowManager, "KEY_3", LOCALE_ES, null);
+			testLocalizeString(rowManager, "KEY_MISSING", LOCALE_EN, null);
+			
+			Map<String, String> valueMap = rowManager.getLocalizedKeys(Arrays.asList("KEY_1", "KEY_2", "KEY_MISSING"), LOCALE_EN, dbManager.getDbNonTransaction());
+			Assert.assertEquals("Value must be [" + 2 + "].", 2, valueMap.size());
+			Assert.assertEquals("Value must be [" + "english_2" + "].", "english_2", valueMap.get("KEY_2"));
+			
+			Map<String, List<LocaleValue>> keyMap = rowManager.getKeys(Arrays.asList("KEY_2", "KEY_3"), dbManager.getDbNonTransaction());
+			Assert.assertEquals("Value must be [" + "castellano_2" + "].", "castellano_2", keyMap.get("KEY_2").get(1).getValue());
+			Assert.assertEquals("Value must be [" + null + "].", null, keyMap.get("KEY_3").get(1).getValue());
+			Assert.assertEquals("Value must be [" + "english_1" + "].", "english_1", rowManager.getKey("KEY_1", dbManager.getDbNonTransaction()).get(0).getValue());
+			Assert.assertEquals("Value must be [" + null + "].", null, rowManager.getKey("KEY_MISSING", dbManager.getDbNonTransaction()));
+			
+			// Inserts, updates and duplicates a key
+			rowManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_ROW", new LocaleValue(LOCALE_EN, "row_1")));
+			rowManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_ROW", new LocaleValue(LOCALE_EN, "row_2"), new LocaleValue(LOCALE_ES, "fila_2")));
+			rowManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_NOT_ROW", new LocaleValue(LOCALE_EN, "not_row")));
+			rowManager.duplicateKey("KEY_ROW", "KEY_ROW_2", dbManager.getDbNonTransaction());
+			
+			// Checks that the locale without row was added only for the existing key
+			testLocalizeString(rowManager, "KEY_ROW", LOCALE_EN, "row_2");
+			testLocalizeString(rowManager, "KEY_ROW", LOCALE_ES, "fila_2");
+			testLocalizeString(rowManager, "KEY_NOT_ROW", LOCALE_EN, null);
+			testLocalizeString(rowManager, "KEY_ROW_2", LOCALE_ES, "fila_2");
+			
+			// Checks that the bundle and the preloaded snapshot get every locale of a key
+			Map<Locale, Map<String, String>> bundle = rowManager.getBundle("KEY_ROW", dbManager.getDbNonTransaction());
+			Assert.assertEquals("Value must be [" + 2 + "].", 2, bundle.get(LOCALE_ES).size());
+			
+			rowManager.destroy();
+			rowManager.setPreload(true);
+			rowManager.init(dbManager.getDbNonTransaction());
+			
+			testLocalizeString(rowManager, "KEY_ROW_2", LOCALE_EN, "row_2");
+			testLocalizeString(rowManager, "KEY_2", LOCALE_ES, "castellano_2");
+			
+			// Checks that a refresh reads every locale of a changed key
+			DbLanguageManager otherManager = new DbLanguageManager(LOCALE_EN, "multilanguage3", "key3", "locale", "text");
+			otherManager.setField("en", LOCALE_EN);
+			otherManager.setField("es", LOCALE_ES);
+			otherManager.setUpdatedName("updated_at");
+			otherManager.init();
+			otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_ROW", new LocaleValue(LOCALE_ES, "fila_3")));
+			otherManager.destroy();
+			
+			rowManager.refresh(dbManager.getDbNonTransaction());
+			testLocalizeString(rowManager, "KEY_ROW", LOCALE_EN, "row_2");
+			testLocalizeString(rowManager, "KEY_ROW", LOCALE_ES, "fila_3");
+			
+			// Checks that the removed key has no rows
+			rowManager.removeKey("KEY_ROW", dbManager.getDbNonTransaction());
+			rowManager.removeKey("KEY_ROW_2", dbManager.getDbNonTransaction());
+			
+			Assert.assertEquals("Value must be [" + null + "].", null, rowManager.getKey("KEY_ROW", dbManager.getDbNonTransaction()));
+		}
+		finally
+		{
+			rowManager.destroy();
+		}
+	}
+	
+	@Test
+	public void testLocaleRowStorageField() throws Throwable
+	{
+		// Uses fields that are not the name of the locales
+		DbLanguageManager rowManager = new DbLanguageManager(LOCALE_EN, "multilanguage3", "key3", "locale", "text");
+		rowManager.setField("english", LOCALE_EN);
+		rowManager.setField("spanish", LOCALE_ES);
+		rowManager.init();
+		
+		try
+		{
+			rowManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_FIELD", new LocaleValue(LOCALE_EN, "field_1")));
+			
+			testLocalizeString(rowManager, "KEY_FIELD", LOCALE_EN, "field_1");
+			Assert.assertEquals("Value must be [" + "field_1" + "].", "field_1", rowManager.getKey("KEY_FIELD", dbManager.getDbNonTransaction()).get(0).getValue());
+			
+			// Checks that the updated and the inserted locales use the fields too
+			rowManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_FIELD", new LocaleValue(LOCALE_EN, "field_2"), new LocaleValue(LOCALE_ES, "campo_2")));
+			
+			testLocalizeString(rowManager, "KEY_FIELD", LOCALE_EN, "field_2");
+			testLocalizeString(rowManager, "KEY_FIELD", LOCALE_ES, "campo_2");
+			
+			// Checks that the rows are not stored with the name of the locales
+			DbLanguageManager otherManager = new DbLanguageManager(LOCALE_EN, "multilanguage3", "key3", "locale", "text");
+			otherManager.setField("en", LOCALE_EN);
+			otherManager.init();
+			
+			testLocalizeString(otherManager, "KEY_FIELD", LOCALE_EN, null);
+			
+			otherManager.destroy();
+			
+			// Checks that two locales cannot share a field
+			Exception exception = null;
+			
+			try
+			{
+				rowManager.setField("english", new Locale("fr"));
+			}
+			catch (Exception e)
+			{
+				exception = e;
+			}
+			Assert.assertEquals("Value must be [" + true + "].", true, exception.getClass() == IllegalArgumentException.class);
+			
+			// Checks that the field of a locale can be set again
+			rowManager.setField("english", LOCALE_EN);
+			testLocalizeString(rowManager, "KEY_FIELD", LOCALE_EN, "field_2");
+		}
+		finally
+		{
+			rowManager.removeKey("KEY_FIELD", dbManager.getDbNonTransaction());
+			rowManager.destroy();
+		}
+	}
+	
+	@Test
+	public void testLazyLoad() throws Throwable
+	{
+		// Only one locale is kept in memory
+		languageManager.destroy();
+		languageManager.setLazyLoad(true);
+		languageManager.setMaxLoadedLocales(1);
+		languageManager.init();
+		
+		Assert.assertEquals("Value must be [" + 0 + "].", 0, languageManager.getLoadedLocaleSet().size());
+		
+		// Checks that the first lookup loads the locale
+		testLocalizeString(languageManager, "KEY_1", LOCALE_EN, "english_1");
+		testLocalizeString(languageManager, "KEY_MISSING", LOCALE_EN, null);
+		Assert.assertEquals("Value must be [" + true + "].", true, languageManager.getLoadedLocaleSet().contains(LOCALE_EN));
+		
+		// Other manager changes a key so only a lookup in the database would find it
+		DbLanguageManager otherManager = new DbLanguageManager(LOCALE_EN, "multilanguage2", "key2");
+		otherManager.setField("en", LOCALE_EN);
+		otherManager.setField("es", LOCALE_ES);
+		otherManager.init();
+		otherManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_2", new LocaleValue(LOCALE_EN, "english_lazy")));
+		
+		testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_2");
+		
+		// Checks that loading other locale unloads the least recently used one
+		Map<String, String> valueMap = languageManager.getLocalizedKeys(Arrays.asList("KEY_1", "KEY_3"), LOCALE_ES, dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + "castellano_3" + "].", "castellano_3", valueMap.get("KEY_3"));
+		Assert.assertEquals("Value must be [" + false + "].", false, languageManager.getLoadedLocaleSet().contains(LOCALE_EN));
+		
+		// Checks that the locale is loaded again with the current values
+		testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_lazy");
+		
+		// Checks that the changes made by the manager are applied to the loaded locale
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_LAZY", new LocaleValue(LOCALE_EN, "lazy_1")));
+		testLocalizeString(languageManager, "KEY_LAZY", LOCALE_EN, "lazy_1");
+		
+		languageManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_2", new LocaleValue(LOCALE_EN, "english_2")));
+		testLocalizeString(languageManager, "KEY_2", LOCALE_EN, "english_2");
+		
+		languageManager.removeKey("KEY_LAZY", dbManager.getDbNonTransaction());
+		testLocalizeString(languageManager, "KEY_LAZY", LOCALE_EN, null);
+		
+		// Checks that a locale can be unloaded
+		Assert.assertEquals("Value must be [" + true + "].", true, languageManager.unloadLocale(LOCALE_EN));
+		Assert.assertEquals("Value must be [" + 0 + "].", 0, languageManager.getLoadedLocaleSet().size());
+		
+		otherManager.destroy();
+	}
+	
+	@Test
+	public void testFallbackValues() throws Throwable
+	{
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_FALLBACK", new LocaleValue(LOCALE_EN, "fallback_1")), new LocalizedKey("KEY_FALLBACK_2", new LocaleValue(LOCALE_EN, "fallback2_1")));
+		
+		// Checks that without fallback the locale has no value
+		testLocalizeString(languageManager, "KEY_FALLBACK", LOCALE_ES, null);
+		
+		// Checks that the value of the default locale is used from the database
+		languageManager.destroy();
+		languageManager.setFallbackValues(true);
+		languageManager.init();
+		
+		testLocalizeString(languageManager, "KEY_FALLBACK", LOCALE_ES, "fallback_1");
+		testLocalizeString(languageManager, "KEY_1", LOCALE_ES, "castellano_1");
+		
+		Map<String, String> valueMap = languageManager.getLocalizedKeys(Arrays.asList("KEY_1", "KEY_FALLBACK_2"), LOCALE_ES, dbManager.getDbNonTransaction());
+		Assert.assertEquals("Value must be [" + "castellano_1" + "].", "castellano_1", valueMap.get("KEY_1"));
+		Assert.assertEquals("Value must be [" + "fallback2_1" + "].", "fallback2_1", valueMap.get("KEY_FALLBACK_2"));
+		
+		// Checks that the preloaded snapshot stores the merged values
+		languageManager.destroy();
+		languageManager.setPreload(true);
+		languageManager.init(dbManager.getDbNonTransaction());
+		
+		testLocalizeString(languageManager, "KEY_FALLBACK", LOCALE_ES, "fallback_1");
+		
+		// Checks that changing the fallback value changes the merged one
+		languageManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_FALLBACK", new LocaleValue(LOCALE_EN, "fallback_2")));
+		testLocalizeString(languageManager, "KEY_FALLBACK", LOCALE_ES, "fallback_2");
+		
+		languageManager.setKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_FALLBACK", new LocaleValue(LOCALE_ES, "respaldo_2")));
+		testLocalizeString(languageManager, "KEY_FALLBACK", LOCALE_ES, "respaldo_2");
+		
+		// Checks that a locale loaded on demand stores the merged values
+		languageManager.destroy();
+		languageManager.setPreload(false);
+		languageManager.setLazyLoad(true);
+		languageManager.init();
+		
+		testLocalizeString(languageManager, "KEY_FALLBACK_2", LOCALE_ES, "fallback2_1");
+		
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_FALLBACK_3", new LocaleValue(LOCALE_EN, "fallback3_1")));
+		testLocalizeString(languageManager, "KEY_FALLBACK_3", LOCALE_ES, "fallback3_1");
+		
+		languageManager.removeKey("KEY_FALLBACK", dbManager.getDbNonTransaction());
+		languageManager.removeKey("KEY_FALLBACK_2", dbManager.getDbNonTransaction());
+		languageManager.removeKey("KEY_FALLBACK_3", dbManager.getDbNonTransaction());
+	}
+	
+	@Test
+	public void testWriteLocalizedKey() throws Throwable
+	{
+		String longValue = StringUtils.repeat("legal_", 5000);
+		
+		languageManager.addKey(dbManager.getDbNonTransaction(), new LocalizedKey("KEY_LONG", new LocaleValue(LOCALE_EN, longValue)));
+		
+		// Checks that the value is written from the database
+		testWriteLocalizedKey(languageManager, "KEY_LONG", LOCALE_EN, longValue);
+		testWriteLocalizedKey(languageManager, "KEY_1", LOCALE_ES, "castellano_1");
+		testWriteLocalizedKey(languageManager, "KEY_LONG", LOCALE_ES, null);
+		testWriteLocalizedKey(languageManager, "KEY_UNKNOWN", LOCALE_EN, null);
+		
+		// Checks that the long values are not cached
+		LocalizedKeyCache cache = new LocalizedKeyCache(100);
+		languageManager.setCache(cache);
+		languageManager.setMaxCachedLength(100);
+		
+		testLocalizeString(languageManager, "KEY_LONG", LOCALE_EN, longValue);
+		testLocalizeString(languageManager, "KEY_1", LOCALE_EN, "english_1");
+		Assert.assertEquals("Value must be [" + null + "].", null, cache.get("KEY_LONG", LOCALE_EN));
+		Assert.assertEquals("Value must be [" + "english_1" + "].", "english_1", cache.get("KEY_1", LOCALE_EN));
+		
+		testWriteLocalizedKey(languageManager, "KEY_1", LOCALE_EN, "english_1");
+		testWriteLocalizedKey(languageManager, "KEY_LONG", LOCALE_EN, longValue);
+		
+		// Checks that the value falls back to the default locale
+		languageManager.destroy();
+		languageManager.setFallbackValues(true);
+		languageManager.init();
+		
+		testWriteLocalizedKey(languageManager, "KEY_LONG", LOCALE_ES, longValue);
+		
+		// Checks that the value is written from the snapshot
+		languageManager.destroy();
+		languageManager.setPreload(true);
+		languageManager.init(dbManager.getDbNonTransaction());
+		
+		testWriteLocalizedKey(languageManager, "KEY_LONG", LOCALE_EN, longValue);
+		testWriteLocalizedKey(languageManager, "KEY_UNKNOWN", LOCALE_EN, null);
+		
+		languageManager.removeKey("KEY_LONG", dbManager.getDbNonTransaction());
+	}
+	
+	private void testImportResult(ImportResult importResult, int insertedCount, int updatedCount, int unchangedCount)
+	{
+		Assert.assertEquals("Value must be [" + insertedCount + "].", insertedCount, importResult.getInsertedCount());
+		Assert.assertEquals("Value must be [" + updatedCount + "].", updatedCount, importResult.getUpdatedCount());
+		Assert.assertEquals("Value must be [" + unchangedCount + "].", unchangedCount, importResult.getUnchangedCount());
+	}
+	
+	private void testContains(String value, String expectedValue)
+	{
+		Assert.assertEquals("Value must contain [" + expectedValue + "].", true, value.contains(expectedValue));
+	}
+	
+	private void waitForVersion(Path file, long version) throws Throwable
+	{
+		// The snapshot file is written in the background
+		long timeout = System.currentTimeMillis() + 5000;
+		TranslationSnapshot fileSnapshot = MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_EN, LOCALE_ES));
+		
+		while ((fileSnapshot == null || fileSnapshot.getVersion() < version) && System.currentTimeMillis() < timeout)
+		{
+			Thread.sleep(10);
+			
+			fileSnapshot = MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_EN, LOCALE_ES));
+		}
+		
+		Assert.assertEquals("Value must be [" + version + "].", version, fileSnapshot.getVersion());
+	}
+	
 	private void testLocalizeString(DbLanguageManager languageManager, String key, Locale locale, String expectedValue)
 	{	
 		String value = languageManager.getLocalizedKey(key, locale, dbManager.getDbNonTransaction());
 		Assert.assertEquals("Value must be [" + expectedValue + "].", expectedValue, value);
 	}
 	
+	private void testFormat(DbLanguageManager languageManager, String key, Locale locale, String expectedValue, Object...args)
+	{
+		String value = languageManager.format(key, locale, dbManager.getDbNonTransaction(), args);
+		Assert.assertEquals("Value must be [" + expectedValue + "].", expectedValue, value);
+	}
+	
+	private void testWriteLocalizedKey(DbLanguageManager languageManager, String key, Locale locale, String expectedValue) throws Throwable
+	{
+		StringWriter writer = new StringWriter();
+		long count = languageManager.writeLocalizedKey(key, locale, writer, dbManager.getDbNonTransaction());
+		
+		if (expectedValue == null)
+		{
+			Assert.assertEquals("Value must be [" + -1 + "].", -1, count);
+		}
+		else
+		{
+			Assert.assertEquals("Value must be [" + expectedValue.length() + "].", expectedValue.length(), count);
+			Assert.assertEquals("Value must be [" + expectedValue + "].", expectedValue, writer.toString());
+		}
+	}
+	
+	private void testNormalizeLocale(DbLanguageManager languageManager, Locale locale, Locale expectedValue)
+	{
+		Locale value = languageManager.normalizeLocale(locale);
+		Assert.assertEquals("Value must be [" + expectedValue + "].", expectedValue, value);
+	}
+	
 	@Before
 	public void setUp() throws Throwable
 	{
@@ -324,4 +1658,4 @@ public class DbLanguageManagerTest
 		dbManager.destroy();
 		dbManager = null;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import es.molabs.jdbc.language.cache.KeyFilter;
+
+public class KeyFilterTest 
+{
+	@Test
+	public void testMightContain() throws Throwable
+	{
+		KeyFilter keyFilter = new KeyFilter(1000, 0.01);
+		
+		for (int i=0; i<1000; i++)
+		{
+			keyFilter.add("KEY_" + i);
+		}
+		
+		// Checks that every added key passes the filter
+		for (int i=0; i<1000; i++)
+		{
+			Assert.assertEquals("Value must be [" + true + "].", true, keyFilter.mightContain("KEY_" + i));
+		}
+		
+		// Checks that the false positives stay close to the expected rate
+		int falsePositiveCount = 0;
+		
+		for (int i=0; i<10000; i++)
+		{
+			if (keyFilter.mightContain("MISSING_" + i)) falsePositiveCount++;
+		}
+		
+		Assert.assertTrue("Value must be lower than [" + 300 + "].", falsePositiveCount < 300);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidRate() throws Throwable
+	{
+		new KeyFilter(1000, 1);
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.test;
+
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import es.molabs.jdbc.language.cache.LocalizedKeyCache;
+
+public class LocalizedKeyCacheTest 
+{
+	private final static Locale LOCALE_EN = new Locale("en");
+	private final static Locale LOCALE_ES = new Locale("es");
+	
+	@Test
+	public void testGetAndPut() throws Throwable
+	{
+		LocalizedKeyCache cache = new LocalizedKeyCache(10);
+		
+		// Checks that the key is not cached
+		testCachedValue(cache, "KEY_1", LOCALE_EN, null);
+		
+		// Caches the key for LOCALE_EN
+		cache.put("KEY_1", LOCALE_EN, "english_1");
+		
+		// Checks that the value is cached only for LOCALE_EN
+		testCachedValue(cache, "KEY_1", LOCALE_EN, "english_1");
+		testCachedValue(cache, "KEY_1", LOCALE_ES, null);
+		
+		// Checks that null values are not cached
+		cache.put("KEY_2", LOCALE_EN, null);
+		
+		int expectedValue = 1;
+		int value = cache.size();
+		Assert.assertEquals("Value must be [" + expectedValue + "].", expectedValue, value);
+	}
+	
+	@Test
+	public void testLruEviction() throws Throwable
+	{
+		LocalizedKeyCache cache = new LocalizedKeyCache(2);
+		
+		cache.put("KEY_1", LOCALE_EN, "english_1");
+		cache.put("KEY_2", LOCALE_EN, "english_2");
+		
+		// Accesses KEY_1 so KEY_2 becomes the least recently used
+		testCachedValue(cache, "KEY_1", LOCALE_EN, "english_1");
+		
+		// Adds a third key over the size limit
+		cache.put("KEY_3", LOCALE_EN, "english_3");
+		
+		// Checks that KEY_2 was evicted
+		testCachedValue(cache, "KEY_1", LOCALE_EN, "english_1");
+		testCachedValue(cache, "KEY_2", LOCALE_EN, null);
+		testCachedValue(cache, "KEY_3", LOCALE_EN, "english_3");
+	}
+	
+	@Test
+	public void testReplacedEntries() throws Throwable
+	{
+		LocalizedKeyCache cache = new LocalizedKeyCache(3);
+		
+		cache.put("KEY_1", LOCALE_EN, "english_1");
+		cache.put("KEY_2", LOCALE_EN, "english_2");
+		cache.put("KEY_3", LOCALE_ES, "castellano_3");
+		
+		// Replaces and invalidates entries so they are no longer cached
+		cache.put("KEY_2", LOCALE_EN, "english_2_new");
+		cache.invalidate("KEY_1", LOCALE_EN);
+		cache.put("KEY_4", LOCALE_EN, "english_4");
+		
+		// Checks that only the entries still cached count for the size
+		testCachedValue(cache, "KEY_2", LOCALE_EN, "english_2_new");
+		testCachedValue(cache, "KEY_3", LOCALE_ES, "castellano_3");
+		testCachedValue(cache, "KEY_4", LOCALE_EN, "english_4");
+		
+		int expectedValue = 3;
+		int value = cache.size();
+		Assert.assertEquals("Value must be [" + expectedValue + "].", expectedValue, value);
+	}
+	
+	@Test
+	public void testTimeToLive() throws Throwable
+	{
+		LocalizedKeyCache cache = new LocalizedKeyCache(10, 50);
+		
+		cache.put("KEY_1", LOCALE_EN, "english_1");
+		
+		// Checks that the value is cached
+		testCachedValue(cache, "KEY_1", LOCALE_EN, "english_1");
+		
+		// Waits till the entry expires
+		Thread.sleep(100);
+		
+		// Checks that the value has expired
+		testCachedValue(cache, "KEY_1", LOCALE_EN, null);
+	}
+	
+	@Test
+	public void testInvalidate() throws Throwable
+	{
+		LocalizedKeyCache cache = new LocalizedKeyCache(10);
+		
+		cache.put("KEY_1", LOCALE_EN, "english_1");
+		cache.put("KEY_1", LOCALE_ES, "castellano_1");
+		cache.put("KEY_2", LOCALE_EN, "english_2");
+		
+		// Invalidates a key for a locale
+		cache.invalidate("KEY_1", LOCALE_EN);
+		
+		testCachedValue(cache, "KEY_1", LOCALE_EN, null);
+		testCachedValue(cache, "KEY_1", LOCALE_ES, "castellano_1");
+		
+		// Invalidates all the keys
+		cache.invalidateAll();
+		
+		int expectedValue = 0;
+		int value = cache.size();
+		Assert.assertEquals("Value must be [" + expectedValue + "].", expectedValue, value);
+	}
+	
+	@Test
+	public void testGeneration() throws Throwable
+	{
+		LocalizedKeyCache cache = new LocalizedKeyCache(10);
+		
+		// Reads the generation before reading the values
+		long generation = cache.getGeneration();
+		
+		// Other thread changes the key and invalidates it before the value read is cached
+		cache.invalidate("KEY_1", LOCALE_EN);
+		
+		cache.put("KEY_1", LOCALE_EN, "english_1", generation);
+		cache.put("KEY_2", LOCALE_EN, "english_2", generation);
+		
+		// Checks that only the value of the key not invalidated is cached
+		testCachedValue(cache, "KEY_1", LOCALE_EN, null);
+		testCachedValue(cache, "KEY_2", LOCALE_EN, "english_2");
+		
+		// Checks that the values read after the invalidation are cached
+		cache.put("KEY_1", LOCALE_EN, "english_1", cache.getGeneration());
+		testCachedValue(cache, "KEY_1", LOCALE_EN, "english_1");
+		
+		// Checks that no value read before invalidating all the keys is cached
+		generation = cache.getGeneration();
+		cache.invalidateAll();
+		cache.put("KEY_3", LOCALE_EN, "english_3", generation);
+		
+		testCachedValue(cache, "KEY_3", LOCALE_EN, null);
+	}
+	
+	private void testCachedValue(LocalizedKeyCache cache, String key, Locale locale, String expectedValue)
+	{
+		String value = cache.get(key, locale);
+		Assert.assertEquals("Value must be [" + expectedValue + "].", expectedValue, value);
+	}
+}
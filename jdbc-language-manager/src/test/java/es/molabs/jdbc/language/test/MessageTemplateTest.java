@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.test;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import es.molabs.jdbc.language.format.MessageTemplate;
+import es.molabs.jdbc.language.format.TemplateCache;
+
+public class MessageTemplateTest 
+{
+	private final static Locale LOCALE_EN = new Locale("en");
+	
+	@Test
+	public void testSimplePattern() throws Throwable
+	{
+		MessageTemplate template = new MessageTemplate("Hello {0}, you have {1} messages from {0}.", LOCALE_EN);
+		
+		// Checks that the pattern is rendered without the MessageFormat
+		Assert.assertEquals("Value must be [" + true + "].", true, template.isSimple());
+		testFormat(template, "Hello john, you have 3 messages from john.", "john", "3");
+		
+		// Checks that missing and null arguments are rendered as the MessageFormat does
+		testFormat(template, "Hello null, you have {1} messages from null.", (Object) null);
+		testFormat(template, "Hello {0}, you have {1} messages from {0}.");
+	}
+	
+	@Test
+	public void testQuotes() throws Throwable
+	{
+		// Checks that quoted text is not an argument
+		testPattern("It''s {0}", true, "john");
+		testPattern("'{0}' is {0}", true, "john");
+		testPattern("'It''s' {0}''", true, "john");
+		testPattern("'{'{0}'}'", true, "john");
+	}
+	
+	@Test
+	public void testComplexPattern() throws Throwable
+	{
+		// Checks that non simple arguments use the MessageFormat
+		testPattern("You have {0,number,integer} messages.", false, 1234);
+		testPattern("You have {0,choice,0#no messages|1#one message|1<{0} messages}.", false, 2);
+		
+		// Checks that non string arguments use the MessageFormat on simple patterns
+		testPattern("You have {0} messages.", true, 1234);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidPattern() throws Throwable
+	{
+		new MessageTemplate("Hello {0", LOCALE_EN);
+	}
+	
+	@Test
+	public void testTemplateCache() throws Throwable
+	{
+		TemplateCache cache = new TemplateCache(2);
+		MessageTemplate template = new MessageTemplate("Hello {0}.", LOCALE_EN);
+		
+		cache.put("KEY_1", LOCALE_EN, template);
+		cache.put("KEY_2", LOCALE_EN, template);
+		
+		// Uses KEY_1 so KEY_2 is evicted when other key is added
+		Assert.assertEquals("Value must be [" + template + "].", template, cache.get("KEY_1", LOCALE_EN));
+		cache.put("KEY_3", LOCALE_EN, template);
+		
+		Assert.assertEquals("Value must be [" + template + "].", template, cache.get("KEY_1", LOCALE_EN));
+		Assert.assertEquals("Value must be [" + null + "].", null, cache.get("KEY_2", LOCALE_EN));
+		Assert.assertEquals("Value must be [" + template + "].", template, cache.get("KEY_3", LOCALE_EN));
+		Assert.assertEquals("Value must be [" + 2 + "].", 2, cache.size());
+		
+		// Checks that the removed keys are not returned
+		cache.remove("KEY_3");
+		Assert.assertEquals("Value must be [" + null + "].", null, cache.get("KEY_3", LOCALE_EN));
+	}
+	
+	private void testPattern(String pattern, boolean simple, Object...args)
+	{
+		MessageTemplate template = new MessageTemplate(pattern, LOCALE_EN);
+		
+		Assert.assertEquals("Value must be [" + simple + "].", simple, template.isSimple());
+		testFormat(template, new MessageFormat(pattern, LOCALE_EN).format(args), args);
+	}
+	
+	private void testFormat(MessageTemplate template, String expectedValue, Object...args)
+	{
+		String value = template.format(args);
+		Assert.assertEquals("Value must be [" + expectedValue + "].", expectedValue, value);
+	}
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2016 Luis Moral Guerrero <luis.moral@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.molabs.jdbc.language.test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import es.molabs.jdbc.language.LocaleValue;
+import es.molabs.jdbc.language.LocalizedKey;
+import es.molabs.jdbc.language.cache.LocaleColumns;
+import es.molabs.jdbc.language.cache.MappedSnapshotWriter;
+import es.molabs.jdbc.language.cache.SnapshotRowHandler;
+import es.molabs.jdbc.language.cache.TranslationSnapshot;
+import es.molabs.jdbc.language.db.dao.BundleRowHandler;
+
+public class TranslationSnapshotTest 
+{
+	private final static Locale LOCALE_EN = new Locale("en");
+	private final static Locale LOCALE_ES = new Locale("es");
+	
+	@Test
+	public void testLoad() throws Throwable
+	{
+		TranslationSnapshot snapshot = load(1000, true);
+		
+		// Checks the loaded values
+		testValue(snapshot, "KEY_0", LOCALE_EN, "english_0");
+		testValue(snapshot, "KEY_999", LOCALE_ES, "castellano_999");
+		testValue(snapshot, "KEY_1", LOCALE_ES, "castellano_1");
+		testValue(snapshot, "KEY_1000", LOCALE_EN, null);
+		testValue(snapshot, "KEY_0", new Locale("fr"), null);
+		
+		Assert.assertEquals("Value must be [" + 1000 + "].", 1000, snapshot.size());
+		Assert.assertEquals("Value must be [" + true + "].", true, snapshot.containsKey("KEY_1"));
+		Assert.assertEquals("Value must be [" + false + "].", false, snapshot.containsKey("KEY_1000"));
+		
+		// Checks that the identical values share the same instance
+		List<LocaleValue> localeValueList1 = snapshot.getLocaleValues("KEY_2");
+		List<LocaleValue> localeValueList2 = snapshot.getLocaleValues("KEY_4");
+		Assert.assertEquals("Value must be [" + true + "].", true, localeValueList1.get(1).getValue() == localeValueList2.get(1).getValue());
+	}
+	
+	@Test
+	public void testChanges() throws Throwable
+	{
+		TranslationSnapshot snapshot = load(10, false);
+		
+		// Adds, merges, copies and removes keys
+		snapshot.put(new LocalizedKey("KEY_NEW", new LocaleValue(LOCALE_EN, "new_1")));
+		snapshot.merge(new LocalizedKey("KEY_1", new LocaleValue(LOCALE_ES, "castellano_merge")));
+		snapshot.merge(new LocalizedKey("KEY_MISSING", new LocaleValue(LOCALE_ES, "castellano_merge")));
+		snapshot.copy("KEY_2", "KEY_COPY");
+		snapshot.remove("KEY_3");
+		
+		testChanges(snapshot);
+		
+		// Checks that the changes are kept once compacted
+		snapshot.compact();
+		
+		testChanges(snapshot);
+		
+		// Checks that the values of a key can be replaced
+		snapshot.put("KEY_1", new String[] {"english_put", null});
+		testValue(snapshot, "KEY_1", LOCALE_EN, "english_put");
+		testValue(snapshot, "KEY_1", LOCALE_ES, null);
+		
+		// Checks that the values must have every locale
+		Exception exception = null;
+		
+		try
+		{
+			snapshot.put("KEY_1", new String[] {"english_put"});
+		}
+		catch (Exception e)
+		{
+			exception = e;
+		}
+		Assert.assertEquals("Value must be [" + true + "].", true, exception.getClass() == IllegalArgumentException.class);
+	}
+	
+	@Test
+	public void testAutomaticCompaction() throws Throwable
+	{
+		TranslationSnapshot snapshot = load(100, true);
+		
+		// Enough changes to be compacted several times
+		for (int i=0; i<1000; i++)
+		{
+			snapshot.put(new LocalizedKey("KEY_NEW_" + i, new LocaleValue(LOCALE_EN, "new_" + i)));
+			snapshot.remove("KEY_" + (i % 100));
+		}
+		
+		Assert.assertEquals("Value must be [" + 1000 + "].", 1000, snapshot.size());
+		
+		for (int i=0; i<1000; i++)
+		{
+			testValue(snapshot, "KEY_NEW_" + i, LOCALE_EN, "new_" + i);
+		}
+		
+		testValue(snapshot, "KEY_5", LOCALE_EN, null);
+	}
+	
+	@Test
+	public void testForEach() throws Throwable
+	{
+		TranslationSnapshot snapshot = load(20, true);
+		snapshot.put(new LocalizedKey("KEY_1_NEW", new LocaleValue(LOCALE_EN, "new_1")));
+		snapshot.remove("KEY_10");
+		
+		BundleRowHandler handler = new BundleRowHandler(Arrays.asList(snapshot.getLocales()));
+		snapshot.forEach("KEY_1", handler);
+		
+		// KEY_1, KEY_11 to KEY_19 and KEY_1_NEW
+		Map<String, String> bundle = handler.toMap().get(LOCALE_EN);
+		Assert.assertEquals("Value must be [" + 11 + "].", 11, bundle.size());
+		Assert.assertEquals("Value must be [" + "new_1" + "].", "new_1", bundle.get("KEY_1_NEW"));
+		Assert.assertEquals("Value must be [" + false + "].", false, bundle.containsKey("KEY_10"));
+	}
+	
+	@Test
+	public void testMappedFile() throws Throwable
+	{
+		Path file = Files.createTempFile("snapshot", ".bin");
+		
+		try
+		{
+			// Writes the snapshot to the file
+			MappedSnapshotWriter writer = new MappedSnapshotWriter(file, Arrays.asList(LOCALE_EN, LOCALE_ES), 7);
+			
+			for (int i=0; i<1000; i++)
+			{
+				writer.handleRow("KEY_" + i, new String[] {"english_" + i, (i % 2 == 0 ? "castellano_\u00f1_" + i : null)});
+			}
+			
+			TranslationSnapshot snapshot = writer.toSnapshot();
+			
+			// Checks the mapped values
+			testValue(snapshot, "KEY_0", LOCALE_ES, "castellano_\u00f1_0");
+			testValue(snapshot, "KEY_999", LOCALE_EN, "english_999");
+			testValue(snapshot, "KEY_999", LOCALE_ES, null);
+			testValue(snapshot, "KEY_1000", LOCALE_EN, null);
+			Assert.assertEquals("Value must be [" + 1000 + "].", 1000, snapshot.size());
+			
+			// Checks that the changes are kept over the mapped values
+			snapshot.put(new LocalizedKey("KEY_NEW", new LocaleValue(LOCALE_EN, "new_1")));
+			snapshot.remove("KEY_0");
+			snapshot.compact();
+			
+			testValue(snapshot, "KEY_NEW", LOCALE_EN, "new_1");
+			testValue(snapshot, "KEY_0", LOCALE_ES, null);
+			Assert.assertEquals("Value must be [" + 1000 + "].", 1000, snapshot.size());
+			
+			// Checks that the file is reused only for the same version and locales
+			snapshot = MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_EN, LOCALE_ES), 7);
+			testValue(snapshot, "KEY_0", LOCALE_ES, "castellano_\u00f1_0");
+			
+			Assert.assertEquals("Value must be [" + null + "].", null, MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_EN, LOCALE_ES), 8));
+			Assert.assertEquals("Value must be [" + null + "].", null, MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_ES, LOCALE_EN), 7));
+			Assert.assertEquals("Value must be [" + null + "].", null, MappedSnapshotWriter.open(file.resolveSibling("missing.bin"), Arrays.asList(LOCALE_EN, LOCALE_ES), 7));
+			
+			// Checks that any version is valid when no version is given
+			snapshot = MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_EN, LOCALE_ES));
+			Assert.assertEquals("Value must be [" + 7 + "].", 7, snapshot.getVersion());
+			
+			// Checks that a file without merged values is not valid when they are expected
+			Assert.assertEquals("Value must be [" + null + "].", null, MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_EN, LOCALE_ES), true));
+			Assert.assertEquals("Value must be [" + null + "].", null, MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_EN, LOCALE_ES), 7, true));
+			
+			// Checks that a corrupted file is not valid
+			byte[] bytes = Files.readAllBytes(file);
+			bytes[bytes.length - 1]++;
+			Files.write(file, bytes);
+			
+			Assert.assertEquals("Value must be [" + null + "].", null, MappedSnapshotWriter.open(file, Arrays.asList(LOCALE_EN, LOCALE_ES)));
+		}
+		finally
+		{
+			Files.deleteIfExists(file);
+		}
+	}
+	
+	@Test
+	public void testLocaleColumns() throws Throwable
+	{
+		LocaleColumns columns = new LocaleColumns(2);
+		
+		// Changes the keys while the locale is read
+		columns.startLoad(LOCALE_EN);
+		columns.putKey(new LocalizedKey("KEY_NEW", new LocaleValue(LOCALE_EN, "new_1")));
+		columns.mergeKey(new LocalizedKey("KEY_1", new LocaleValue(LOCALE_EN, "english_merge")));
+		columns.copyKey("KEY_2", "KEY_COPY");
+		columns.removeKey("KEY_3");
+		
+		Assert.assertEquals("Value must be [" + null + "].", null, columns.get(LOCALE_EN));
+		
+		// Checks that the changes are applied to the locale when it is stored
+		SnapshotRowHandler handler = new SnapshotRowHandler(Collections.singleton(LOCALE_EN), false);
+		
+		for (int i=0; i<10; i++)
+		{
+			handler.handleRow("KEY_" + i, new String[] {"english_" + i});
+		}
+		
+		columns.put(LOCALE_EN, handler.toSnapshot());
+		
+		TranslationSnapshot column = columns.get(LOCALE_EN);
+		testValue(column, "KEY_NEW", LOCALE_EN, "new_1");
+		testValue(column, "KEY_1", LOCALE_EN, "english_merge");
+		testValue(column, "KEY_COPY", LOCALE_EN, "english_2");
+		testValue(column, "KEY_3", LOCALE_EN, null);
+		
+		// Checks that a locale read while the locales are cleared is not stored
+		columns.startLoad(LOCALE_ES);
+		columns.clear();
+		
+		Assert.assertEquals("Value must be [" + null + "].", null, columns.put(LOCALE_ES, new SnapshotRowHandler(Collections.singleton(LOCALE_ES), false).toSnapshot()));
+		Assert.assertEquals("Value must be [" + null + "].", null, columns.get(LOCALE_ES));
+		Assert.assertEquals("Value must be [" + true + "].", true, columns.isEmpty());
+	}
+	
+	private void testChanges(TranslationSnapshot snapshot)
+	{
+		testValue(snapshot, "KEY_NEW", LOCALE_EN, "new_1");
+		testValue(snapshot, "KEY_NEW", LOCALE_ES, null);
+		testValue(snapshot, "KEY_1", LOCALE_EN, "english_1");
+		testValue(snapshot, "KEY_1", LOCALE_ES, "castellano_merge");
+		testValue(snapshot, "KEY_COPY", LOCALE_ES, "castellano");
+		testValue(snapshot, "KEY_3", LOCALE_EN, null);
+		
+		Assert.assertEquals("Value must be [" + false + "].", false, snapshot.containsKey("KEY_MISSING"));
+		Assert.assertEquals("Value must be [" + false + "].", false, snapshot.containsKey("KEY_3"));
+		Assert.assertEquals("Value must be [" + 11 + "].", 11, snapshot.size());
+	}
+	
+	private TranslationSnapshot load(int count, boolean deduplicate)
+	{
+		SnapshotRowHandler handler = new SnapshotRowHandler(Arrays.asList(LOCALE_EN, LOCALE_ES), deduplicate);
+		
+		// The even keys have the same spanish value in different instances
+		for (int i=0; i<count; i++)
+		{
+			handler.handleRow("KEY_" + i, new String[] {"english_" + i, (i % 2 == 0 ? new String("castellano") : "castellano_" + i)});
+		}
+		
+		return handler.toSnapshot();
+	}
+	
+	private void testValue(TranslationSnapshot snapshot, String key, Locale locale, String expectedValue)
+	{
+		String value = snapshot.get(key, locale);
+		Assert.assertEquals("Value must be [" + expectedValue + "].", expectedValue, value);
+	}
+}
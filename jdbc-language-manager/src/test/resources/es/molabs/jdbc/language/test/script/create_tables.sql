@@ -4,13 +4,51 @@ CREATE TABLE IF NOT EXISTS multilanguage2
 	key2 VARCHAR(240) NOT NULL,
 	en CLOB,
 	es CLOB,	
+	updated_at TIMESTAMP,
 	
 	CONSTRAINT multilanguage2 PRIMARY KEY (key2)
 );
 
+CREATE TABLE IF NOT EXISTS multilanguage2_log
+(
+	id BIGINT AUTO_INCREMENT NOT NULL,
+	key2 VARCHAR(240) NOT NULL,
+	created TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+	
+	CONSTRAINT multilanguage2_log PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS multilanguage2_log2
+(
+	log_id BIGINT NOT NULL,
+	key2 VARCHAR(240) NOT NULL,
+	log_created TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+	
+	CONSTRAINT multilanguage2_log2 PRIMARY KEY (log_id)
+);
+
+CREATE TABLE IF NOT EXISTS multilanguage3
+(
+	key3 VARCHAR(240) NOT NULL,
+	locale VARCHAR(16) NOT NULL,
+	text CLOB,
+	updated_at TIMESTAMP,
+	
+	CONSTRAINT multilanguage3 PRIMARY KEY (key3, locale)
+);
+
 /* Data Definitions */
 DELETE FROM multilanguage2; 
+DELETE FROM multilanguage2_log;
+DELETE FROM multilanguage2_log2;
+DELETE FROM multilanguage3;
 
 INSERT INTO multilanguage2 (key2, en, es) VALUES ('KEY_1', 'english_1', 'castellano_1');
 INSERT INTO multilanguage2 (key2, en, es) VALUES ('KEY_2', 'english_2', 'castellano_2');
-INSERT INTO multilanguage2 (key2, en, es) VALUES ('KEY_3', 'english_3', 'castellano_3');
\ No newline at end of file
+INSERT INTO multilanguage2 (key2, en, es) VALUES ('KEY_3', 'english_3', 'castellano_3');
+
+INSERT INTO multilanguage3 (key3, locale, text) VALUES ('KEY_1', 'en', 'english_1');
+INSERT INTO multilanguage3 (key3, locale, text) VALUES ('KEY_1', 'es', 'castellano_1');
+INSERT INTO multilanguage3 (key3, locale, text) VALUES ('KEY_2', 'en', 'english_2');
+INSERT INTO multilanguage3 (key3, locale, text) VALUES ('KEY_2', 'es', 'castellano_2');
+INSERT INTO multilanguage3 (key3, locale, text) VALUES ('KEY_3', 'en', 'english_3');
\ No newline at end of file